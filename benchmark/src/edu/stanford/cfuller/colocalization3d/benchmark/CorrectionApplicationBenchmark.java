@@ -0,0 +1,113 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.stanford.cfuller.colocalization3d.correction.Correction;
+import edu.stanford.cfuller.colocalization3d.correction.PositionCorrector;
+import edu.stanford.cfuller.colocalization3d.correction.UnableToCorrectException;
+
+/**
+ * Measures the time taken to apply a correction to a set of positions, one at a time with {@link Correction#correctPosition(double, double)} and
+ * all at once with {@link Correction#correctPositions(RealMatrix)}.
+ * <p>
+ * The correction is determined once from a fixed number of synthetic beads; the number of positions corrected is varied.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CorrectionApplicationBenchmark {
+	
+	static final long SEED = 0;
+	static final int NUMBER_OF_BEADS = 2000;
+	
+	@Param({"1000", "10000", "100000"})
+	public int numberOfPositions;
+	
+	Correction correction;
+	RealMatrix positions;
+	
+	@Setup
+	public void setUp() {
+		
+		PositionCorrector pc = new PositionCorrector(SyntheticBeads.createParameters(System.getProperty("java.io.tmpdir")));
+		
+		this.correction = pc.getCorrection(SyntheticBeads.createObjects(NUMBER_OF_BEADS, SEED));
+		
+		java.util.Random random = new java.util.Random(SEED + 1);
+		
+		this.positions = new Array2DRowRealMatrix(this.numberOfPositions, 3);
+		
+		for (int i = 0; i < this.numberOfPositions; i++) {
+			this.positions.setEntry(i, 0, SyntheticBeads.FIELD_SIZE_XY*random.nextDouble());
+			this.positions.setEntry(i, 1, SyntheticBeads.FIELD_SIZE_XY*random.nextDouble());
+			this.positions.setEntry(i, 2, SyntheticBeads.FIELD_SIZE_Z*random.nextDouble());
+		}
+		
+	}
+	
+	@Benchmark
+	public void correctPosition(Blackhole bh) {
+		
+		for (int i = 0; i < this.numberOfPositions; i++) {
+			try {
+				RealVector corr = this.correction.correctPosition(this.positions.getEntry(i, 0), this.positions.getEntry(i, 1));
+				bh.consume(corr);
+			} catch (UnableToCorrectException e) {
+				bh.consume(e);
+			}
+		}
+		
+	}
+	
+	@Benchmark
+	public RealMatrix correctPositions() {
+		return this.correction.correctPositions(this.positions);
+	}
+	
+}
@@ -0,0 +1,82 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.cfuller.colocalization3d.correction.Correction;
+import edu.stanford.cfuller.colocalization3d.correction.PositionCorrector;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+
+/**
+ * Measures the time taken to determine a correction from synthetic beads.
+ * <p>
+ * Each local correction currently examines every bead, so the largest sizes take minutes per iteration; restrict the sizes run with, for instance,
+ * -p numberOfBeads=1000,10000.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CorrectionBenchmark {
+	
+	static final long SEED = 0;
+	
+	@Param({"1000", "10000", "100000"})
+	public int numberOfBeads;
+	
+	List<ImageObject> objects;
+	PositionCorrector corrector;
+	
+	@Setup
+	public void setUp() {
+		this.objects = SyntheticBeads.createObjects(this.numberOfBeads, SEED);
+		this.corrector = new PositionCorrector(SyntheticBeads.createParameters(System.getProperty("java.io.tmpdir")));
+	}
+	
+	@Benchmark
+	public Correction getCorrection() {
+		return this.corrector.getCorrection(this.objects);
+	}
+	
+}
@@ -0,0 +1,275 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import edu.stanford.cfuller.colocalization3d.Colocalization3DMain;
+import edu.stanford.cfuller.colocalization3d.FileUtils;
+import edu.stanford.cfuller.colocalization3d.ImageAndMaskSet;
+import edu.stanford.cfuller.colocalization3d.Initializer;
+import edu.stanford.cfuller.colocalization3d.fitting.P3DFitter;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.image.Image;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * Runs the full analysis on synthetic data and reports its throughput and accuracy.
+ * <p>
+ * Two datasets are generated with {@link SyntheticDatasetGenerator}: a bead dataset, from which a correction is determined, and a sample dataset with
+ * a known separation between channels, which is corrected using the stored correction and whose distribution of separations is fit.  For each run,
+ * this reports the number of objects per second and the time spent loading images, fitting objects, checking their fits, and in the remainder of the
+ * analysis (correction, distribution fitting, and writing output).  It then compares the fitted offsets between channels of the beads with the true
+ * offsets, and the fitted separation of the sample with the true separation.
+ * <p>
+ * Usage: java edu.stanford.cfuller.colocalization3d.benchmark.EndToEndBenchmark output_directory [number of images] [spots per image] [separation in nm]
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class EndToEndBenchmark {
+	
+	static final int DEFAULT_NUMBER_OF_IMAGES = 10;
+	static final double DEFAULT_SEPARATION = 50;
+	static final long SEED = 0;
+	
+	static final String CALIBRATION_NAME = "calibration";
+	static final String SAMPLE_NAME = "sample";
+	
+	public static void main(String[] args) throws Exception {
+		
+		if (args.length < 1) {
+			System.err.println("Usage: java " + EndToEndBenchmark.class.getName() + " output_directory [number of images] [spots per image] [separation in nm]");
+			return;
+		}
+		
+		String directory = args[0];
+		int numberOfImages = DEFAULT_NUMBER_OF_IMAGES;
+		int spotsPerImage = SyntheticDatasetGenerator.DEFAULT_SPOTS_PER_IMAGE;
+		double separation = DEFAULT_SEPARATION;
+		
+		if (args.length > 1) numberOfImages = Integer.parseInt(args[1]);
+		if (args.length > 2) spotsPerImage = Integer.parseInt(args[2]);
+		if (args.length > 3) separation = Double.parseDouble(args[3]);
+		
+		SyntheticDatasetGenerator generator = new SyntheticDatasetGenerator(SEED);
+		generator.setSpotsPerImage(spotsPerImage);
+		
+		long start = System.nanoTime();
+		
+		ParameterDictionary calibration = generator.generate(directory + File.separator + CALIBRATION_NAME, CALIBRATION_NAME, numberOfImages);
+		
+		generator.setSeparation(separation);
+		
+		ParameterDictionary sample = generator.generate(directory + File.separator + SAMPLE_NAME, SAMPLE_NAME, numberOfImages);
+		
+		//analyze the sample using the correction determined from the calibration
+		
+		sample.setValueForKey("data_directory", calibration.getValueForKey("data_directory"));
+		sample.setValueForKey("determine_correction", "false");
+		sample.writeParametersToFile(getParameterFilename(calibration, SAMPLE_NAME));
+		
+		System.out.println("generated " + 2*numberOfImages + " images in " + (System.nanoTime() - start)*1e-9 + " s");
+		
+		TimedColocalization3DMain calibrationRun = run(getParameterFilename(calibration, CALIBRATION_NAME));
+		
+		System.out.println(calibrationRun.getReport(CALIBRATION_NAME));
+		
+		reportOffsets(generator, calibration);
+		
+		TimedColocalization3DMain sampleRun = run(getParameterFilename(calibration, SAMPLE_NAME));
+		
+		System.out.println(sampleRun.getReport(SAMPLE_NAME));
+		
+		reportSeparation(sample, separation);
+		
+	}
+	
+	static String getParameterFilename(ParameterDictionary p, String basename) {
+		return p.getValueForKey("data_directory") + File.separator + basename + SyntheticDatasetGenerator.PARAMETER_EXTENSION;
+	}
+	
+	/**
+	 * Runs the full analysis using the parameters in the specified file.
+	 * @param parameterFilename		the full path to the parameter file.
+	 * @return						the TimedColocalization3DMain used for the run, containing its timings.
+	 */
+	static TimedColocalization3DMain run(String parameterFilename) {
+		
+		Initializer in = new Initializer();
+		
+		in.initializeParameters(new String[] {parameterFilename});
+		
+		TimedColocalization3DMain main = new TimedColocalization3DMain();
+		
+		long start = System.nanoTime();
+		
+		main.go(in);
+		
+		main.totalTime = System.nanoTime() - start;
+		
+		return main;
+		
+	}
+	
+	/**
+	 * Compares the fitted offsets between channels of the objects retained by an analysis with the true offsets.
+	 * @param generator		the generator used to create the dataset.
+	 * @param p				the parameters used for the analysis.
+	 */
+	static void reportOffsets(SyntheticDatasetGenerator generator, ParameterDictionary p) throws Exception {
+		
+		List<ImageObject> objects = FileUtils.readPositionData(p);
+		
+		double[] scale = new double[] {SyntheticBeads.PIXEL_SIZE_NM, SyntheticBeads.PIXEL_SIZE_NM, SyntheticBeads.SECTION_SIZE_NM};
+		
+		double[] sumSquaredError = new double[3];
+		int matched = 0;
+		
+		for (ImageObject obj : objects) {
+			
+			double[] truth = generator.getTrueOffset(obj.getImageID(), obj.getLabel());
+			
+			if (truth == null) continue;
+			
+			RealVector fitted = obj.getPositionForChannel(1).subtract(obj.getPositionForChannel(0));
+			
+			for (int dim = 0; dim < 3; dim++) {
+				double error = (fitted.getEntry(dim) - truth[dim])*scale[dim];
+				sumSquaredError[dim] += error*error;
+			}
+			
+			matched++;
+			
+		}
+		
+		System.out.println("objects matched to ground truth: " + matched + " of " + objects.size());
+		System.out.println("rms error of fitted offsets between channels (nm): x = " + Math.sqrt(sumSquaredError[0]/matched) + ", y = " + Math.sqrt(sumSquaredError[1]/matched) + ", z = " + Math.sqrt(sumSquaredError[2]/matched));
+		
+	}
+	
+	/**
+	 * Fits the distribution of corrected separations of the objects retained by an analysis and compares it with the true separation.
+	 * @param p				the parameters used for the analysis.
+	 * @param separation	the true separation, in nm.
+	 */
+	static void reportSeparation(ParameterDictionary p, double separation) throws Exception {
+		
+		List<ImageObject> objects = FileUtils.readPositionData(p);
+		
+		RealVector scale = new ArrayRealVector(new double[] {SyntheticBeads.PIXEL_SIZE_NM, SyntheticBeads.PIXEL_SIZE_NM, SyntheticBeads.SECTION_SIZE_NM});
+		
+		RealVector diffs = new ArrayRealVector(objects.size());
+		
+		for (int i = 0; i < objects.size(); i++) {
+			diffs.setEntry(i, objects.get(i).getCorrectedVectorDifferenceBetweenChannels(0, 1).ebeMultiply(scale).getNorm());
+		}
+		
+		RealVector fitparams = (new P3DFitter(p)).fit(objects, diffs);
+		
+		System.out.println("true separation: " + separation + " nm; fitted p3d parameters from " + objects.size() + " corrected objects: " + fitparams.toString());
+		
+	}
+	
+	/**
+	 * Runs the analysis, recording the time spent in the stages that can be timed from outside {@link Colocalization3DMain#go(Initializer)}.
+	 */
+	static class TimedColocalization3DMain extends Colocalization3DMain {
+		
+		long imageLoadTime;
+		long maskLoadTime;
+		long objectFitTime;
+		long qualityCheckTime;
+		long totalTime;
+		
+		int numberOfImages;
+		int numberOfObjects;
+		int numberOfObjectsAccepted;
+		
+		@Override
+		protected Image loadAndCorrectImageFromSet(ImageAndMaskSet toLoad) {
+			long start = System.nanoTime();
+			Image im = super.loadAndCorrectImageFromSet(toLoad);
+			this.imageLoadTime += System.nanoTime() - start;
+			return im;
+		}
+		
+		@Override
+		protected Image loadMaskFromSet(ImageAndMaskSet toLoad) {
+			long start = System.nanoTime();
+			Image mask = super.loadMaskFromSet(toLoad);
+			this.maskLoadTime += System.nanoTime() - start;
+			return mask;
+		}
+		
+		@Override
+		protected List<ImageObject> fitObjectsInSingleImage(ImageAndMaskSet iams) {
+			long start = System.nanoTime();
+			List<ImageObject> objects = super.fitObjectsInSingleImage(iams);
+			this.objectFitTime += System.nanoTime() - start;
+			this.numberOfImages++;
+			this.numberOfObjects += objects.size();
+			return objects;
+		}
+		
+		@Override
+		protected List<ImageObject> filterObjects(List<ImageObject> fittedObjects) {
+			long start = System.nanoTime();
+			List<ImageObject> accepted = super.filterObjects(fittedObjects);
+			this.qualityCheckTime += System.nanoTime() - start;
+			this.numberOfObjectsAccepted += accepted.size();
+			return accepted;
+		}
+		
+		/**
+		 * Gets a summary of the throughput and stage timings of the run.
+		 * @param name	the name of the run.
+		 * @return		a String containing one line per quantity.
+		 */
+		String getReport(String name) {
+			
+			//image and mask loading are timed within the fitting of each image
+			long fitOnlyTime = this.objectFitTime - this.imageLoadTime - this.maskLoadTime;
+			long remainingTime = this.totalTime - this.objectFitTime - this.qualityCheckTime;
+			
+			String result = name + ": " + this.numberOfImages + " images, " + this.numberOfObjects + " objects fit, " + this.numberOfObjectsAccepted + " accepted\n";
+			result += "total: " + this.totalTime*1e-9 + " s (" + this.numberOfObjects/(this.totalTime*1e-9) + " objects/s)\n";
+			result += "image loading: " + this.imageLoadTime*1e-9 + " s\n";
+			result += "mask loading: " + this.maskLoadTime*1e-9 + " s\n";
+			result += "object fitting: " + fitOnlyTime*1e-9 + " s (" + this.numberOfObjects/(fitOnlyTime*1e-9) + " objects/s)\n";
+			result += "quality checks: " + this.qualityCheckTime*1e-9 + " s\n";
+			result += "correction, distribution fitting and output: " + remainingTime*1e-9 + " s";
+			
+			return result;
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,99 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.cfuller.colocalization3d.FileUtils;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * Measures the time taken to write position data for synthetic beads to disk and read it back.
+ * <p>
+ * The data are written to the temporary directory, and removed at the end of the trial.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PositionDataBenchmark {
+	
+	static final long SEED = 0;
+	
+	@Param({"1000", "10000", "100000"})
+	public int numberOfBeads;
+	
+	List<ImageObject> objects;
+	ParameterDictionary parameters;
+	
+	@Setup
+	public void setUp() throws IOException {
+		
+		this.objects = SyntheticBeads.createObjects(this.numberOfBeads, SEED);
+		this.parameters = SyntheticBeads.createParameters(System.getProperty("java.io.tmpdir"));
+		this.parameters.setValueForKey("basename_set", "synthetic_position_benchmark_" + this.numberOfBeads);
+		
+		FileUtils.writeFittedImageObjectsToDisk(this.objects, this.parameters);
+		
+	}
+	
+	@TearDown
+	public void tearDown() {
+		(new File(FileUtils.getPositionDataFilename(this.parameters))).delete();
+	}
+	
+	@Benchmark
+	public void writePositionData() throws IOException {
+		FileUtils.writeFittedImageObjectsToDisk(this.objects, this.parameters);
+	}
+	
+	@Benchmark
+	public List<ImageObject> readPositionData() throws IOException, ClassNotFoundException {
+		return FileUtils.readPositionData(this.parameters);
+	}
+	
+}
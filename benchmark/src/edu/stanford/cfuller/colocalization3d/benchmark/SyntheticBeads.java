@@ -0,0 +1,150 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.util.List;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * Creates synthetic two-channel bead datasets and the parameters needed to analyze them.
+ * <p>
+ * Beads are placed uniformly at random in a field of the size of a typical image; the position of each bead in the second
+ * channel is offset from its position in the first channel by a smooth chromatic aberration field (see {@link #getAberration(double, double)})
+ * plus normally distributed localization error.  All positions are in pixels.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class SyntheticBeads {
+	
+	public static final double FIELD_SIZE_XY = 512;
+	public static final double FIELD_SIZE_Z = 30;
+	
+	public static final double PIXEL_SIZE_NM = 80;
+	public static final double SECTION_SIZE_NM = 100;
+	
+	public static final double LOCALIZATION_ERROR = 0.05;
+	
+	public static final int POINTS_PER_LOCAL_CORRECTION = 16;
+	
+	static final String IMAGE_ID = "synthetic";
+	
+	/**
+	 * Gets the offset of the second channel relative to the first at a given position in the field.
+	 * <p>
+	 * The offset is a constant shift plus terms varying linearly and quadratically over the field, of a similar
+	 * magnitude to the chromatic aberration of a high-NA objective.
+	 * 
+	 * @param x		the x-position, in pixels.
+	 * @param y		the y-position, in pixels.
+	 * @return		an array containing the x, y, and z offsets, in pixels.
+	 */
+	public static double[] getAberration(double x, double y) {
+		
+		double u = (x - FIELD_SIZE_XY/2)/FIELD_SIZE_XY;
+		double v = (y - FIELD_SIZE_XY/2)/FIELD_SIZE_XY;
+		
+		double[] offset = new double[3];
+		
+		offset[0] = 0.8 + 1.0*u + 0.6*v*v;
+		offset[1] = -0.5 + 0.75*v + 0.4*u*v;
+		offset[2] = 1.2 + 0.8*(u*u + v*v);
+		
+		return offset;
+		
+	}
+	
+	/**
+	 * Creates a set of beads whose positions should be the same in each channel after correction.
+	 * 
+	 * @param n		the number of beads.
+	 * @param seed	the seed for the random number generator, so that a given dataset can be recreated.
+	 * @return		a List containing an ImageObject for each bead.
+	 */
+	public static List<ImageObject> createObjects(int n, long seed) {
+		
+		java.util.Random random = new java.util.Random(seed);
+		
+		List<ImageObject> objects = new java.util.ArrayList<ImageObject>(n);
+		
+		for (int i = 0; i < n; i++) {
+			
+			double x = FIELD_SIZE_XY*random.nextDouble();
+			double y = FIELD_SIZE_XY*random.nextDouble();
+			double z = FIELD_SIZE_Z*random.nextDouble();
+			
+			double[] offset = getAberration(x, y);
+			
+			RealVector reference = new ArrayRealVector(new double[] {x, y, z});
+			RealVector second = new ArrayRealVector(3);
+			
+			for (int dim = 0; dim < 3; dim++) {
+				second.setEntry(dim, reference.getEntry(dim) + offset[dim] + LOCALIZATION_ERROR*random.nextGaussian());
+			}
+			
+			List<RealVector> positions = new java.util.ArrayList<RealVector>();
+			positions.add(reference);
+			positions.add(second);
+			
+			objects.add(new SyntheticImageObject(i + 1, IMAGE_ID, positions));
+			
+		}
+		
+		return objects;
+		
+	}
+	
+	/**
+	 * Creates the parameters for determining a correction from, and fitting the distances between channels of, a synthetic dataset.
+	 * 
+	 * @param dataDirectory		the directory to which position data and corrections will be written.
+	 * @return					a ParameterDictionary containing the parameters.
+	 */
+	public static ParameterDictionary createParameters(String dataDirectory) {
+		
+		ParameterDictionary p = ParameterDictionary.emptyDictionary();
+		
+		p.setValueForKey("reference_channel", "0");
+		p.setValueForKey("channel_to_correct", "1");
+		p.setValueForKey("pixelsize_nm", Double.toString(PIXEL_SIZE_NM));
+		p.setValueForKey("z_sectionsize_nm", Double.toString(SECTION_SIZE_NM));
+		p.setValueForKey("num_params", Integer.toString(POINTS_PER_LOCAL_CORRECTION));
+		p.setValueForKey("determine_correction", "true");
+		p.setValueForKey("correct_images", "true");
+		p.setValueForKey("max_threads", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		p.setValueForKey("data_directory", dataDirectory);
+		p.setValueForKey("basename_set", IMAGE_ID);
+		p.setValueForKey("correction_date", IMAGE_ID);
+		
+		return p;
+		
+	}
+	
+}
@@ -0,0 +1,417 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import edu.stanford.cfuller.imageanalysistools.image.ImageCoordinate;
+import edu.stanford.cfuller.imageanalysistools.image.ImageFactory;
+import edu.stanford.cfuller.imageanalysistools.image.WritableImage;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * Generates synthetic two-channel three-dimensional images of diffraction-limited spots, along with the matching label masks and a parameter file
+ * for analyzing them, so that the full analysis can be run without microscope data.
+ * <p>
+ * Each spot is a three-dimensional Gaussian.  Its position in the second channel is offset from its position in the first channel by the chromatic
+ * aberration field of {@link SyntheticBeads#getAberration(double, double)} plus a separation of fixed length in a random direction (zero for a bead
+ * dataset used to determine a correction).  Each voxel has shot noise and camera read noise, and is clipped at the camera's maximum greylevel; a fraction
+ * of the spots are made bright enough to saturate.
+ * <p>
+ * The images are written to the specified directory, the masks to a subdirectory named "masks", and the parameter file and a table of the true 
+ * positions and offsets of each spot to a subdirectory named "data".
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class SyntheticDatasetGenerator {
+	
+	public static final int DEFAULT_SIZE_XY = 512;
+	public static final int DEFAULT_SIZE_Z = 24;
+	public static final int DEFAULT_SPOTS_PER_IMAGE = 100;
+	public static final double DEFAULT_SATURATED_FRACTION = 0.05;
+	
+	public static final double SPOT_WIDTH_XY = 1.3;
+	public static final double SPOT_WIDTH_Z = 1.5;
+	public static final double SPOT_AMPLITUDE = 1500;
+	public static final double BACKGROUND = 100;
+	public static final double READ_NOISE = 5;
+	public static final double MAX_GREYLEVEL = 4095;
+	
+	public static final int BORDER_SIZE = 8;
+	public static final int HALF_BOX_SIZE = 5;
+	public static final int HALF_Z_SIZE = 3;
+	
+	static final double MASK_RADIUS_IN_WIDTHS = 2.5;
+	static final double RENDER_RADIUS_IN_WIDTHS = 4.0;
+	static final double MINIMUM_SPOT_SPACING = 12;
+	static final int MAX_PLACEMENT_ATTEMPTS = 1000;
+	static final int NUMBER_OF_CHANNELS = 2;
+	
+	static final String MASK_DIRNAME = "masks";
+	static final String DATA_DIRNAME = "data";
+	static final String IMAGE_EXTENSION = ".ome.tif";
+	static final String PARAMETER_EXTENSION = "_parameters.xml";
+	static final String GROUND_TRUTH_EXTENSION = "_ground_truth.txt";
+	static final String CORRECTION_NAME = "synthetic";
+	
+	private java.util.Random random;
+	
+	private int sizeXY;
+	private int sizeZ;
+	private int spotsPerImage;
+	private double saturatedFraction;
+	private double separation;
+	
+	private java.util.Map<String, double[]> trueOffsets;
+	
+	/**
+	 * Constructs a new generator with the default image size, number of spots, and saturated fraction, and no separation between channels.
+	 * 
+	 * @param seed	the seed for the random number generator, so that a given dataset can be recreated.
+	 */
+	public SyntheticDatasetGenerator(long seed) {
+		this.random = new java.util.Random(seed);
+		this.sizeXY = DEFAULT_SIZE_XY;
+		this.sizeZ = DEFAULT_SIZE_Z;
+		this.spotsPerImage = DEFAULT_SPOTS_PER_IMAGE;
+		this.saturatedFraction = DEFAULT_SATURATED_FRACTION;
+		this.separation = 0;
+		this.trueOffsets = new java.util.HashMap<String, double[]>();
+	}
+	
+	/**
+	 * Sets the size of the generated images.
+	 * @param sizeXY	the size in x and y, in pixels.
+	 * @param sizeZ		the number of z-sections.
+	 */
+	public void setImageSize(int sizeXY, int sizeZ) {
+		this.sizeXY = sizeXY;
+		this.sizeZ = sizeZ;
+	}
+	
+	/**
+	 * Sets the number of spots placed in each image.  Fewer spots will be placed if there is not room for them at the minimum spacing.
+	 * @param spotsPerImage	the number of spots.
+	 */
+	public void setSpotsPerImage(int spotsPerImage) {
+		this.spotsPerImage = spotsPerImage;
+	}
+	
+	/**
+	 * Sets the fraction of spots that are bright enough to saturate the camera.
+	 * @param saturatedFraction	the fraction, between 0 and 1.
+	 */
+	public void setSaturatedFraction(double saturatedFraction) {
+		this.saturatedFraction = saturatedFraction;
+	}
+	
+	/**
+	 * Sets the true separation between the channels of each spot, in addition to the chromatic aberration.
+	 * @param separation	the separation, in nm.
+	 */
+	public void setSeparation(double separation) {
+		this.separation = separation;
+	}
+	
+	/**
+	 * Gets the true offset between the channels of a generated spot.
+	 * 
+	 * @param imageID	the filename of the image containing the spot, as set as the image ID of its ImageObject.
+	 * @param label		the label of the spot in its mask.
+	 * @return			an array containing the x, y, and z offset of the second channel relative to the first, in pixels, or null if no such spot was generated.
+	 */
+	public double[] getTrueOffset(String imageID, int label) {
+		return this.trueOffsets.get(imageID + File.pathSeparator + label);
+	}
+	
+	/**
+	 * Generates a dataset.
+	 * 
+	 * @param directory			the directory to which the images will be written; this, and the mask and data subdirectories, will be created if needed.
+	 * @param basename			the name identifying this dataset; all the images are named starting with this.
+	 * @param numberOfImages	the number of images to generate.
+	 * @return					a ParameterDictionary containing the parameters for analyzing the dataset, which have also been written to the data subdirectory.
+	 * @throws IOException		if the ground truth table cannot be written.
+	 */
+	public ParameterDictionary generate(String directory, String basename, int numberOfImages) throws IOException {
+		
+		File imageDir = new File(directory);
+		File maskDir = new File(imageDir, MASK_DIRNAME);
+		File dataDir = new File(imageDir, DATA_DIRNAME);
+		
+		maskDir.mkdirs();
+		dataDir.mkdirs();
+		
+		PrintWriter truth = new PrintWriter(new FileWriter(new File(dataDir, basename + GROUND_TRUTH_EXTENSION)));
+		
+		truth.println("image\tlabel\tx\ty\tz\toffset_x\toffset_y\toffset_z\tsaturated");
+		
+		for (int i = 0; i < numberOfImages; i++) {
+			
+			String filename = basename + "_" + i + IMAGE_EXTENSION;
+			
+			File imageFile = new File(imageDir, filename);
+			
+			this.generateImage(imageFile.getAbsolutePath(), (new File(maskDir, filename)).getAbsolutePath(), truth);
+			
+		}
+		
+		truth.close();
+		
+		ParameterDictionary p = this.createParameters(imageDir.getAbsolutePath(), dataDir.getAbsolutePath(), basename);
+		
+		p.writeParametersToFile((new File(dataDir, basename + PARAMETER_EXTENSION)).getAbsolutePath());
+		
+		return p;
+		
+	}
+	
+	/**
+	 * Generates a single image and its mask, recording the true position and offset of each spot.
+	 * 
+	 * @param imageFilename		the full path to which the image will be written.
+	 * @param maskFilename		the full path to which the mask will be written.
+	 * @param truth				a PrintWriter to which one line will be written for each spot.
+	 */
+	protected void generateImage(String imageFilename, String maskFilename, PrintWriter truth) {
+		
+		int sizeXY = this.sizeXY;
+		int sizeZ = this.sizeZ;
+		
+		float[][] expected = new float[NUMBER_OF_CHANNELS][sizeXY*sizeXY*sizeZ];
+		float[] labels = new float[sizeXY*sizeXY*sizeZ];
+		
+		java.util.List<double[]> centers = this.placeSpots();
+		
+		double pixelSize = SyntheticBeads.PIXEL_SIZE_NM;
+		double sectionSize = SyntheticBeads.SECTION_SIZE_NM;
+		
+		for (int s = 0; s < centers.size(); s++) {
+			
+			double[] center = centers.get(s);
+			
+			int label = s + 1;
+			
+			boolean saturated = this.random.nextDouble() < this.saturatedFraction;
+			
+			double amplitude = (saturated ? 3*MAX_GREYLEVEL : SPOT_AMPLITUDE);
+			
+			//offset of the second channel: aberration plus separation in a uniformly distributed direction
+			
+			double[] offset = SyntheticBeads.getAberration(center[0], center[1]);
+			
+			if (this.separation > 0) {
+				
+				double ux = this.random.nextGaussian();
+				double uy = this.random.nextGaussian();
+				double uz = this.random.nextGaussian();
+				double norm = Math.sqrt(ux*ux + uy*uy + uz*uz);
+				
+				offset[0] += this.separation*ux/norm/pixelSize;
+				offset[1] += this.separation*uy/norm/pixelSize;
+				offset[2] += this.separation*uz/norm/sectionSize;
+				
+			}
+			
+			renderSpot(expected[0], center[0], center[1], center[2], amplitude, sizeXY, sizeZ);
+			renderSpot(expected[1], center[0] + offset[0], center[1] + offset[1], center[2] + offset[2], amplitude, sizeXY, sizeZ);
+			
+			labelSpot(labels, center[0], center[1], center[2], label, sizeXY, sizeZ);
+			
+			this.trueOffsets.put(imageFilename + File.pathSeparator + label, offset);
+			
+			truth.println(imageFilename + "\t" + label + "\t" + center[0] + "\t" + center[1] + "\t" + center[2] + "\t" + offset[0] + "\t" + offset[1] + "\t" + offset[2] + "\t" + saturated);
+			
+		}
+		
+		WritableImage image = ImageFactory.createWritable(ImageCoordinate.createCoordXYZCT(sizeXY, sizeXY, sizeZ, NUMBER_OF_CHANNELS, 1), 0.0f);
+		WritableImage mask = ImageFactory.createWritable(ImageCoordinate.createCoordXYZCT(sizeXY, sizeXY, sizeZ, 1, 1), 0.0f);
+		
+		ImageCoordinate ic = ImageCoordinate.createCoordXYZCT(0, 0, 0, 0, 0);
+		
+		for (int z = 0; z < sizeZ; z++) {
+			for (int y = 0; y < sizeXY; y++) {
+				for (int x = 0; x < sizeXY; x++) {
+					
+					int index = (z*sizeXY + y)*sizeXY + x;
+					
+					ic.set(ImageCoordinate.X, x);
+					ic.set(ImageCoordinate.Y, y);
+					ic.set(ImageCoordinate.Z, z);
+					ic.set(ImageCoordinate.C, 0);
+					
+					mask.setValue(ic, labels[index]);
+					
+					for (int c = 0; c < NUMBER_OF_CHANNELS; c++) {
+						
+						ic.set(ImageCoordinate.C, c);
+						
+						image.setValue(ic, (float) this.addNoise(BACKGROUND + expected[c][index]));
+						
+					}
+					
+				}
+			}
+		}
+		
+		ic.recycle();
+		
+		image.writeToFile(imageFilename);
+		mask.writeToFile(maskFilename);
+		
+	}
+	
+	/**
+	 * Chooses the centers of the spots in an image, keeping them away from the image edges and from each other.
+	 * @return	a List containing the x, y, and z position of each spot, in pixels.
+	 */
+	protected java.util.List<double[]> placeSpots() {
+		
+		java.util.List<double[]> centers = new java.util.ArrayList<double[]>();
+		
+		double minXY = 2*BORDER_SIZE;
+		double rangeXY = this.sizeXY - 4*BORDER_SIZE;
+		double minZ = HALF_Z_SIZE + 1;
+		double rangeZ = Math.max(this.sizeZ - 2*HALF_Z_SIZE - 2, 0);
+		
+		int attempts = 0;
+		
+		while (centers.size() < this.spotsPerImage && attempts < MAX_PLACEMENT_ATTEMPTS*this.spotsPerImage) {
+			
+			attempts++;
+			
+			double[] candidate = new double[] {minXY + rangeXY*this.random.nextDouble(), minXY + rangeXY*this.random.nextDouble(), minZ + rangeZ*this.random.nextDouble()};
+			
+			boolean tooClose = false;
+			
+			for (double[] existing : centers) {
+				double dx = existing[0] - candidate[0];
+				double dy = existing[1] - candidate[1];
+				if (dx*dx + dy*dy < MINIMUM_SPOT_SPACING*MINIMUM_SPOT_SPACING) {
+					tooClose = true;
+					break;
+				}
+			}
+			
+			if (! tooClose) centers.add(candidate);
+			
+		}
+		
+		return centers;
+		
+	}
+	
+	/**
+	 * Adds a Gaussian spot to an image stored as an array in x-fastest order.
+	 */
+	static void renderSpot(float[] image, double x0, double y0, double z0, double amplitude, int sizeXY, int sizeZ) {
+		
+		int rXY = (int) Math.ceil(RENDER_RADIUS_IN_WIDTHS*SPOT_WIDTH_XY);
+		int rZ = (int) Math.ceil(RENDER_RADIUS_IN_WIDTHS*SPOT_WIDTH_Z);
+		
+		double twoVarXY = 2*SPOT_WIDTH_XY*SPOT_WIDTH_XY;
+		double twoVarZ = 2*SPOT_WIDTH_Z*SPOT_WIDTH_Z;
+		
+		for (int z = Math.max((int) z0 - rZ, 0); z <= Math.min((int) z0 + rZ, sizeZ - 1); z++) {
+			for (int y = Math.max((int) y0 - rXY, 0); y <= Math.min((int) y0 + rXY, sizeXY - 1); y++) {
+				for (int x = Math.max((int) x0 - rXY, 0); x <= Math.min((int) x0 + rXY, sizeXY - 1); x++) {
+					
+					double exponent = ((x - x0)*(x - x0) + (y - y0)*(y - y0))/twoVarXY + (z - z0)*(z - z0)/twoVarZ;
+					
+					image[(z*sizeXY + y)*sizeXY + x] += (float) (amplitude*Math.exp(-1.0*exponent));
+					
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Labels the voxels of a mask within an ellipsoid around a spot's center.
+	 */
+	static void labelSpot(float[] labels, double x0, double y0, double z0, int label, int sizeXY, int sizeZ) {
+		
+		double rXY = MASK_RADIUS_IN_WIDTHS*SPOT_WIDTH_XY;
+		double rZ = MASK_RADIUS_IN_WIDTHS*SPOT_WIDTH_Z;
+		
+		for (int z = Math.max((int) (z0 - rZ), 0); z <= Math.min((int) (z0 + rZ) + 1, sizeZ - 1); z++) {
+			for (int y = Math.max((int) (y0 - rXY), 0); y <= Math.min((int) (y0 + rXY) + 1, sizeXY - 1); y++) {
+				for (int x = Math.max((int) (x0 - rXY), 0); x <= Math.min((int) (x0 + rXY) + 1, sizeXY - 1); x++) {
+					
+					double d = ((x - x0)*(x - x0) + (y - y0)*(y - y0))/(rXY*rXY) + (z - z0)*(z - z0)/(rZ*rZ);
+					
+					if (d <= 1) labels[(z*sizeXY + y)*sizeXY + x] = label;
+					
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Adds shot noise (approximated as normal) and read noise to an expected intensity, and clips it to the camera's range.
+	 */
+	double addNoise(double expected) {
+		
+		double value = expected + Math.sqrt(expected)*this.random.nextGaussian() + READ_NOISE*this.random.nextGaussian();
+		
+		return Math.min(Math.max(Math.round(value), 0), MAX_GREYLEVEL);
+		
+	}
+	
+	/**
+	 * Creates the parameters for analyzing a generated dataset, determining a correction from it.
+	 * 
+	 * @param imageDirectory	the directory containing the images.
+	 * @param dataDirectory		the directory to which position data and the correction will be written.
+	 * @param basename			the name identifying the dataset.
+	 * @return					a ParameterDictionary containing the parameters.
+	 */
+	protected ParameterDictionary createParameters(String imageDirectory, String dataDirectory, String basename) {
+		
+		ParameterDictionary p = SyntheticBeads.createParameters(dataDirectory);
+		
+		p.setValueForKey("dirname_set", imageDirectory);
+		p.setValueForKey("basename_set", basename);
+		p.setValueForKey("mask_relative_dirname", MASK_DIRNAME);
+		p.setValueForKey("mask_extra_extension", "");
+		p.setValueForKey("correction_date", CORRECTION_NAME);
+		p.setValueForKey("im_border_size", Integer.toString(BORDER_SIZE));
+		p.setValueForKey("half_box_size", Integer.toString(HALF_BOX_SIZE));
+		p.setValueForKey("half_z_size", Integer.toString(HALF_Z_SIZE));
+		p.setValueForKey("num_wavelengths", Integer.toString(NUMBER_OF_CHANNELS));
+		p.setValueForKey("marker_channel_index", "0");
+		p.setValueForKey("max_greylevel_cutoff", Double.toString(MAX_GREYLEVEL - 1));
+		p.setValueForKey("determine_tre", "false");
+		
+		return p;
+		
+	}
+	
+}
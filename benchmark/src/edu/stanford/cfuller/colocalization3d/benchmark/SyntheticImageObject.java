@@ -0,0 +1,93 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.benchmark;
+
+import java.util.List;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.FitParameters;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * An ImageObject whose position in each channel is set directly rather than fit to an image, for exercising the correction and
+ * fitting code without microscope data.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class SyntheticImageObject extends ImageObject {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Constructs a new object at the specified positions.
+	 * 
+	 * @param label			the label of the object.
+	 * @param imageID		the identifier of the image to which the object nominally belongs.
+	 * @param positions		a List containing the x, y, and z position (in pixels) of the object in each channel, in channel order.
+	 */
+	public SyntheticImageObject(int label, String imageID, List<RealVector> positions) {
+		
+		this.label = label;
+		this.imageID = imageID;
+		this.hadFittingError = false;
+		this.correctionSuccessful = false;
+		
+		this.positionsByChannel = new java.util.ArrayList<RealVector>();
+		this.correctedPositionsByChannel = new java.util.ArrayList<RealVector>();
+		this.fitParametersByChannel = new java.util.ArrayList<FitParameters>();
+		this.fitR2ByChannel = new java.util.ArrayList<Double>();
+		this.fitErrorByChannel = new java.util.ArrayList<Double>();
+		this.nPhotonsByChannel = new java.util.ArrayList<Double>();
+		
+		for (RealVector position : positions) {
+			
+			this.positionsByChannel.add(new ArrayRealVector(position));
+			this.correctedPositionsByChannel.add(new ArrayRealVector(position));
+			
+			FitParameters fp = new FitParameters();
+			
+			for (int dim = 0; dim < position.getDimension(); dim++) {
+				fp.setPosition(dim, position.getEntry(dim));
+			}
+			
+			this.fitParametersByChannel.add(fp);
+			this.fitR2ByChannel.add(1.0);
+			this.fitErrorByChannel.add(0.0);
+			this.nPhotonsByChannel.add(0.0);
+			
+		}
+		
+	}
+	
+	/**
+	 * Does nothing, as the positions have already been set.
+	 */
+	public void fitPosition(ParameterDictionary p) {}
+	
+}
@@ -0,0 +1,101 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.cfuller.colocalization3d.benchmark.SyntheticBeads;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+ * Measures the time taken to evaluate the P3D likelihood and to fit the P3D distribution, on distances drawn from a P3D distribution.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class P3dBenchmark {
+	
+	static final long SEED = 0;
+	
+	@Param({"1000", "100000", "1000000"})
+	public int numberOfDistances;
+	
+	P3dObjectiveFunction objective;
+	RealVector diffs;
+	List<ImageObject> objects;
+	ParameterDictionary parameters;
+	
+	@Setup
+	public void setUp() {
+		
+		double[] r = P3dLikelihoodBenchmark.generateDistances(this.numberOfDistances, P3dLikelihoodBenchmark.TRUE_MEAN, P3dLikelihoodBenchmark.TRUE_WIDTH, SEED);
+		
+		this.objective = new P3dObjectiveFunction();
+		this.objective.setR(r);
+		
+		this.diffs = new ArrayRealVector(r, false);
+		this.objects = new java.util.ArrayList<ImageObject>();
+		this.parameters = SyntheticBeads.createParameters(System.getProperty("java.io.tmpdir"));
+		
+	}
+	
+	@Benchmark
+	public double evaluate() {
+		return this.objective.evaluate(P3dLikelihoodBenchmark.TRUE_MEAN, P3dLikelihoodBenchmark.TRUE_WIDTH);
+	}
+	
+	@Benchmark
+	public RealVector fit() {
+		return (new P3DFitter(this.parameters)).fit(this.objects, this.diffs);
+	}
+	
+	@Benchmark
+	public RealVector fitGradient() {
+		return (new P3DGradientFitter(this.parameters)).fit(this.objects, this.diffs);
+	}
+	
+}
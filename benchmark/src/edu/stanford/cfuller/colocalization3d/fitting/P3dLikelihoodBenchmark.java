@@ -0,0 +1,139 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken to evaluate the P3D likelihood with the blocked kernel used by {@link P3dObjectiveFunction} for
+ * uncapped, untrimmed likelihoods (with and without the Vector API kernel, which is used only if it was built and the 
+ * jdk.incubator.vector module is enabled), and with each distance evaluated separately.
+ * <p>
+ * The setup checks that the kernel in use agrees with evaluating each distance separately over a range of parameters before anything is measured.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class P3dLikelihoodBenchmark {
+	
+	static final long SEED = 0;
+	
+	static final double TRUE_MEAN = 40.0;
+	static final double TRUE_WIDTH = 30.0;
+	
+	static final double AGREEMENT_TOLERANCE = 1e-9;
+	
+	@Param({"100000", "1000000"})
+	public int numberOfDistances;
+	
+	@Param({"true", "false"})
+	public boolean useBlockedKernel;
+	
+	@Param({"true", "false"})
+	public boolean useVectorKernel;
+	
+	P3dObjectiveFunction objective;
+	
+	@Setup
+	public void setUp() {
+		
+		double[] r = generateDistances(this.numberOfDistances, TRUE_MEAN, TRUE_WIDTH, SEED);
+		
+		this.objective = new P3dObjectiveFunction();
+		this.objective.setR(r);
+		this.objective.setUseBlockedKernel(this.useBlockedKernel);
+		this.objective.setUseVectorKernel(this.useVectorKernel);
+		
+		P3dObjectiveFunction perDistance = new P3dObjectiveFunction();
+		perDistance.setR(r);
+		perDistance.setUseBlockedKernel(false);
+		
+		for (int i = 0; i < 10; i++) {
+			
+			double m = TRUE_MEAN*(0.5 + 0.1*i);
+			double s = TRUE_WIDTH*(1.5 - 0.1*i);
+			
+			double a = this.objective.evaluate(m, s);
+			double b = perDistance.evaluate(m, s);
+			
+			if (Math.abs(a - b) > AGREEMENT_TOLERANCE*Math.abs(b)) {
+				throw new IllegalStateException("Likelihood kernels disagree at m = " + m + ", s = " + s + ": " + a + " vs. " + b);
+			}
+			
+		}
+		
+	}
+	
+	@Benchmark
+	public double evaluate() {
+		return this.objective.evaluate(TRUE_MEAN, TRUE_WIDTH);
+	}
+	
+	/**
+	 * Generates distances from a P3D distribution: the lengths of vectors whose components are normally distributed with the given width
+	 * about a point at the given distance from the origin.
+	 * 
+	 * @param n		the number of distances.
+	 * @param m		the mean parameter.
+	 * @param s		the width parameter.
+	 * @param seed	the seed for the random number generator.
+	 * @return		an array containing the distances.
+	 */
+	static double[] generateDistances(int n, double m, double s, long seed) {
+		
+		java.util.Random random = new java.util.Random(seed);
+		
+		double[] r = new double[n];
+		
+		for (int i = 0; i < n; i++) {
+			double x = m + s*random.nextGaussian();
+			double y = s*random.nextGaussian();
+			double z = s*random.nextGaussian();
+			r[i] = Math.sqrt(x*x + y*y + z*z);
+		}
+		
+		return r;
+		
+	}
+
+}
@@ -0,0 +1,85 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A P3dLikelihoodKernel that evaluates log(1 - exp(-2mr/s^2)) for as many distances at once as fit in the preferred vector size of 
+ * the platform, using the JDK Vector API.
+ * <p>
+ * Each lane uses expm1 throughout (rather than switching to exp away from zero as {@link P3dObjectiveFunction#logOneMinusExp(double)}
+ * does), so that no lanes need to be blended; this is at least as accurate.  Distances left over after the last full vector are
+ * evaluated by the scalar form.
+ * <p>
+ * This class requires the jdk.incubator.vector module to compile and to load; it is compiled from a separate source directory
+ * (see build.xml), and {@link P3dObjectiveFunction} falls back to its scalar kernel if it cannot be loaded.
+ * 
+ * @author Colin J. Fuller
+ */
+class VectorP3dLikelihoodKernel implements P3dLikelihoodKernel {
+	
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	
+	public double sumLogOneMinusExp(double[] r, double[] weights, int n, double scale) {
+		
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		
+		double negativeScale = -1.0*scale;
+		
+		int blockEnd = SPECIES.loopBound(n);
+		
+		int i = 0;
+		
+		if (weights == null) {
+			
+			for (; i < blockEnd; i += SPECIES.length()) {
+				DoubleVector x = DoubleVector.fromArray(SPECIES, r, i).mul(negativeScale);
+				sum = sum.add(x.lanewise(VectorOperators.EXPM1).neg().lanewise(VectorOperators.LOG));
+			}
+			
+		} else {
+			
+			for (; i < blockEnd; i += SPECIES.length()) {
+				DoubleVector x = DoubleVector.fromArray(SPECIES, r, i).mul(negativeScale);
+				DoubleVector w = DoubleVector.fromArray(SPECIES, weights, i);
+				sum = w.fma(x.lanewise(VectorOperators.EXPM1).neg().lanewise(VectorOperators.LOG), sum);
+			}
+			
+		}
+		
+		double total = sum.reduceLanes(VectorOperators.ADD);
+		
+		for (; i < n; i++) {
+			total += (weights == null ? 1.0 : weights[i])*P3dObjectiveFunction.logOneMinusExp(scale*r[i]);
+		}
+		
+		return total;
+		
+	}
+	
+}
@@ -29,22 +29,31 @@ import java.io.FileWriter;
 import java.util.List;
 
 import edu.stanford.cfuller.colocalization3d.correction.Correction;
+import edu.stanford.cfuller.colocalization3d.correction.CorrectionDriftReport;
 import edu.stanford.cfuller.colocalization3d.correction.UnableToCorrectException;
 
 import edu.stanford.cfuller.colocalization3d.correction.PositionCorrector;
+import edu.stanford.cfuller.colocalization3d.fitting.BootstrapResult;
+import edu.stanford.cfuller.colocalization3d.fitting.CentroidImageObject;
 import edu.stanford.cfuller.colocalization3d.fitting.DistributionFitter;
+import edu.stanford.cfuller.colocalization3d.fitting.DistributionModelRegistry;
+import edu.stanford.cfuller.colocalization3d.fitting.GroupedFitResult;
+import edu.stanford.cfuller.colocalization3d.fitting.ModelComparison;
+import edu.stanford.cfuller.colocalization3d.fitting.MultiStartReport;
 import edu.stanford.cfuller.colocalization3d.fitting.P3DFitter;
+import edu.stanford.cfuller.colocalization3d.fitting.P3DGradientFitter;
+import edu.stanford.cfuller.colocalization3d.fitting.ProfileLikelihoodResult;
+import edu.stanford.cfuller.colocalization3d.jfr.ObjectFitEvent;
 import edu.stanford.cfuller.imageanalysistools.filter.Filter;
 import edu.stanford.cfuller.imageanalysistools.filter.ImageSubtractionFilter;
-import edu.stanford.cfuller.imageanalysistools.fitting.FitParameters;
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
-import edu.stanford.cfuller.imageanalysistools.image.Histogram;
 import edu.stanford.cfuller.imageanalysistools.image.Image;
 import edu.stanford.cfuller.imageanalysistools.image.WritableImage;
 import edu.stanford.cfuller.imageanalysistools.image.ImageCoordinate;
 import edu.stanford.cfuller.imageanalysistools.image.ImageFactory;
 import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
 
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
 public class Colocalization3DMain {
@@ -54,6 +63,11 @@ public class Colocalization3DMain {
 	
 	static final int DEFAULT_MAX_THREADS = 4;
 	static final int DEFAULT_THREAD_WAIT_MS = 50;
+	static final long DEFAULT_BOOTSTRAP_SEED = 0;
+	static final double DEFAULT_BOOTSTRAP_CONFIDENCE_LEVEL = 0.95;
+	static final double DEFAULT_PROFILE_CONFIDENCE_LEVEL = 0.95;
+	static final int DEFAULT_GROUP_MIN_COUNT = 10;
+	static final String UNMATCHED_GROUP_KEY = "unmatched";
 	
 	/*
 	Required parameters:
@@ -72,7 +86,6 @@ public class Colocalization3DMain {
 	*/
 	
 	static final String PRECOMPUTED_POS_PARAM = "precomputed_position_data";
-	static final String THREAD_COUNT_PARAM = "max_threads";
 	static final String DARK_IMAGE_PARAM = "darkcurrent_image";
 	static final String R2_PARAM = "residual_cutoff";
 	static final String MAX_LEVEL_PARAM = "max_greylevel_cutoff";
@@ -83,6 +96,22 @@ public class Colocalization3DMain {
 	static final String POS_OUTPUT_DIR_PARAM = "output_positions_to_directory";
 	static final String IN_SITU_ABERR_NAME_PARAM = "in_situ_aberr_corr_basename_set";
 	static final String IN_SITU_ABERR_SECOND_CH_PARAM = "in_situ_aberr_corr_channel";
+	static final String UPDATE_CORR_PARAM = "update_correction";
+	static final String DRIFT_CHECK_PARAM = "drift_check";
+	static final String TRE_CV_FOLDS_PARAM = "tre_cv_folds";
+	static final String GRADIENT_P3D_PARAM = "p3d_gradient_fit";
+	static final String BOOTSTRAP_REPLICATES_PARAM = "p3d_bootstrap_replicates";
+	static final String BOOTSTRAP_SEED_PARAM = "p3d_bootstrap_seed";
+	static final String BOOTSTRAP_CONFIDENCE_PARAM = "p3d_bootstrap_confidence_level";
+	static final String PROFILE_GRID_PARAM = "p3d_profile_grid_points";
+	static final String PROFILE_CONFIDENCE_PARAM = "p3d_profile_confidence_level";
+	static final String GROUP_BY_IMAGE_PARAM = "p3d_fit_by_image";
+	static final String GROUP_KEY_PATTERN_PARAM = "p3d_group_key_pattern";
+	static final String GROUP_MIN_COUNT_PARAM = "p3d_group_min_count";
+	static final String COMPARE_MODELS_PARAM = "compare_distance_models";
+	static final String ONLINE_P3D_PARAM = "p3d_online_fit";
+	static final String MIN_REGION_VOXELS_PARAM = "min_region_voxels";
+	static final String CENTROID_LOCALIZATION_PARAM = "centroid_localization";
 	
 	
 	
@@ -99,8 +128,18 @@ public class Colocalization3DMain {
 	
 	private FitFailureStatistics failures;
 	
+	private RunStatistics statistics;
+	
+	private RunMonitor monitor;
+	
+	private QualityCriteria qualityCriteria;
+	
+	private Correction onlineCorrection;
+	
 	public Colocalization3DMain() {
 		this.failures = new FitFailureStatistics();
+		this.statistics = new RunStatistics();
+		this.monitor = new RunMonitor(this.failures, DEFAULT_MAX_THREADS);
 	}
 	
 	/**
@@ -134,13 +173,19 @@ public class Colocalization3DMain {
 	 * @return an {@link Image} read from the specfied location.
 	 */
 	protected Image loadAndCorrectImageFromSet(ImageAndMaskSet toLoad) {
+		
+		long start = System.nanoTime();
 	
 		Image theImage = FileUtils.loadImage(toLoad.getImageFilename());
 		
 		WritableImage wrImage = ImageFactory.createWritable(theImage);
 		
+		this.statistics.addStageTime(RunStatistics.IMAGE_LOAD, System.nanoTime() - start);
+		
 		if (this.parameters.hasKey(DARK_IMAGE_PARAM)) {
 			
+			start = System.nanoTime();
+			
 			Image dark = FileUtils.loadImage(this.parameters.getValueForKey(DARK_IMAGE_PARAM));
 			
 			ImageSubtractionFilter isf = new ImageSubtractionFilter();
@@ -151,6 +196,8 @@ public class Colocalization3DMain {
 			isf.setReferenceImage(dark);
 			isf.apply(wrImage);
 			
+			this.statistics.addStageTime(RunStatistics.DARK_SUBTRACTION, System.nanoTime() - start);
+			
 		}
 		
 		return wrImage;
@@ -165,8 +212,12 @@ public class Colocalization3DMain {
 	 */
 	protected Image loadMaskFromSet(ImageAndMaskSet toLoad) {
 		
+		long start = System.nanoTime();
+		
 		Image theMask = FileUtils.loadImage(toLoad.getMaskFilename());
 		
+		this.statistics.addStageTime(RunStatistics.IMAGE_LOAD, System.nanoTime() - start);
+		
 		return theMask;
 	}
 	
@@ -190,6 +241,9 @@ public class Colocalization3DMain {
 		started.removeAll(toMove);
 		finished.addAll(toMove);
 		
+		this.monitor.addObjectsFit(toMove.size());
+		this.monitor.setActiveWorkers(started.size());
+		
 	}
 	
 	/**
@@ -202,6 +256,8 @@ public class Colocalization3DMain {
 	 */
 	protected List<ImageObject> fitObjectsInSingleImage(ImageAndMaskSet iams) {
 		
+		this.monitor.setCurrentStage(RunStatistics.IMAGE_LOAD);
+		
 		Image im = this.loadAndCorrectImageFromSet(iams);
 		
 		Image mask = this.loadMaskFromSet(iams);
@@ -211,31 +267,67 @@ public class Colocalization3DMain {
 			return new java.util.ArrayList<ImageObject>();
 		}
 		
-		Histogram h = new Histogram(mask);
+		long regionStart = System.nanoTime();
 		
-		int maxRegionId = h.getMaxValue();
+		RegionStatistics regions = new RegionStatistics(mask, im);
+		
+		int maxRegionId = regions.getMaxRegionId();
+		
+		QualityCriteria criteria = this.getQualityCriteria();
+		
+		ImageCoordinate imageSizes = im.getDimensionSizes();
+		
+		long regionTime = System.nanoTime() - regionStart;
 		
 		List<FittingThread> startedThreads = new java.util.ArrayList<FittingThread>();
 		List<FittingThread> finishedThreads = new java.util.ArrayList<FittingThread>();
 		
-		int maxThreadCount = Colocalization3DMain.DEFAULT_MAX_THREADS;
+		java.util.logging.Logger.getLogger(LOGGER_NAME).fine("Image: " + iams.getImageFilename());
 		
-		if (this.parameters.hasKey(THREAD_COUNT_PARAM)) {
-			maxThreadCount = this.parameters.getIntValueForKey(THREAD_COUNT_PARAM);
-		}
+		this.monitor.setCurrentStage(RunStatistics.FITTING);
+		this.monitor.setQueueDepth(maxRegionId);
 		
-		java.util.logging.Logger.getLogger(LOGGER_NAME).fine("Image: " + iams.getImageFilename());
+		long fittingStart = System.nanoTime();
+		long constructionTime = regionTime;
+		int fitsAvoided = 0;
 		
 		for (int i = 1; i < maxRegionId + 1; i++) {
+			
+			//reject regions that are certain to fail the quality checks before spending a fit on them
+			
+			int screenResult = criteria.screen(regions, i, imageSizes);
+			
+			if (screenResult != QualityCriteria.PASSED) {
+				
+				if (screenResult >= 0) {
+					this.failures.addFailure(screenResult, iams.getImageFilename());
+				}
+				
+				if (java.util.logging.Logger.getLogger(LOGGER_NAME).isLoggable(java.util.logging.Level.FINER)) {
+					java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed before fitting for object " + i + " (reason " + screenResult + "), voxels: " + regions.getVoxelCount(i) + " brightness: " + regions.getMaxIntensity(i));
+				}
+				
+				fitsAvoided++;
+				
+				this.monitor.addFitsAvoided(1);
+				this.monitor.setQueueDepth(maxRegionId - i);
+				
+				continue;
+				
+			}
+			
+			long constructionStart = System.nanoTime();
 		
-			ImageObject obj = new edu.stanford.cfuller.imageanalysistools.fitting.GaussianImageObject(i, ImageFactory.createShallow(mask), ImageFactory.createShallow(im), this.parameters);
+			ImageObject obj = this.createImageObject(i, mask, im);
 		
 			obj.setImageID(iams.getImageFilename());
+			
+			constructionTime += System.nanoTime() - constructionStart;
 		
 			FittingThread nextThread = new FittingThread(obj, this.parameters);
 			
 			try {
-				while(startedThreads.size() >= maxThreadCount) {
+				while(startedThreads.size() >= this.monitor.getMaxThreads()) {
 					Thread.sleep(Colocalization3DMain.DEFAULT_THREAD_WAIT_MS);
 					checkAllRunningThreadsAndRemoveFinished(startedThreads, finishedThreads);
 				}
@@ -247,6 +339,9 @@ public class Colocalization3DMain {
 			
 			startedThreads.add(nextThread);
 			
+			this.monitor.setQueueDepth(maxRegionId - i);
+			this.monitor.setActiveWorkers(startedThreads.size());
+			
 		}
 		
 		while(startedThreads.size() > 0) {
@@ -262,217 +357,157 @@ public class Colocalization3DMain {
 		
 		for (FittingThread ft : finishedThreads) {
 			output.add(ft.getFitObject());
+			this.statistics.addFitTime(ft.getFitTime());
 		}
 		
+		this.statistics.addStageTime(RunStatistics.OBJECT_CONSTRUCTION, constructionTime);
+		this.statistics.addStageTime(RunStatistics.FITTING, System.nanoTime() - fittingStart - constructionTime + regionTime);
+		this.statistics.addCount(RunStatistics.IMAGES, 1);
+		this.statistics.addCount(RunStatistics.OBJECTS_FIT, output.size());
+		this.statistics.addCount(RunStatistics.FITS_AVOIDED, fitsAvoided);
+		
 		return output;
 				
 	}
 	
 	/**
-	 * Checks an image object's fitted parameters for a variety of criteria like fit error, camera saturation, etc.  See the documentation in the implementation for specific checks.
-	 * @param toCheck	the ImageObject whose parameters will be checked
-	 * @return true if all the checks succeeded, false otherwise.
+	 * Creates the ImageObject that will localize a single region of an image.
+	 * <p>
+	 * This is a {@link CentroidImageObject} if centroid localization is requested in the parameters, which is much faster but less precise,
+	 * and a GaussianImageObject otherwise.
+	 * 
+	 * @param label	the label of the region in the mask.
+	 * @param mask	the mask labeling the regions of the image.
+	 * @param im	the image containing the region.
+	 * @return		an ImageObject for the region, whose position has not yet been fit.
 	 */
-	protected boolean fitParametersOk(ImageObject toCheck) {
-		
-		/**
-		 * Things to check:
-		 * 1.  finished fitting
-		 * 2.  R^2 value (replace this eventually with a better metric since I'm not least squares fitting...)
-		 * 3.  too close to image edge in x, y, or z
-		 * 4.  objects that are at or very near to camera saturation
-		 * 5.  separation between channel is reasonable (i.e. on a scale that is within the known size of the complex of interest) -- occasionally different objects or schmutz are fit together and give wacky results
-		 * 6.  theoretical fitting error
-		 */
-		
-		//finished fitting
-		if (!toCheck.finishedFitting()) return false;
-		
-		//R2 value
-		
-		if (! checkR2Ok(toCheck)) return false;
+	protected ImageObject createImageObject(int label, Image mask, Image im) {
 		
-		//image edge proximity
-		
-		if (! checkEdgesOk(toCheck)) return false;
-		
-		//saturation
-		
-		if (! checkSaturationOk(toCheck)) return false;
-		
-		//reasonable separation
-		
-		if (! checkSeparationOk(toCheck)) return false;
-		
-		//fitting error
+		if (this.parameters.hasKeyAndTrue(CENTROID_LOCALIZATION_PARAM)) {
+			return new CentroidImageObject(label, ImageFactory.createShallow(mask), ImageFactory.createShallow(im), this.parameters);
+		}
 		
-		if (! checkFittingErrorOk(toCheck)) return false;
+		return new edu.stanford.cfuller.imageanalysistools.fitting.GaussianImageObject(label, ImageFactory.createShallow(mask), ImageFactory.createShallow(im), this.parameters);
 		
-		return true;
 	}
 	
-	private boolean checkR2Ok(ImageObject obj) {
-
-		if (! this.parameters.hasKey(R2_PARAM)) {return true;}
-
-		double R2Cutoff = this.parameters.getDoubleValueForKey(R2_PARAM);
-		
-		int c = 0;
-		
-		for (double r2 : obj.getFitR2ByChannel()) {
-			if (r2 < R2Cutoff) {
-
-				this.failures.addFailure(FitFailureStatistics.R2_FAIL);
-				
-				
-				java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " R^2 = " + r2);
-				return false;
-			}
-			++c;
-		}
-		return true;
-	}
+	/**
+	 * Checks an image object's fitted parameters for a variety of criteria like fit error, camera saturation, etc.  See {@link QualityCriteria#check(ImageObject)} for the specific checks.
+	 * <p>
+	 * A failure is recorded in the failure statistics for the run.
+	 * 
+	 * @param toCheck	the ImageObject whose parameters will be checked
+	 * @return true if all the checks succeeded, false otherwise.
+	 */
+	protected boolean fitParametersOk(ImageObject toCheck) {
 		
-	private boolean checkEdgesOk(ImageObject obj) {
-		//image edges
-		double eps = 0.1; // a little wiggle room
-		double cameraSizeX = obj.getParent().getDimensionSizes().get(ImageCoordinate.X);
-		double cameraSizeY = obj.getParent().getDimensionSizes().get(ImageCoordinate.Y);
-		double numplanes = obj.getParent().getDimensionSizes().get(ImageCoordinate.Z);//this.parameters.getDoubleValueForKey(NUM_PLANES_PARAM);
-		double imageBorderSize = this.parameters.getDoubleValueForKey(BORDER_PARAM);
-		double halfZSize = this.parameters.getDoubleValueForKey(Z_BOX_SIZE_PARAM);
-		
-		if (!this.parameters.getBooleanValueForKey(DETERMINE_CORRECTION_PARAM)) {
-			imageBorderSize *= 4;  //this ensures that the correction covers the area of the objects of interest without too many problematic edge effects;
-		}
-		
-		for (FitParameters fp : obj.getFitParametersByChannel()) {
-			double pos_x = fp.getPosition(ImageCoordinate.X);
-			double pos_y = fp.getPosition(ImageCoordinate.Y);
-			double pos_z = fp.getPosition(ImageCoordinate.Z);
-		
-			if (pos_x - eps > cameraSizeX - imageBorderSize ||
-				pos_x + eps <= imageBorderSize ||
-				pos_y - eps > cameraSizeY - imageBorderSize ||
-				pos_y + eps <= imageBorderSize ||
-				pos_z - eps > numplanes - halfZSize ||
-				pos_z + eps <= halfZSize) {
-
-					this.failures.addFailure(FitFailureStatistics.EDGE_FAIL);
-					
-					
-					java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " position: " + pos_x + ", " + pos_y + ", " + pos_z);
-					
-					return false;
-				}
+		int result = this.getQualityCriteria().check(toCheck);
 		
+		if (result >= 0) {
+			this.failures.addFailure(result, toCheck.getImageID());
 		}
 		
+		return result == QualityCriteria.PASSED;
 		
-		
-		return true;
 	}
 	
-	private boolean checkSaturationOk(ImageObject obj) {
-		
-		if (this.parameters.hasKey(MAX_LEVEL_PARAM)) {
-			obj.boxImages();
-			
-			double cutoff = this.parameters.getDoubleValueForKey(MAX_LEVEL_PARAM);
-			
-			for (ImageCoordinate ic : obj.getParent()) {
-				if (obj.getParent().getValue(ic) > cutoff) {
-
-					this.failures.addFailure(FitFailureStatistics.SAT_FAIL);
-					
-					
-					obj.unboxImages();
-					java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " brightness: " + obj.getParent().getValue(ic));
-					
-					return false;
-				}
-			}
-			
-			obj.unboxImages();
-		}
-		
-		return true;
-	}
-		
-	private boolean checkSeparationOk(ImageObject obj) {
-		
-		if (! this.parameters.hasKey(DIST_CUTOFF_PARAM)) {return true;}
-		
-		int numberOfChannels = obj.getFitParametersByChannel().size();
+	/**
+	 * Checks the fitted parameters of a list of image objects in parallel, and frees their images.
+	 * <p>
+	 * The objects are split into contiguous blocks, one per thread (up to the current maximum number of fitting threads), which are
+	 * checked against the criteria with {@link QualityCriteria#check(ImageObject)}.  Failures are recorded in the failure statistics for the run.
+	 * 
+	 * @param fittedObjects	the ImageObjects to check.
+	 * @return				a List containing the objects that passed all the checks, in their original order.
+	 */
+	protected List<ImageObject> filterObjects(final List<ImageObject> fittedObjects) {
 		
-		double xy_pixelsize_2 = this.parameters.getDoubleValueForKey(PIXELSIZE_PARAM);
+		final QualityCriteria criteria = this.getQualityCriteria();
 		
-		xy_pixelsize_2 *= xy_pixelsize_2;
+		final int[] results = new int[fittedObjects.size()];
 		
-		double z_sectionsize_2 = this.parameters.getDoubleValueForKey(SECTIONSIZE_PARAM);
+		int numberOfBlocks = Math.max(1, Math.min(this.monitor.getMaxThreads(), fittedObjects.size()));
 		
-		z_sectionsize_2 *= z_sectionsize_2;
+		java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
 		
-		for (int i = 0; i < numberOfChannels; i++) {
-			for (int j = i+1; j < numberOfChannels; j++) {
-				
-				FitParameters fp1 = obj.getFitParametersByChannel().get(i);
-				FitParameters fp2 = obj.getFitParametersByChannel().get(j);
-				
-				double ijdist = xy_pixelsize_2 * Math.pow(fp1.getPosition(ImageCoordinate.X) - fp2.getPosition(ImageCoordinate.X),2) + xy_pixelsize_2 * Math.pow(fp1.getPosition(ImageCoordinate.Y) - fp2.getPosition(ImageCoordinate.Y),2) + z_sectionsize_2 * Math.pow(fp1.getPosition(ImageCoordinate.Z) - fp2.getPosition(ImageCoordinate.Z),2);
+		for (int b = 0; b < numberOfBlocks; b++) {
 			
-				ijdist = Math.sqrt(ijdist);
-						
-				if (ijdist > this.parameters.getDoubleValueForKey(DIST_CUTOFF_PARAM)) {
-					
-					this.failures.addFailure(FitFailureStatistics.SEP_FAIL);
+			final int start = (int) (((long) b)*fittedObjects.size()/numberOfBlocks);
+			final int end = (int) (((long) b + 1)*fittedObjects.size()/numberOfBlocks);
+			
+			tasks.add(new Runnable() {
+				public void run() {
 					
-					java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " separation: " + ijdist + " from channels " + i + " to " + j);
+					for (int i = start; i < end; i++) {
+						
+						ImageObject iobj = fittedObjects.get(i);
+						
+						results[i] = criteria.check(iobj);
+						
+						if (results[i] >= 0) {
+							failures.addFailure(results[i], iobj.getImageID());
+						}
+						
+						iobj.nullifyImages();
+						
+					}
 					
-					return false;
 				}
+			});
 			
-			}
 		}
 		
-		return true;
-	}
+		ConcurrencyUtils.runConcurrently(tasks, numberOfBlocks, "quality checks");
 		
-	private boolean checkFittingErrorOk(ImageObject obj) {
+		List<ImageObject> acceptedObjects = new java.util.ArrayList<ImageObject>();
 		
-		if (! this.parameters.hasKey(ERROR_CUTOFF_PARAM)) {return true;}
-		
-		double totalError = 0;
-		
-		for (double d : obj.getFitErrorByChannel()) {
-			totalError += d*d;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == QualityCriteria.PASSED) {
+				acceptedObjects.add(fittedObjects.get(i));
+			}
 		}
 		
-		totalError = Math.sqrt(totalError);
+		return acceptedObjects;
 		
-		if (totalError > this.parameters.getDoubleValueForKey(ERROR_CUTOFF_PARAM) || Double.isNaN(totalError)) {
-
-			this.failures.addFailure(FitFailureStatistics.ERR_FAIL);
-			
-			java.util.logging.Logger.getLogger(LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " fit error: " + totalError);
-			
-			return false;
-			
+	}
+	
+	/**
+	 * Gets the criteria used to check the fitted parameters of the image objects, reading them from the parameters the first time this is called in a run.
+	 * @return	the QualityCriteria for the current run.
+	 */
+	protected QualityCriteria getQualityCriteria() {
+		
+		if (this.qualityCriteria == null) {
+			this.qualityCriteria = new QualityCriteria(this.parameters);
 		}
 		
+		return this.qualityCriteria;
 		
-		return true;
 	}
-		
+	
 	public void go(Initializer in) {
 		//initialize parameters
 		
 		this.parameters = in.initializeParameters();
+		
+		this.qualityCriteria = null;
+		
+		//publish the progress of the run over JMX
+		
+		this.monitor = new RunMonitor(this.failures, ConcurrencyUtils.getMaxThreads(this.parameters));
+		
+		RunMonitor.register(this.monitor);
 				
 		//load precomputed position data if needed
 		
+		this.monitor.setCurrentStage(RunStatistics.SERIALIZATION);
+		
+		long start = System.nanoTime();
+		
 		List<ImageObject> imageObjects = this.loadExistingPositionData();
 		
+		this.statistics.addStageTime(RunStatistics.SERIALIZATION, System.nanoTime() - start);
+		
 		//otherwise, do the fitting:
 		
 		if (imageObjects == null) {
@@ -481,63 +516,142 @@ public class Colocalization3DMain {
 					
 			List<ImageAndMaskSet> allFilesToProcess = FileUtils.listFilesToProcess(this.parameters);
 			
+			P3DFitter onlineFitter = this.createOnlineFitter();
+			
+			this.monitor.startFitting(allFilesToProcess.size());
+			
 			for (ImageAndMaskSet iams : allFilesToProcess) {
 				
 				List<ImageObject> fittedObjects = this.fitObjectsInSingleImage(iams);
 				
-				for (ImageObject iobj : fittedObjects) {
-					if (this.fitParametersOk(iobj)) {
-						//java.util.logging.Logger.getLogger(LOGGER_NAME).finer("position for object " + iobj.getLabel() + " " + iobj.getPositionForChannel(0).getEntry(0) + " " + iobj.getPositionForChannel(0).getEntry(1) + " " + iobj.getPositionForChannel(0).getEntry(2));
-						imageObjects.add(iobj);
-					}
-					
-					iobj.nullifyImages();
+				this.monitor.setCurrentStage(RunStatistics.QUALITY_CHECKS);
+				
+				start = System.nanoTime();
+				
+				List<ImageObject> acceptedObjects = this.filterObjects(fittedObjects);
+				
+				this.statistics.addStageTime(RunStatistics.QUALITY_CHECKS, System.nanoTime() - start);
+				this.statistics.addCount(RunStatistics.OBJECTS_ACCEPTED, acceptedObjects.size());
+				
+				imageObjects.addAll(acceptedObjects);
+				
+				if (onlineFitter != null) {
+					this.monitor.setCurrentStage(RunStatistics.DISTRIBUTION_FIT);
+					this.updateOnlineFit(onlineFitter, acceptedObjects, iams.getImageFilename());
 				}
 				
+				this.monitor.addImageDone();
+				
 			}
 			
 		}
 		
 		java.util.logging.Logger.getLogger(LOGGER_NAME).fine(this.failures.toString());
+		java.util.logging.Logger.getLogger(LOGGER_NAME).finer(this.failures.toImageSummaryString());
 		
 		//write the objects and their positions to disk now in case something goes wrong in subsequent steps so that we don't lose them
+		
+		this.monitor.setCurrentStage(RunStatistics.SERIALIZATION);
+		
+		start = System.nanoTime();
+		
 		try {
 			FileUtils.writeFittedImageObjectsToDisk(imageObjects, this.parameters);
 		} catch (java.io.IOException e) {
 			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while writing image objects to disk: " + e.getMessage());
 		}
 		
+		this.statistics.addStageTime(RunStatistics.SERIALIZATION, System.nanoTime() - start);
+		
+		//if only checking the stored correction against these objects, do so and stop
 		
+		if (this.parameters.hasKeyAndTrue(DRIFT_CHECK_PARAM)) {
+			this.monitor.setCurrentStage(RunStatistics.CORRECTION);
+			this.checkCorrectionDrift(imageObjects);
+			this.finishRun();
+			return;
+		}
 		
 		//get a correction, either by making one or reading from disk
 		
+		this.monitor.setCurrentStage(RunStatistics.CORRECTION);
+		
+		start = System.nanoTime();
+		
 		PositionCorrector pc = new PositionCorrector(this.parameters);
 		
 		Correction c = pc.getCorrection(imageObjects);
 		
+		//add the objects to an existing correction if requested
+		
+		boolean correctionUpdated = false;
+		
+		if (this.parameters.hasKeyAndTrue(UPDATE_CORR_PARAM) && !this.parameters.hasKeyAndTrue(DET_CORR_PARAM) && c != null) {
+			
+			Correction existing = c;
+			
+			c = pc.updateCorrection(c, imageObjects);
+			
+			//if all the objects were already in the correction, it is returned unchanged, along with its TRE
+			
+			correctionUpdated = (c != existing);
+			
+		}
+		
+		this.statistics.addStageTime(RunStatistics.CORRECTION, System.nanoTime() - start);
+		
 		//get or calculate the TRE
 		
+		this.monitor.setCurrentStage(RunStatistics.TRE);
+		
+		start = System.nanoTime();
+		
 		double tre = 0;
 		
-		if (!(this.parameters.hasKeyAndTrue(DET_TRE_PARAM) && this.parameters.hasKeyAndTrue(DET_CORR_PARAM) )) {
+		if (correctionUpdated) {
+			
+			//the stored TRE does not apply to the updated correction, so it is always redetermined (whether or not determine_tre is set)
+			//by k-fold cross-validation; the objects from earlier updates are available only in the correction's source data
+			
+			tre = pc.determineSourceDataTRE(c).getPooledTre();
+			c.setTre(tre);
+			
+		} else if (!(this.parameters.hasKeyAndTrue(DET_TRE_PARAM) && this.parameters.hasKeyAndTrue(DET_CORR_PARAM) )) {
 			tre = c.getTre();
+		} else if (this.parameters.hasKey(TRE_CV_FOLDS_PARAM)) {
+			tre = pc.determineCrossValidatedTRE(imageObjects).getPooledTre();
+			c.setTre(tre);
 		} else {
 			tre = pc.determineTRE(imageObjects);
 			c.setTre(tre);
 		}
 		
+		this.statistics.addStageTime(RunStatistics.TRE, System.nanoTime() - start);
+		
 		//write the correction to disk
 		
+		this.monitor.setCurrentStage(RunStatistics.SERIALIZATION);
+		
+		start = System.nanoTime();
+		
 		try {
 			c.writeToDisk(FileUtils.getCorrectionFilename(this.parameters));
 		} catch (java.io.IOException e) {
 			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while writing correction to disk: " + e.getMessage());
 		}
 		
+		this.statistics.addStageTime(RunStatistics.SERIALIZATION, System.nanoTime() - start);
+		
 		//apply the correction, removing objects that cannot be corrected
 		
+		this.monitor.setCurrentStage(RunStatistics.CORRECTION_APPLICATION);
+		
+		start = System.nanoTime();
+		
 		RealVector diffs = pc.applyCorrection(c, imageObjects);
 		
+		List<ImageObject> allImageObjects = imageObjects;
+		
 		List<ImageObject> correctedImageObjects = new java.util.ArrayList<ImageObject>();
 		
 		for (ImageObject iobj : imageObjects) {
@@ -548,20 +662,107 @@ public class Colocalization3DMain {
 		
 		imageObjects = correctedImageObjects;
 		
+		this.statistics.addStageTime(RunStatistics.CORRECTION_APPLICATION, System.nanoTime() - start);
+		this.statistics.addCount(RunStatistics.OBJECTS_CORRECTED, imageObjects.size());
+		
 		//write the objects and their positions to disk again now that they've been corrected and filtered
+		
+		this.monitor.setCurrentStage(RunStatistics.SERIALIZATION);
+		
+		start = System.nanoTime();
+		
 		try {
 			FileUtils.writeFittedImageObjectsToDisk(imageObjects, this.parameters);
 		} catch (java.io.IOException e) {
 			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while writing image objects to disk: " + e.getMessage());
 		}
+		
+		this.statistics.addStageTime(RunStatistics.SERIALIZATION, System.nanoTime() - start);
 						
 		//fit the distribution of separations
 		
-		DistributionFitter df = new P3DFitter(this.parameters);
+		this.monitor.setCurrentStage(RunStatistics.DISTRIBUTION_FIT);
+		
+		start = System.nanoTime();
+		
+		DistributionFitter df = null;
+		
+		if (this.parameters.hasKeyAndTrue(GRADIENT_P3D_PARAM)) {
+			df = new P3DGradientFitter(this.parameters);
+		} else {
+			df = new P3DFitter(this.parameters);
+		}
 		
-		RealVector fitparams = df.fit(imageObjects, diffs);
+		RealVector fitparams = null;
+		
+		if (this.parameters.hasKey(BOOTSTRAP_REPLICATES_PARAM)) {
+			
+			long seed = DEFAULT_BOOTSTRAP_SEED;
+			double confidenceLevel = DEFAULT_BOOTSTRAP_CONFIDENCE_LEVEL;
+			
+			if (this.parameters.hasKey(BOOTSTRAP_SEED_PARAM)) {
+				seed = this.parameters.getIntValueForKey(BOOTSTRAP_SEED_PARAM);
+			}
+			
+			if (this.parameters.hasKey(BOOTSTRAP_CONFIDENCE_PARAM)) {
+				confidenceLevel = this.parameters.getDoubleValueForKey(BOOTSTRAP_CONFIDENCE_PARAM);
+			}
+			
+			BootstrapResult bootstrap = df.bootstrap(imageObjects, diffs, this.parameters.getIntValueForKey(BOOTSTRAP_REPLICATES_PARAM), seed, confidenceLevel);
+			
+			fitparams = bootstrap.getFitParameters();
+			
+			java.util.logging.Logger.getLogger(LOGGER_NAME).info(bootstrap.toString());
+			
+		} else {
+			fitparams = df.fit(imageObjects, diffs);
+		}
+		
+		this.statistics.addStageTime(RunStatistics.DISTRIBUTION_FIT, System.nanoTime() - start);
 		
 		java.util.logging.Logger.getLogger(LOGGER_NAME).info("p3d fit parameters: " + fitparams.toString());
+		
+		if (df instanceof P3DGradientFitter && ((P3DGradientFitter) df).getStandardErrors() != null) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).info("p3d fit parameter standard errors: " + ((P3DGradientFitter) df).getStandardErrors().toString());
+		}
+		
+		if (df instanceof P3DFitter && ((P3DFitter) df).getBinnedFitParameters() != null) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).info("binned p3d fit parameters: " + ((P3DFitter) df).getBinnedFitParameters().toString() + "; binned likelihood approximation error: " + ((P3DFitter) df).getBinnedApproximationError());
+		}
+		
+		if (this.parameters.hasKeyAndTrue(COMPARE_MODELS_PARAM)) {
+			this.compareDistanceModels(diffs);
+		}
+		
+		if (this.parameters.hasKeyAndTrue(GROUP_BY_IMAGE_PARAM) || this.parameters.hasKey(GROUP_KEY_PATTERN_PARAM)) {
+			this.fitGroups(df, allImageObjects, diffs);
+		}
+		
+		if (df instanceof P3DFitter && ((P3DFitter) df).getMultiStartReport() != null) {
+			
+			MultiStartReport report = ((P3DFitter) df).getMultiStartReport();
+			
+			java.util.logging.Logger.getLogger(LOGGER_NAME).info("multi-start p3d fit: " + report.getNumberOfStartsAtBest() + " of " + report.getNumberOfStarts() + " starts reached the best optimum; " + report.getNumberOfDistinctOptima() + " distinct optima.");
+			
+		}
+		
+		if (df instanceof P3DFitter && this.parameters.hasKey(PROFILE_GRID_PARAM)) {
+			
+			double confidenceLevel = DEFAULT_PROFILE_CONFIDENCE_LEVEL;
+			
+			if (this.parameters.hasKey(PROFILE_CONFIDENCE_PARAM)) {
+				confidenceLevel = this.parameters.getDoubleValueForKey(PROFILE_CONFIDENCE_PARAM);
+			}
+			
+			for (int parameterIndex = 0; parameterIndex < 2; parameterIndex++) {
+				
+				ProfileLikelihoodResult profile = ((P3DFitter) df).profileLikelihood(imageObjects, diffs, fitparams, parameterIndex, this.parameters.getIntValueForKey(PROFILE_GRID_PARAM), confidenceLevel);
+				
+				java.util.logging.Logger.getLogger(LOGGER_NAME).info(profile.toString());
+				
+			}
+			
+		}
 				
 		//output plots and information
 		
@@ -584,6 +785,274 @@ public class Colocalization3DMain {
 			
 		}
 		
+		this.finishRun();
+		
+	}
+	
+	/**
+	 * Gets the timings and counts for the stages of the analysis run so far.
+	 * @return	the RunStatistics for the current run.
+	 */
+	public RunStatistics getRunStatistics() {
+		return this.statistics;
+	}
+	
+	/**
+	 * Gets the monitor publishing the progress of the run over JMX.
+	 * @return	the RunMonitor for the current run.
+	 */
+	public RunMonitor getRunMonitor() {
+		return this.monitor;
+	}
+	
+	/**
+	 * Writes the run report and stops publishing the progress of the run.
+	 */
+	protected void finishRun() {
+		this.writeRunReport();
+		this.monitor.setCurrentStage(RunMonitor.FINISHED);
+		RunMonitor.unregister(this.monitor);
+	}
+	
+	/**
+	 * Writes the timings and counts for the stages of the analysis as a JSON report next to the position data.
+	 */
+	protected void writeRunReport() {
+		
+		String report = this.statistics.toJSON(this.failures);
+		
+		java.util.logging.Logger.getLogger(LOGGER_NAME).fine("run report:\n" + report);
+		
+		try {
+			PrintWriter p = new PrintWriter(new FileWriter(FileUtils.getRunReportFilename(this.parameters)));
+			p.print(report);
+			p.close();
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).warning("unable to write run report to file: " + e.getMessage());
+		}
+		
+	}
+
+	/**
+	 * Fits the standard candidate distributions (see {@link DistributionModelRegistry#createDefault(ParameterDictionary)}) to the distribution
+	 * of separations and writes a table comparing them by AIC and BIC.  Separations of objects that could not be corrected are excluded.
+	 * 
+	 * @param diffs		the corrected scalar distances between the channels of the objects.
+	 * @return			a ModelComparison containing the fit of each model.
+	 */
+	protected ModelComparison compareDistanceModels(RealVector diffs) {
+		
+		int count = 0;
+		
+		for (int i = 0; i < diffs.getDimension(); i++) {
+			if (diffs.getEntry(i) != -1.0*Double.MAX_VALUE) count++;
+		}
+		
+		RealVector correctedDiffs = new ArrayRealVector(count, 0.0);
+		
+		count = 0;
+		
+		for (int i = 0; i < diffs.getDimension(); i++) {
+			if (diffs.getEntry(i) != -1.0*Double.MAX_VALUE) correctedDiffs.setEntry(count++, diffs.getEntry(i));
+		}
+		
+		ModelComparison comparison = DistributionModelRegistry.createDefault(this.parameters).compareModels(correctedDiffs);
+		
+		java.util.logging.Logger.getLogger(LOGGER_NAME).info("distance model comparison:\n" + comparison.toString());
+		
+		try {
+			PrintWriter p = new PrintWriter(new FileWriter(FileUtils.getModelComparisonFilename(this.parameters)));
+			p.print(comparison.toString());
+			p.close();
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).warning("unable to write model comparison to file: " + e.getMessage());
+		}
+		
+		return comparison;
+		
+	}
+	
+	/**
+	 * Fits the distribution of separations separately for groups of objects and writes a table of the per-group parameters and counts.
+	 * <p>
+	 * Objects are grouped by the ID of the image they came from, or, if the parameter "p3d_group_key_pattern" is specified, by the part of
+	 * the image ID matching that regular expression (its first capturing group, if it has one), so that objects can be pooled by cell or condition.
+	 * Objects whose image ID does not match are grouped together.  Objects that could not be corrected are excluded.
+	 * 
+	 * @param df			the DistributionFitter to use for the fits.
+	 * @param imageObjects	the ImageObjects to which the correction was applied.
+	 * @param diffs			the corrected scalar distances between the channels of the ImageObjects, in the same order.
+	 * @return				a GroupedFitResult containing the fit for each group.
+	 */
+	protected GroupedFitResult fitGroups(DistributionFitter df, List<ImageObject> imageObjects, RealVector diffs) {
+		
+		java.util.regex.Pattern keyPattern = null;
+		
+		if (this.parameters.hasKey(GROUP_KEY_PATTERN_PARAM)) {
+			keyPattern = java.util.regex.Pattern.compile(this.parameters.getValueForKey(GROUP_KEY_PATTERN_PARAM));
+		}
+		
+		int minimumCount = DEFAULT_GROUP_MIN_COUNT;
+		
+		if (this.parameters.hasKey(GROUP_MIN_COUNT_PARAM)) {
+			minimumCount = this.parameters.getIntValueForKey(GROUP_MIN_COUNT_PARAM);
+		}
+		
+		List<ImageObject> groupedObjects = new java.util.ArrayList<ImageObject>();
+		List<Double> groupedDiffs = new java.util.ArrayList<Double>();
+		List<String> keys = new java.util.ArrayList<String>();
+		
+		for (int i = 0; i < imageObjects.size(); i++) {
+			
+			if (diffs.getEntry(i) == -1.0*Double.MAX_VALUE) continue;
+			
+			String key = imageObjects.get(i).getImageID();
+			
+			if (keyPattern != null) {
+				
+				java.util.regex.Matcher m = keyPattern.matcher(key);
+				
+				if (m.find()) {
+					key = (m.groupCount() > 0 ? m.group(1) : m.group());
+				} else {
+					key = UNMATCHED_GROUP_KEY;
+				}
+				
+			}
+			
+			groupedObjects.add(imageObjects.get(i));
+			groupedDiffs.add(diffs.getEntry(i));
+			keys.add(key);
+			
+		}
+		
+		RealVector groupedDiffVector = new ArrayRealVector(groupedDiffs.size(), 0.0);
+		
+		for (int i = 0; i < groupedDiffs.size(); i++) {
+			groupedDiffVector.setEntry(i, groupedDiffs.get(i));
+		}
+		
+		GroupedFitResult result = df.fitGroups(groupedObjects, groupedDiffVector, keys, minimumCount);
+		
+		java.util.logging.Logger.getLogger(LOGGER_NAME).info("fit " + result.getNumberOfGroups() + " groups of objects separately.");
+		
+		try {
+			PrintWriter p = new PrintWriter(new FileWriter(FileUtils.getGroupedFitFilename(this.parameters)));
+			p.print(result.toString());
+			p.close();
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).warning("unable to write per-group fits to file: " + e.getMessage());
+		}
+		
+		return result;
+		
+	}
+	
+	/**
+	 * Creates a fitter for updating the p3d fit as each image is processed, if this is requested in the parameters.
+	 * <p>
+	 * Updating the fit requires corrected distances before all the images have been processed, so this is only possible
+	 * when using a correction stored on disk rather than determining one from the objects being fit.
+	 * 
+	 * @return	a P3DFitter whose accumulated distances are empty, or null if online fitting has not been requested or is not possible.
+	 */
+	protected P3DFitter createOnlineFitter() {
+		
+		if (!this.parameters.hasKeyAndTrue(ONLINE_P3D_PARAM)) return null;
+		
+		if (this.parameters.hasKeyAndTrue(DET_CORR_PARAM)) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).warning("online p3d fitting requires a stored correction; skipping online fit.");
+			return null;
+		}
+		
+		try {
+			this.onlineCorrection = Correction.readFromDisk(FileUtils.getCorrectionFilename(this.parameters));
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while reading correction from disk for online fit: " + e.getMessage());
+		} catch (ClassNotFoundException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while reading correction from disk for online fit: " + e.getMessage());
+		}
+		
+		if (this.onlineCorrection == null) return null;
+		
+		if (this.parameters.hasKeyAndTrue(GRADIENT_P3D_PARAM)) {
+			return new P3DGradientFitter(this.parameters);
+		}
+		
+		return new P3DFitter(this.parameters);
+		
+	}
+	
+	/**
+	 * Corrects the objects accepted from a single image using the stored correction, adds their distances to those accumulated by
+	 * the online fitter, and logs the updated fit.
+	 * 
+	 * @param onlineFitter		the P3DFitter accumulating the distances.
+	 * @param newObjects		the ImageObjects accepted from the image just processed.
+	 * @param imageName			the name of the image, used for logging.
+	 */
+	protected void updateOnlineFit(P3DFitter onlineFitter, List<ImageObject> newObjects, String imageName) {
+		
+		if (newObjects.isEmpty()) return;
+		
+		PositionCorrector pc = new PositionCorrector(this.parameters);
+		
+		RealVector newDiffs = pc.applyCorrection(this.onlineCorrection, newObjects);
+		
+		//drop objects that could not be corrected
+		
+		int corrected = 0;
+		
+		for (int i = 0; i < newDiffs.getDimension(); i++) {
+			if (newDiffs.getEntry(i) != -1.0*Double.MAX_VALUE) {
+				newDiffs.setEntry(corrected++, newDiffs.getEntry(i));
+			}
+		}
+		
+		if (corrected == 0) return;
+		
+		RealVector fitparams = onlineFitter.addObservations(newDiffs.getSubVector(0, corrected));
+		
+		if (fitparams != null) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).info("online p3d fit after " + imageName + " (" + onlineFitter.getNumberOfAccumulatedObservations() + " distances, " + onlineFitter.getNumberOfAccumulatedFitEvaluations() + " likelihood evaluations): " + fitparams.toString());
+		}
+		
+	}
+	
+	/**
+	 * Checks the correction stored on disk against a set of objects whose positions should be the same in each channel, 
+	 * logging the result and writing it next to the position data.
+	 * 
+	 * @param imageObjects	the ImageObjects at which the correction will be checked.
+	 * @return				a CorrectionDriftReport containing the result of the check, or null if the correction could not be read.
+	 */
+	protected CorrectionDriftReport checkCorrectionDrift(List<ImageObject> imageObjects) {
+		
+		Correction c = null;
+		
+		try {
+			c = Correction.readFromDisk(FileUtils.getCorrectionFilename(this.parameters));
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while reading correction from disk for drift check: " + e.getMessage());
+		} catch (ClassNotFoundException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).severe("Exception encountered while reading correction from disk for drift check: " + e.getMessage());
+		}
+		
+		if (c == null) return null;
+		
+		CorrectionDriftReport report = (new PositionCorrector(this.parameters)).checkCorrectionDrift(c, imageObjects);
+		
+		java.util.logging.Logger.getLogger(LOGGER_NAME).info(report.toString());
+		
+		try {
+			PrintWriter p = new PrintWriter(new FileWriter(FileUtils.getDriftCheckFilename(this.parameters)));
+			p.print(report.toString());
+			p.close();
+		} catch (java.io.IOException e) {
+			java.util.logging.Logger.getLogger(LOGGER_NAME).warning("unable to write drift check result to file: " + e.getMessage());
+		}
+		
+		return report;
 		
 	}
 
@@ -601,6 +1070,7 @@ public class Colocalization3DMain {
 		
 		ParameterDictionary p;
 		ImageObject toFit;
+		long fitTime;
 		
 		public FittingThread(ImageObject toFit, ParameterDictionary p) {
 			this.toFit = toFit;
@@ -613,16 +1083,31 @@ public class Colocalization3DMain {
 			
 		}
 		
+		/**
+		 * Gets the time taken to fit the object; this is only valid once the thread has finished.
+		 * @return	the time, in nanoseconds.
+		 */
+		public long getFitTime() {
+			return this.fitTime;
+		}
+		
 		@Override
 		public void run() {
+			ObjectFitEvent event = new ObjectFitEvent();
+			event.begin();
+			long start = System.nanoTime();
+			boolean success = false;
 			try {
 				java.util.logging.Logger.getLogger(LOGGER_NAME).finer("Processing object #" + this.toFit.getLabel());
                 
 				this.toFit.fitPosition(this.p);
+				success = true;
 			} catch (IllegalArgumentException e) {
                 e.printStackTrace();
                 java.util.logging.Logger.getLogger(LOGGER_NAME).warning("exception while fitting in image: " + this.toFit.getImageID() + ".  Skipping and continuing.");
             }
+			this.fitTime = System.nanoTime() - start;
+			event.commit(this.toFit.getLabel(), this.toFit.getImageID(), success);
 
 		}
 		
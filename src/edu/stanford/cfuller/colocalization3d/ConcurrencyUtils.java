@@ -0,0 +1,124 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+import java.util.List;
+
+/**
+* Utility methods for running independent parts of a calculation concurrently.
+* 
+* @author Colin J. Fuller
+*/
+public class ConcurrencyUtils {
+	
+	/**
+	 * Optional parameters
+	 */
+	
+	static final String THREAD_COUNT_PARAM = "max_threads";
+	
+	/**
+	 * Gets the maximum number of threads to use for any concurrent part of the analysis: the value of the optional parameter "max_threads",
+	 * or {@link Colocalization3DMain#DEFAULT_MAX_THREADS} if it is not specified.
+	 * 
+	 * @param p		the ParameterDictionary containing the parameters for the analysis.
+	 * @return		the maximum number of threads.
+	 */
+	public static int getMaxThreads(ParameterDictionary p) {
+		
+		if (p.hasKey(THREAD_COUNT_PARAM)) {
+			return p.getIntValueForKey(THREAD_COUNT_PARAM);
+		}
+		
+		return Colocalization3DMain.DEFAULT_MAX_THREADS;
+		
+	}
+	
+	/**
+	 * Runs a list of tasks on up to the specified number of threads and waits for all of them to finish.
+	 * <p>
+	 * If only one thread is allowed, or there is only one task, the tasks are run in order on the calling thread, so that callers that are 
+	 * themselves running in parallel (for instance, fitting bootstrap replicates) do not create a thread for each call.
+	 * 
+	 * @param tasks			a List containing the tasks to run.
+	 * @param maxThreads	the maximum number of threads on which to run the tasks.
+	 * @param description	a description of the calculation (e.g. "model comparison"), used in the message of any exception.
+	 * @throws RuntimeException			if a task throws one, it is rethrown, and any tasks still running are cancelled.
+	 * @throws IllegalStateException	if the calling thread is interrupted while waiting, or a task throws a checked exception.
+	 */
+	public static void runConcurrently(List<? extends Runnable> tasks, int maxThreads, String description) {
+		
+		if (maxThreads <= 1 || tasks.size() <= 1) {
+			
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			
+			return;
+			
+		}
+		
+		java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(Math.min(maxThreads, tasks.size()));
+		
+		java.util.List<java.util.concurrent.Future<?>> results = new java.util.ArrayList<java.util.concurrent.Future<?>>();
+		
+		for (Runnable task : tasks) {
+			results.add(executor.submit(task));
+		}
+		
+		executor.shutdown();
+		
+		try {
+			
+			for (java.util.concurrent.Future<?> result : results) {
+				result.get();
+			}
+			
+		} catch (InterruptedException e) {
+			
+			executor.shutdownNow();
+			
+			Thread.currentThread().interrupt();
+			
+			throw new IllegalStateException("Interrupted during " + description + ": " + e.getMessage());
+			
+		} catch (java.util.concurrent.ExecutionException e) {
+			
+			executor.shutdownNow();
+			
+			Throwable cause = e.getCause();
+			
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			
+			throw new IllegalStateException("Exception encountered during " + description + ": " + cause.getMessage(), cause);
+			
+		}
+		
+	}
+	
+}
@@ -26,6 +26,8 @@ package edu.stanford.cfuller.colocalization3d;
 
 import java.util.List;
 
+import edu.stanford.cfuller.colocalization3d.jfr.FileIOEvent;
+import edu.stanford.cfuller.colocalization3d.jfr.ImageLoadEvent;
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
 import edu.stanford.cfuller.imageanalysistools.image.Image;
 import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
@@ -75,6 +77,11 @@ public class FileUtils {
 	
 	static final String position_xml_extension = "_position_data.xml";
 	static final String correction_xml_extension = "_correction.xml";
+	static final String drift_check_extension = "_drift_check.txt";
+	static final String tre_results_extension = "_tre_results.txt";
+	static final String group_fits_extension = "_group_fits.txt";
+	static final String model_comparison_extension = "_model_comparison.txt";
+	static final String run_report_extension = "_run_report.json";
 	static final String multi_name_sep = ",";
 
 	
@@ -185,6 +192,9 @@ public class FileUtils {
 	
 	private static List<ImageObject> unserializeXMLPositionDataFile(String filename) throws IOException, ClassNotFoundException {
 		
+		FileIOEvent ioEvent = new FileIOEvent();
+		ioEvent.begin();
+		
 		File f = new File(filename);
 
 		FileReader fr = new FileReader(f);
@@ -221,6 +231,8 @@ public class FileUtils {
 		} catch (XMLStreamException e) {
 			java.util.logging.Logger.getLogger(FileUtils.class.getName()).severe("Exception encountered while reading XML ImageObject data: " + e.getMessage());        
 		}
+		
+		ioEvent.commit(filename, FileIOEvent.READ);
 
 		return output;
 	}
@@ -232,11 +244,16 @@ public class FileUtils {
 	 * @return an Image loaded from the file.
 	 */
 	public static Image loadImage(String filename) {
+		ImageLoadEvent event = new ImageLoadEvent();
+		event.begin();
 		try {
-			return (new edu.stanford.cfuller.imageanalysistools.image.io.ImageReader()).read(filename);
+			Image im = (new edu.stanford.cfuller.imageanalysistools.image.io.ImageReader()).read(filename);
+			event.commit(filename, true);
+			return im;
 		} catch (java.io.IOException e) {
 			java.util.logging.Logger.getLogger(Colocalization3DMain.LOGGER_NAME).severe("Exception encountered while reading image from " + filename + ": " + e.getMessage());
 		}
+		event.commit(filename, false);
 		return null;
 	}
 	
@@ -283,6 +300,9 @@ public class FileUtils {
 	 */
 	public static void writeFittedImageObjectsToDisk(List<ImageObject> objects, ParameterDictionary p) throws IOException {
 		
+		FileIOEvent event = new FileIOEvent();
+		event.begin();
+		
 		String filename = FileUtils.getPositionDataFilename(p);
 		
         File f = new File(filename);
@@ -316,6 +336,8 @@ public class FileUtils {
         pw.print(sw.toString());
 
         pw.close();
+        
+        event.commit(filename, FileIOEvent.WRITE);
 	}
 	
 	/**
@@ -329,4 +351,55 @@ public class FileUtils {
 		return (dir + File.separator + filename + correction_xml_extension);
 	}
 	
+	/**
+	 * Gets a filename in which the per-object results of a TRE calculation should be stored based upon the analysis parameters.
+	 * @param p     The ParameterDictionary used for the analysis.
+	 * @return      The filename of the stored TRE results.
+	 */
+	public static String getTREStoreFilename(ParameterDictionary p) {
+		String dir = p.getValueForKey(DATA_DIR_PARAM);
+		String filename = p.getValueForKey(CORR_DATE_PARAM);
+		return (dir + File.separator + filename + tre_results_extension);
+	}
+	
+	/**
+	 * Gets a filename to which the table of per-group distribution fits should be written based upon the analysis parameters.
+	 * @param p     The ParameterDictionary used for the analysis.
+	 * @return      The filename of the table of per-group fits.
+	 */
+	public static String getGroupedFitFilename(ParameterDictionary p) {
+		String dir = p.getValueForKey(DATA_DIR_PARAM);
+		return (dir + File.separator + p.getValueForKey(BASENAME_PARAM).split(multi_name_sep)[0] + group_fits_extension);
+	}
+	
+	/**
+	 * Gets a filename to which the comparison of distance distribution models should be written based upon the analysis parameters.
+	 * @param p     The ParameterDictionary used for the analysis.
+	 * @return      The filename of the model comparison table.
+	 */
+	public static String getModelComparisonFilename(ParameterDictionary p) {
+		String dir = p.getValueForKey(DATA_DIR_PARAM);
+		return (dir + File.separator + p.getValueForKey(BASENAME_PARAM).split(multi_name_sep)[0] + model_comparison_extension);
+	}
+	
+	/**
+	 * Gets a filename to which the timings and counts for the stages of an analysis should be written based upon the analysis parameters.
+	 * @param p     The ParameterDictionary used for the analysis.
+	 * @return      The filename of the run report.
+	 */
+	public static String getRunReportFilename(ParameterDictionary p) {
+		String dir = p.getValueForKey(DATA_DIR_PARAM);
+		return (dir + File.separator + p.getValueForKey(BASENAME_PARAM).split(multi_name_sep)[0] + run_report_extension);
+	}
+	
+	/**
+	 * Gets a filename to which the result of a correction drift check should be written based upon the analysis parameters.
+	 * @param p     The ParameterDictionary used for the analysis.
+	 * @return      The filename of the drift check report.
+	 */
+	public static String getDriftCheckFilename(ParameterDictionary p) {
+		String dir = p.getValueForKey(DATA_DIR_PARAM);
+		return (dir + File.separator + p.getValueForKey(BASENAME_PARAM).split(multi_name_sep)[0] + drift_check_extension);
+	}
+	
 }
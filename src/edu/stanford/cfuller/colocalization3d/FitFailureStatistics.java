@@ -24,11 +24,17 @@
 
 package edu.stanford.cfuller.colocalization3d;
 
-import org.apache.commons.math3.linear.RealVector;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
-* Keeps track of the reasons for throwing out ImageObjects being fit and provides
+* Keeps track of the reasons for throwing out ImageObjects being fit, both in total and for each image, and provides
 * a means to print out a string representation.
+* <p>
+* Failures may be added concurrently from any number of threads; the counts are striped so that threads checking
+* different objects do not contend on a single counter, and are exact once the threads adding failures have finished.
 * 
 * @author Colin J. Fuller
 */
@@ -39,16 +45,28 @@ public class FitFailureStatistics {
 	public final static int SAT_FAIL = 2;
 	public final static int SEP_FAIL = 3;
 	public final static int ERR_FAIL = 4;
+	public final static int SIZE_FAIL = 5;
 	
-	final int n_reasons = 5;
+	final static int n_reasons = 6;
 	
-	RealVector failCounts;
+	LongAdder[] failCounts;
+	
+	ConcurrentMap<String, LongAdder[]> failCountsByImage;
 	
 	/**
 	* Creates a new FitFailureStatistics object with all counts initialized to zero.
 	*/
 	public FitFailureStatistics() {
-		this.failCounts = new org.apache.commons.math3.linear.ArrayRealVector(n_reasons, 0.0);
+		this.failCounts = createCounters();
+		this.failCountsByImage = new ConcurrentHashMap<String, LongAdder[]>();
+	}
+	
+	private static LongAdder[] createCounters() {
+		LongAdder[] counters = new LongAdder[n_reasons];
+		for (int i = 0; i < n_reasons; i++) {
+			counters[i] = new LongAdder();
+		}
+		return counters;
 	}
 	
 	/**
@@ -56,7 +74,32 @@ public class FitFailureStatistics {
 	* @param reason an int specifying the reason for the failure.  This should be one of the declared static constants.
 	*/
 	public void addFailure(int reason) {
-		this.failCounts.setEntry(reason, this.failCounts.getEntry(reason)+1);
+		this.failCounts[reason].increment();
+	}
+	
+	/**
+	* Increments the failure counter for a specific reason, both in total and for the image containing the object.
+	* @param reason an int specifying the reason for the failure.  This should be one of the declared static constants.
+	* @param imageID the ID of the image containing the object that failed; if this is null, only the total is incremented.
+	*/
+	public void addFailure(int reason, String imageID) {
+		
+		this.failCounts[reason].increment();
+		
+		if (imageID == null) return;
+		
+		LongAdder[] imageCounts = this.failCountsByImage.get(imageID);
+		
+		if (imageCounts == null) {
+			LongAdder[] newCounts = createCounters();
+			imageCounts = this.failCountsByImage.putIfAbsent(imageID, newCounts);
+			if (imageCounts == null) {
+				imageCounts = newCounts;
+			}
+		}
+		
+		imageCounts[reason].increment();
+		
 	}
 	
 	/**
@@ -65,7 +108,41 @@ public class FitFailureStatistics {
 	* @return the number of failures for the specified reason.
 	*/
 	public int getFailureCount(int reason) {
-		return (int) this.failCounts.getEntry(reason);
+		return this.failCounts[reason].intValue();
+	}
+	
+	/**
+	* Gets the failure counter for a specific reason in a single image.
+	* @param reason an int specifying the reason for the failure.  This should be one of the declared static constants.
+	* @param imageID the ID of the image.
+	* @return the number of failures for the specified reason in the specified image.
+	*/
+	public int getFailureCount(int reason, String imageID) {
+		LongAdder[] imageCounts = this.failCountsByImage.get(imageID);
+		return (imageCounts == null ? 0 : imageCounts[reason].intValue());
+	}
+	
+	/**
+	* Gets the total number of failures in a single image, for any reason.
+	* @param imageID the ID of the image.
+	* @return the number of failures in the specified image.
+	*/
+	public int getFailureCount(String imageID) {
+		int total = 0;
+		for (int reason = 0; reason < n_reasons; reason++) {
+			total += this.getFailureCount(reason, imageID);
+		}
+		return total;
+	}
+	
+	/**
+	* Gets the IDs of the images in which there have been failures.
+	* @return a List containing the image IDs, in sorted order.
+	*/
+	public List<String> getImageIDs() {
+		List<String> ids = new java.util.ArrayList<String>(this.failCountsByImage.keySet());
+		java.util.Collections.sort(ids);
+		return ids;
 	}
 	
 	/**
@@ -79,6 +156,19 @@ public class FitFailureStatistics {
 		result += "R^2 value: " + this.getFailureCount(R2_FAIL) + "\n";
 		result += "Fitting error: " + this.getFailureCount(ERR_FAIL) + "\n";
 		result += "Channel separation: " + this.getFailureCount(SEP_FAIL) + "\n";
+		result += "Region size: " + this.getFailureCount(SIZE_FAIL) + "\n";
+		return result;
+	}
+	
+	/**
+	* Gets a formatted string representation of the failures in each image.
+	* @return a String containing one line per image with failures, giving the count for each reason.
+	*/
+	public String toImageSummaryString() {
+		String result = "Objects on which fitting failed, by image (edge, brightness, R^2, fitting error, separation, size):\n";
+		for (String imageID : this.getImageIDs()) {
+			result += imageID + ": " + this.getFailureCount(EDGE_FAIL, imageID) + ", " + this.getFailureCount(SAT_FAIL, imageID) + ", " + this.getFailureCount(R2_FAIL, imageID) + ", " + this.getFailureCount(ERR_FAIL, imageID) + ", " + this.getFailureCount(SEP_FAIL, imageID) + ", " + this.getFailureCount(SIZE_FAIL, imageID) + "\n";
+		}
 		return result;
 	}
  	
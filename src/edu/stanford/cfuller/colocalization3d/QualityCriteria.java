@@ -0,0 +1,340 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.FitParameters;
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.image.ImageCoordinate;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+/**
+* The criteria used to check the fitted parameters of an image object, read once from the parameters of a run.
+* <p>
+* Checking an object does not read the parameters and, unless FINER logging was enabled when the criteria were created,
+* does not build any log messages.  A QualityCriteria is immutable and may be used to check objects from any number of threads at once.
+* 
+* @author Colin J. Fuller
+*/
+public final class QualityCriteria {
+	
+	/**
+	* Returned by {@link #check(ImageObject)} for an object that passes all the criteria.
+	*/
+	public final static int PASSED = -1;
+	
+	/**
+	* Returned by {@link #check(ImageObject)} for an object whose fitting did not finish.
+	*/
+	public final static int UNFINISHED = -2;
+	
+	/**
+	* Returned by {@link #screen(RegionStatistics, int, ImageCoordinate)} for a label that has no voxels in the mask.
+	*/
+	public final static int EMPTY_REGION = -3;
+	
+	final static double EDGE_EPS = 0.1; // a little wiggle room
+	
+	private final boolean checkR2;
+	private final double r2Cutoff;
+	
+	private final double imageBorderSize;
+	private final double halfZSize;
+	
+	private final boolean checkSaturation;
+	private final double maxLevel;
+	
+	private final boolean checkSeparation;
+	private final double distanceCutoffSquared;
+	private final double xyPixelSizeSquared;
+	private final double zSectionSizeSquared;
+	
+	private final boolean checkFittingError;
+	private final double errorCutoff;
+	
+	private final int minRegionVoxels;
+	
+	private final boolean logDetails;
+	
+	/**
+	* Creates a new QualityCriteria from the parameters of a run.
+	* 
+	* @param p	the ParameterDictionary containing the cutoffs for each check; a check whose cutoff is not specified always passes.
+	*/
+	public QualityCriteria(ParameterDictionary p) {
+		
+		this.checkR2 = p.hasKey(Colocalization3DMain.R2_PARAM);
+		this.r2Cutoff = this.checkR2 ? p.getDoubleValueForKey(Colocalization3DMain.R2_PARAM) : 0;
+		
+		double borderSize = p.getDoubleValueForKey(Colocalization3DMain.BORDER_PARAM);
+		
+		if (!p.getBooleanValueForKey(Colocalization3DMain.DETERMINE_CORRECTION_PARAM)) {
+			borderSize *= 4;  //this ensures that the correction covers the area of the objects of interest without too many problematic edge effects;
+		}
+		
+		this.imageBorderSize = borderSize;
+		this.halfZSize = p.getDoubleValueForKey(Colocalization3DMain.Z_BOX_SIZE_PARAM);
+		
+		this.checkSaturation = p.hasKey(Colocalization3DMain.MAX_LEVEL_PARAM);
+		this.maxLevel = this.checkSaturation ? p.getDoubleValueForKey(Colocalization3DMain.MAX_LEVEL_PARAM) : 0;
+		
+		this.checkSeparation = p.hasKey(Colocalization3DMain.DIST_CUTOFF_PARAM);
+		
+		if (this.checkSeparation) {
+			double distanceCutoff = p.getDoubleValueForKey(Colocalization3DMain.DIST_CUTOFF_PARAM);
+			double xyPixelSize = p.getDoubleValueForKey(Colocalization3DMain.PIXELSIZE_PARAM);
+			double zSectionSize = p.getDoubleValueForKey(Colocalization3DMain.SECTIONSIZE_PARAM);
+			this.distanceCutoffSquared = distanceCutoff*distanceCutoff;
+			this.xyPixelSizeSquared = xyPixelSize*xyPixelSize;
+			this.zSectionSizeSquared = zSectionSize*zSectionSize;
+		} else {
+			this.distanceCutoffSquared = 0;
+			this.xyPixelSizeSquared = 0;
+			this.zSectionSizeSquared = 0;
+		}
+		
+		this.checkFittingError = p.hasKey(Colocalization3DMain.ERROR_CUTOFF_PARAM);
+		this.errorCutoff = this.checkFittingError ? p.getDoubleValueForKey(Colocalization3DMain.ERROR_CUTOFF_PARAM) : 0;
+		
+		this.minRegionVoxels = p.hasKey(Colocalization3DMain.MIN_REGION_VOXELS_PARAM) ? p.getIntValueForKey(Colocalization3DMain.MIN_REGION_VOXELS_PARAM) : 1;
+		
+		this.logDetails = Logger.getLogger(Colocalization3DMain.LOGGER_NAME).isLoggable(Level.FINER);
+		
+	}
+	
+	/**
+	* Checks an image object's fitted parameters against the criteria.
+	* <p>
+	* The checks are, in order: whether the fitting finished, the R^2 value of the fit in each channel, proximity to the edge of the image,
+	* brightness near camera saturation, separation between the channels on a scale larger than the complex of interest (occasionally
+	* different objects or schmutz are fit together and give wacky results), and the theoretical fitting error.  Checking stops at the first
+	* failure.
+	* 
+	* @param obj	the ImageObject whose parameters will be checked.
+	* @return		{@link #PASSED} if all the checks succeeded, {@link #UNFINISHED} if the fitting did not finish, or otherwise the
+	* 				reason for the failure as one of the constants in {@link FitFailureStatistics}.
+	*/
+	public int check(ImageObject obj) {
+		
+		if (!obj.finishedFitting()) return UNFINISHED;
+		
+		if (this.checkR2 && !this.r2Ok(obj)) return FitFailureStatistics.R2_FAIL;
+		
+		if (!this.edgesOk(obj)) return FitFailureStatistics.EDGE_FAIL;
+		
+		if (this.checkSaturation && !this.saturationOk(obj)) return FitFailureStatistics.SAT_FAIL;
+		
+		if (this.checkSeparation && !this.separationOk(obj)) return FitFailureStatistics.SEP_FAIL;
+		
+		if (this.checkFittingError && !this.fittingErrorOk(obj)) return FitFailureStatistics.ERR_FAIL;
+		
+		return PASSED;
+		
+	}
+	
+	/**
+	* Screens a region before it is fit, using only its statistics, for criteria it is certain (or, for the size, required) to fail.
+	* <p>
+	* A region is rejected if it has no voxels; if it has fewer voxels than the minimum region size, when one is specified; if every voxel
+	* lies in the border excluded by the edge check after fitting, so that any fitted position within the region would fail that check;
+	* or if it fails {@link #saturationOk(double)}.
+	* 
+	* @param regions		the RegionStatistics of the mask containing the region.
+	* @param label			the label of the region.
+	* @param imageSizes		the dimension sizes of the image being fit.
+	* @return				{@link #PASSED} if the region should be fit, {@link #EMPTY_REGION} if it has no voxels, or otherwise the reason for
+	* 						the rejection as one of the constants in {@link FitFailureStatistics}.
+	*/
+	public int screen(RegionStatistics regions, int label, ImageCoordinate imageSizes) {
+		
+		int voxelCount = regions.getVoxelCount(label);
+		
+		if (voxelCount == 0) return EMPTY_REGION;
+		
+		if (voxelCount < this.minRegionVoxels) return FitFailureStatistics.SIZE_FAIL;
+		
+		//a voxel at coordinate i spans positions i to i+1, so the region spans from its minimum coordinate to one past its maximum
+		
+		if (this.regionInBorder(regions.getBoundingBoxMin(label, ImageCoordinate.X), regions.getBoundingBoxMax(label, ImageCoordinate.X) + 1, imageSizes.get(ImageCoordinate.X), this.imageBorderSize) ||
+			this.regionInBorder(regions.getBoundingBoxMin(label, ImageCoordinate.Y), regions.getBoundingBoxMax(label, ImageCoordinate.Y) + 1, imageSizes.get(ImageCoordinate.Y), this.imageBorderSize) ||
+			this.regionInBorder(regions.getBoundingBoxMin(label, ImageCoordinate.Z), regions.getBoundingBoxMax(label, ImageCoordinate.Z) + 1, imageSizes.get(ImageCoordinate.Z), this.halfZSize)) {
+			return FitFailureStatistics.EDGE_FAIL;
+		}
+		
+		if (!this.saturationOk(regions.getMaxIntensity(label))) return FitFailureStatistics.SAT_FAIL;
+		
+		return PASSED;
+		
+	}
+	
+	/**
+	* Checks whether a region spanning the given positions lies entirely within the border that the edge check excludes, using the same
+	* comparisons as the check after fitting.
+	*/
+	private boolean regionInBorder(double lowest, double highest, double size, double borderSize) {
+		return (highest + EDGE_EPS <= borderSize || lowest - EDGE_EPS > size - borderSize);
+	}
+	
+	/**
+	* Checks the maximum intensity of a region against the saturation cutoff, without fitting or scanning it.
+	* <p>
+	* This covers the voxels of the region itself, rather than the box around it that is checked after fitting; saturation in a region
+	* that fits within its box is always caught by both, while saturation in the part of a larger region outside the box is caught only by this check.
+	* 
+	* @param maxIntensity	the maximum intensity in the region, over all channels (see {@link RegionStatistics#getMaxIntensity(int)}).
+	* @return				false if a saturation cutoff was specified and the intensity exceeds it, true otherwise.
+	*/
+	public boolean saturationOk(double maxIntensity) {
+		return !(this.checkSaturation && maxIntensity > this.maxLevel);
+	}
+	
+	private boolean r2Ok(ImageObject obj) {
+		
+		for (double r2 : obj.getFitR2ByChannel()) {
+			if (r2 < this.r2Cutoff) {
+				if (this.logDetails) {
+					Logger.getLogger(Colocalization3DMain.LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " R^2 = " + r2);
+				}
+				return false;
+			}
+		}
+		
+		return true;
+		
+	}
+	
+	private boolean edgesOk(ImageObject obj) {
+		
+		double cameraSizeX = obj.getParent().getDimensionSizes().get(ImageCoordinate.X);
+		double cameraSizeY = obj.getParent().getDimensionSizes().get(ImageCoordinate.Y);
+		double numplanes = obj.getParent().getDimensionSizes().get(ImageCoordinate.Z);
+		
+		for (FitParameters fp : obj.getFitParametersByChannel()) {
+			
+			double pos_x = fp.getPosition(ImageCoordinate.X);
+			double pos_y = fp.getPosition(ImageCoordinate.Y);
+			double pos_z = fp.getPosition(ImageCoordinate.Z);
+			
+			if (pos_x - EDGE_EPS > cameraSizeX - this.imageBorderSize ||
+				pos_x + EDGE_EPS <= this.imageBorderSize ||
+				pos_y - EDGE_EPS > cameraSizeY - this.imageBorderSize ||
+				pos_y + EDGE_EPS <= this.imageBorderSize ||
+				pos_z - EDGE_EPS > numplanes - this.halfZSize ||
+				pos_z + EDGE_EPS <= this.halfZSize) {
+				
+				if (this.logDetails) {
+					Logger.getLogger(Colocalization3DMain.LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " position: " + pos_x + ", " + pos_y + ", " + pos_z);
+				}
+				
+				return false;
+				
+			}
+			
+		}
+		
+		return true;
+		
+	}
+	
+	private boolean saturationOk(ImageObject obj) {
+		
+		obj.boxImages();
+		
+		try {
+			for (ImageCoordinate ic : obj.getParent()) {
+				if (obj.getParent().getValue(ic) > this.maxLevel) {
+					if (this.logDetails) {
+						Logger.getLogger(Colocalization3DMain.LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " brightness: " + obj.getParent().getValue(ic));
+					}
+					return false;
+				}
+			}
+		} finally {
+			obj.unboxImages();
+		}
+		
+		return true;
+		
+	}
+	
+	private boolean separationOk(ImageObject obj) {
+		
+		java.util.List<FitParameters> channels = obj.getFitParametersByChannel();
+		
+		int numberOfChannels = channels.size();
+		
+		for (int i = 0; i < numberOfChannels; i++) {
+			
+			FitParameters fp1 = channels.get(i);
+			
+			for (int j = i+1; j < numberOfChannels; j++) {
+				
+				FitParameters fp2 = channels.get(j);
+				
+				double dx = fp1.getPosition(ImageCoordinate.X) - fp2.getPosition(ImageCoordinate.X);
+				double dy = fp1.getPosition(ImageCoordinate.Y) - fp2.getPosition(ImageCoordinate.Y);
+				double dz = fp1.getPosition(ImageCoordinate.Z) - fp2.getPosition(ImageCoordinate.Z);
+				
+				double ijdist2 = this.xyPixelSizeSquared*(dx*dx + dy*dy) + this.zSectionSizeSquared*dz*dz;
+				
+				if (ijdist2 > this.distanceCutoffSquared) {
+					if (this.logDetails) {
+						Logger.getLogger(Colocalization3DMain.LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " separation: " + Math.sqrt(ijdist2) + " from channels " + i + " to " + j);
+					}
+					return false;
+				}
+				
+			}
+			
+		}
+		
+		return true;
+		
+	}
+	
+	private boolean fittingErrorOk(ImageObject obj) {
+		
+		double totalError = 0;
+		
+		for (double d : obj.getFitErrorByChannel()) {
+			totalError += d*d;
+		}
+		
+		totalError = Math.sqrt(totalError);
+		
+		if (totalError > this.errorCutoff || Double.isNaN(totalError)) {
+			if (this.logDetails) {
+				Logger.getLogger(Colocalization3DMain.LOGGER_NAME).finer("check failed for object " + obj.getLabel() + " fit error: " + totalError);
+			}
+			return false;
+		}
+		
+		return true;
+		
+	}
+	
+}
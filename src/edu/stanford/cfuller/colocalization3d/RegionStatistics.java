@@ -0,0 +1,199 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+import edu.stanford.cfuller.imageanalysistools.image.Image;
+import edu.stanford.cfuller.imageanalysistools.image.ImageCoordinate;
+
+/**
+* Statistics of each labeled region in a mask, gathered in a single pass over the mask and its image: the highest label,
+* and for each region the number of voxels, the bounding box in x, y, and z, and the maximum intensity in any channel.
+* <p>
+* These allow regions to be screened before any fitting is done on them.
+* 
+* @author Colin J. Fuller
+*/
+public class RegionStatistics {
+	
+	final static int INITIAL_CAPACITY = 64;
+	
+	final static int[] BOX_DIMENSIONS = {ImageCoordinate.X, ImageCoordinate.Y, ImageCoordinate.Z};
+	
+	int maxRegionId;
+	
+	int[] voxelCounts;
+	float[] maxIntensities;
+	
+	int[][] boxMin;
+	int[][] boxMax;
+	
+	/**
+	* Gathers the statistics of the regions in a mask.
+	* <p>
+	* If the mask has the same number of channels as the image, each mask voxel covers only the corresponding voxel in the image; otherwise,
+	* each mask voxel covers the voxels of every channel in the image at the same x, y, z, and t.
+	* 
+	* @param mask	an Image in which each region is labeled with a distinct positive integer, and the background is zero.
+	* @param image	the Image whose intensities will be examined.
+	*/
+	public RegionStatistics(Image mask, Image image) {
+		
+		this.maxRegionId = 0;
+		this.voxelCounts = new int[INITIAL_CAPACITY];
+		this.maxIntensities = new float[INITIAL_CAPACITY];
+		this.boxMin = new int[BOX_DIMENSIONS.length][INITIAL_CAPACITY];
+		this.boxMax = new int[BOX_DIMENSIONS.length][INITIAL_CAPACITY];
+		
+		int numberOfChannels = image.getDimensionSizes().get(ImageCoordinate.C);
+		boolean channelsMatch = (mask.getDimensionSizes().get(ImageCoordinate.C) == numberOfChannels);
+		
+		ImageCoordinate imageCoord = ImageCoordinate.createCoordXYZCT(0, 0, 0, 0, 0);
+		
+		for (ImageCoordinate ic : mask) {
+			
+			int label = (int) mask.getValue(ic);
+			
+			if (label <= 0) continue;
+			
+			if (label >= this.voxelCounts.length) {
+				this.grow(label + 1);
+			}
+			
+			if (this.voxelCounts[label] == 0) {
+				this.maxIntensities[label] = Float.NEGATIVE_INFINITY;
+				for (int d = 0; d < BOX_DIMENSIONS.length; d++) {
+					this.boxMin[d][label] = Integer.MAX_VALUE;
+					this.boxMax[d][label] = Integer.MIN_VALUE;
+				}
+			}
+			
+			for (int d = 0; d < BOX_DIMENSIONS.length; d++) {
+				int position = ic.get(BOX_DIMENSIONS[d]);
+				if (position < this.boxMin[d][label]) this.boxMin[d][label] = position;
+				if (position > this.boxMax[d][label]) this.boxMax[d][label] = position;
+			}
+			
+			this.voxelCounts[label]++;
+			
+			if (label > this.maxRegionId) {
+				this.maxRegionId = label;
+			}
+			
+			float max = this.maxIntensities[label];
+			
+			if (channelsMatch) {
+				
+				float value = image.getValue(ic);
+				if (value > max) max = value;
+				
+			} else {
+				
+				imageCoord.set(ImageCoordinate.X, ic.get(ImageCoordinate.X));
+				imageCoord.set(ImageCoordinate.Y, ic.get(ImageCoordinate.Y));
+				imageCoord.set(ImageCoordinate.Z, ic.get(ImageCoordinate.Z));
+				imageCoord.set(ImageCoordinate.T, ic.get(ImageCoordinate.T));
+				
+				for (int c = 0; c < numberOfChannels; c++) {
+					imageCoord.set(ImageCoordinate.C, c);
+					float value = image.getValue(imageCoord);
+					if (value > max) max = value;
+				}
+				
+			}
+			
+			this.maxIntensities[label] = max;
+			
+		}
+		
+		imageCoord.recycle();
+		
+	}
+	
+	private void grow(int minimumCapacity) {
+		int capacity = Math.max(minimumCapacity, 2*this.voxelCounts.length);
+		this.voxelCounts = java.util.Arrays.copyOf(this.voxelCounts, capacity);
+		this.maxIntensities = java.util.Arrays.copyOf(this.maxIntensities, capacity);
+		for (int d = 0; d < BOX_DIMENSIONS.length; d++) {
+			this.boxMin[d] = java.util.Arrays.copyOf(this.boxMin[d], capacity);
+			this.boxMax[d] = java.util.Arrays.copyOf(this.boxMax[d], capacity);
+		}
+	}
+	
+	/**
+	* Gets the highest label of any region in the mask.
+	* @return	the highest label, or 0 if the mask contains no regions.
+	*/
+	public int getMaxRegionId() {
+		return this.maxRegionId;
+	}
+	
+	/**
+	* Gets the number of voxels in a region.
+	* @param label	the label of the region.
+	* @return		the number of voxels in the mask with that label, or 0 if there are none.
+	*/
+	public int getVoxelCount(int label) {
+		if (label <= 0 || label >= this.voxelCounts.length) return 0;
+		return this.voxelCounts[label];
+	}
+	
+	/**
+	* Gets the lowest coordinate of any voxel in a region.
+	* @param label		the label of the region; this must contain at least one voxel.
+	* @param dimension	the dimension; one of ImageCoordinate.X, ImageCoordinate.Y, or ImageCoordinate.Z.
+	* @return			the lowest coordinate in that dimension.
+	*/
+	public int getBoundingBoxMin(int label, int dimension) {
+		return this.boxMin[boxIndex(dimension)][label];
+	}
+	
+	/**
+	* Gets the highest coordinate of any voxel in a region.
+	* @param label		the label of the region; this must contain at least one voxel.
+	* @param dimension	the dimension; one of ImageCoordinate.X, ImageCoordinate.Y, or ImageCoordinate.Z.
+	* @return			the highest coordinate in that dimension.
+	*/
+	public int getBoundingBoxMax(int label, int dimension) {
+		return this.boxMax[boxIndex(dimension)][label];
+	}
+	
+	private static int boxIndex(int dimension) {
+		for (int d = 0; d < BOX_DIMENSIONS.length; d++) {
+			if (BOX_DIMENSIONS[d] == dimension) return d;
+		}
+		throw new IllegalArgumentException("The bounding box is only recorded in x, y, and z; got dimension " + dimension + ".");
+	}
+	
+	/**
+	* Gets the maximum intensity in a region, over all channels.
+	* @param label	the label of the region.
+	* @return		the maximum intensity, or negative infinity if the region contains no voxels.
+	*/
+	public double getMaxIntensity(int label) {
+		if (this.getVoxelCount(label) == 0) return Double.NEGATIVE_INFINITY;
+		return this.maxIntensities[label];
+	}
+	
+}
@@ -0,0 +1,259 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+/**
+* Publishes the progress of an analysis run over JMX, so that a long run can be watched, and its number of fitting threads
+* adjusted, from a tool like jconsole while it is in progress.
+* <p>
+* The progress is updated from the thread running the analysis; the attributes may be read, and the maximum number of threads set, from any thread.
+* 
+* @author Colin J. Fuller
+*/
+public class RunMonitor implements RunMonitorMBean {
+	
+	public final static String OBJECT_NAME = "edu.stanford.cfuller.colocalization3d:type=RunMonitor";
+	
+	public final static String STARTING = "starting";
+	public final static String FINISHED = "finished";
+	
+	FitFailureStatistics failures;
+	
+	volatile String currentStage;
+	volatile long imagesTotal;
+	volatile long imagesDone;
+	volatile long objectsFit;
+	volatile long fitsAvoided;
+	volatile int queueDepth;
+	volatile int activeWorkers;
+	volatile int maxThreads;
+	volatile long fittingStartTime;
+	
+	static RunMonitor registered;
+	
+	/**
+	* Creates a new RunMonitor.
+	* 
+	* @param failures	the FitFailureStatistics for the run, from which the failure counts will be read.
+	* @param maxThreads	the initial maximum number of fitting threads.
+	*/
+	public RunMonitor(FitFailureStatistics failures, int maxThreads) {
+		this.failures = failures;
+		this.maxThreads = maxThreads;
+		this.currentStage = STARTING;
+		this.fittingStartTime = -1;
+	}
+	
+	/**
+	* Registers a monitor with the platform MBean server under {@link #OBJECT_NAME}, replacing any monitor from an earlier run in the same virtual machine.
+	* <p>
+	* If registration fails, a warning is logged and the run continues unmonitored.
+	* @param monitor	the RunMonitor to register.
+	*/
+	public synchronized static void register(RunMonitor monitor) {
+		
+		try {
+			
+			javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+			javax.management.ObjectName name = new javax.management.ObjectName(OBJECT_NAME);
+			
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			
+			server.registerMBean(monitor, name);
+			
+			registered = monitor;
+			
+		} catch (javax.management.JMException e) {
+			java.util.logging.Logger.getLogger(Colocalization3DMain.LOGGER_NAME).warning("unable to register run monitor: " + e.getMessage());
+		}
+		
+	}
+	
+	/**
+	* Unregisters a monitor from the platform MBean server, if it is the one currently registered.
+	* @param monitor	the RunMonitor to unregister.
+	*/
+	public synchronized static void unregister(RunMonitor monitor) {
+		
+		if (registered != monitor) return;
+		
+		try {
+			java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(new javax.management.ObjectName(OBJECT_NAME));
+		} catch (javax.management.JMException e) {
+			java.util.logging.Logger.getLogger(Colocalization3DMain.LOGGER_NAME).warning("unable to unregister run monitor: " + e.getMessage());
+		}
+		
+		registered = null;
+		
+	}
+	
+	/**
+	* Sets the name of the stage of the analysis currently running.
+	* @param stage	a String naming the stage; this should be one of the stage constants in {@link RunStatistics}, or one of the declared static constants.
+	*/
+	public void setCurrentStage(String stage) {
+		this.currentStage = stage;
+	}
+	
+	/**
+	* Records that fitting is starting on a set of images; the throughput and estimated time remaining are measured from now.
+	* @param imagesTotal	the number of images to be fit.
+	*/
+	public void startFitting(long imagesTotal) {
+		this.imagesTotal = imagesTotal;
+		this.fittingStartTime = System.nanoTime();
+	}
+	
+	/**
+	* Records that an image has been fit and checked.
+	*/
+	public void addImageDone() {
+		this.imagesDone++;
+	}
+	
+	/**
+	* Records that the fitting of some objects has finished.
+	* @param n	the number of objects.
+	*/
+	public void addObjectsFit(int n) {
+		this.objectsFit += n;
+	}
+	
+	/**
+	* Records that some regions were rejected by the screening before fitting.
+	* @param n	the number of regions.
+	*/
+	public void addFitsAvoided(int n) {
+		this.fitsAvoided += n;
+	}
+	
+	/**
+	* Sets the number of objects in the current image that have not yet been handed to a fitting thread.
+	* @param queueDepth	the number of queued objects.
+	*/
+	public void setQueueDepth(int queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+	
+	/**
+	* Sets the number of fitting threads currently running.
+	* @param activeWorkers	the number of active workers.
+	*/
+	public void setActiveWorkers(int activeWorkers) {
+		this.activeWorkers = activeWorkers;
+	}
+	
+	public String getCurrentStage() {
+		return this.currentStage;
+	}
+	
+	public long getImagesDone() {
+		return this.imagesDone;
+	}
+	
+	public long getImagesPending() {
+		return Math.max(this.imagesTotal - this.imagesDone, 0);
+	}
+	
+	public long getObjectsFit() {
+		return this.objectsFit;
+	}
+	
+	public long getFitsAvoided() {
+		return this.fitsAvoided;
+	}
+	
+	public int getQueueDepth() {
+		return this.queueDepth;
+	}
+	
+	public int getActiveWorkers() {
+		return this.activeWorkers;
+	}
+	
+	public int getMaxThreads() {
+		return this.maxThreads;
+	}
+	
+	public void setMaxThreads(int maxThreads) {
+		
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("The maximum number of threads must be at least 1; got " + maxThreads + ".");
+		}
+		
+		java.util.logging.Logger.getLogger(Colocalization3DMain.LOGGER_NAME).info("maximum number of fitting threads changed from " + this.maxThreads + " to " + maxThreads);
+		
+		this.maxThreads = maxThreads;
+		
+	}
+	
+	public double getFitThroughput() {
+		
+		long start = this.fittingStartTime;
+		
+		if (start < 0) return 0;
+		
+		return this.objectsFit/((System.nanoTime() - start)*1e-9);
+		
+	}
+	
+	public double getEstimatedSecondsRemaining() {
+		
+		long start = this.fittingStartTime;
+		long done = this.imagesDone;
+		
+		if (start < 0 || done == 0) return -1;
+		
+		return (System.nanoTime() - start)*1e-9/done*this.getImagesPending();
+		
+	}
+	
+	public long getEdgeFailures() {
+		return this.failures.getFailureCount(FitFailureStatistics.EDGE_FAIL);
+	}
+	
+	public long getSaturationFailures() {
+		return this.failures.getFailureCount(FitFailureStatistics.SAT_FAIL);
+	}
+	
+	public long getR2Failures() {
+		return this.failures.getFailureCount(FitFailureStatistics.R2_FAIL);
+	}
+	
+	public long getFitErrorFailures() {
+		return this.failures.getFailureCount(FitFailureStatistics.ERR_FAIL);
+	}
+	
+	public long getSeparationFailures() {
+		return this.failures.getFailureCount(FitFailureStatistics.SEP_FAIL);
+	}
+	
+	public long getSizeFailures() {
+		return this.failures.getFailureCount(FitFailureStatistics.SIZE_FAIL);
+	}
+	
+}
@@ -0,0 +1,136 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+/**
+* Management interface for {@link RunMonitor}, exposing the progress of an analysis run over JMX.
+* 
+* @author Colin J. Fuller
+*/
+public interface RunMonitorMBean {
+	
+	/**
+	* Gets the name of the stage of the analysis currently running.
+	* @return	a String naming the stage; this is one of the stage constants in {@link RunStatistics}, or one of the constants in {@link RunMonitor}.
+	*/
+	public String getCurrentStage();
+	
+	/**
+	* Gets the number of images whose objects have been fit and checked.
+	* @return	the number of images done.
+	*/
+	public long getImagesDone();
+	
+	/**
+	* Gets the number of images that remain to be fit.
+	* @return	the number of images pending, including the one currently being fit.
+	*/
+	public long getImagesPending();
+	
+	/**
+	* Gets the number of objects whose fitting has finished, whether or not they later pass the quality checks.
+	* @return	the number of objects fit.
+	*/
+	public long getObjectsFit();
+	
+	/**
+	* Gets the number of regions that were rejected by the screening before fitting, and so were never fit.
+	* @return	the number of fits avoided.
+	*/
+	public long getFitsAvoided();
+	
+	/**
+	* Gets the number of objects in the current image that have not yet been handed to a fitting thread.
+	* @return	the number of queued objects.
+	*/
+	public int getQueueDepth();
+	
+	/**
+	* Gets the number of fitting threads currently running.
+	* @return	the number of active workers.
+	*/
+	public int getActiveWorkers();
+	
+	/**
+	* Gets the maximum number of fitting threads that may run at once.
+	* @return	the maximum number of threads.
+	*/
+	public int getMaxThreads();
+	
+	/**
+	* Sets the maximum number of fitting threads that may run at once.  This takes effect the next time a fitting thread is started.
+	* @param maxThreads	the maximum number of threads; this must be at least 1.
+	*/
+	public void setMaxThreads(int maxThreads);
+	
+	/**
+	* Gets the number of objects fit per second since fitting began.
+	* @return	the throughput, or 0 if fitting has not begun.
+	*/
+	public double getFitThroughput();
+	
+	/**
+	* Gets an estimate of the time remaining in the fitting stage, from the average time taken per image so far.
+	* @return	the estimated time remaining, in seconds, or -1 if no image has yet been done.
+	*/
+	public double getEstimatedSecondsRemaining();
+	
+	/**
+	* Gets the number of objects rejected because they were too close to the edge of the image.
+	* @return	the number of failures.
+	*/
+	public long getEdgeFailures();
+	
+	/**
+	* Gets the number of objects rejected because they were too bright.
+	* @return	the number of failures.
+	*/
+	public long getSaturationFailures();
+	
+	/**
+	* Gets the number of objects rejected because of a poor R^2 value.
+	* @return	the number of failures.
+	*/
+	public long getR2Failures();
+	
+	/**
+	* Gets the number of objects rejected because of a large fitting error.
+	* @return	the number of failures.
+	*/
+	public long getFitErrorFailures();
+	
+	/**
+	* Gets the number of objects rejected because the channels were too far apart.
+	* @return	the number of failures.
+	*/
+	public long getSeparationFailures();
+	
+	/**
+	* Gets the number of regions rejected because they were too small to fit.
+	* @return	the number of failures.
+	*/
+	public long getSizeFailures();
+	
+}
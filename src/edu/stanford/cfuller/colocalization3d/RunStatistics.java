@@ -0,0 +1,297 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+* Keeps track of the time spent in each stage of an analysis, counts of the objects processed, and the time taken
+* to fit each object, and provides a means to write these out as a JSON report.
+* <p>
+* Stage times and counts should be added from a single thread; fit times may be added from the threads doing the fitting.
+* 
+* @author Colin J. Fuller
+*/
+public class RunStatistics {
+	
+	public final static String IMAGE_LOAD = "image_load";
+	public final static String DARK_SUBTRACTION = "dark_subtraction";
+	public final static String OBJECT_CONSTRUCTION = "object_construction";
+	public final static String FITTING = "fitting";
+	public final static String QUALITY_CHECKS = "quality_checks";
+	public final static String SERIALIZATION = "serialization";
+	public final static String CORRECTION = "correction";
+	public final static String TRE = "tre";
+	public final static String CORRECTION_APPLICATION = "correction_application";
+	public final static String DISTRIBUTION_FIT = "distribution_fit";
+	
+	public final static String IMAGES = "images";
+	public final static String OBJECTS_FIT = "objects_fit";
+	public final static String FITS_AVOIDED = "fits_avoided";
+	public final static String OBJECTS_ACCEPTED = "objects_accepted";
+	public final static String OBJECTS_CORRECTED = "objects_corrected";
+	
+	final static String[] STAGES = {IMAGE_LOAD, DARK_SUBTRACTION, OBJECT_CONSTRUCTION, FITTING, QUALITY_CHECKS, SERIALIZATION, CORRECTION, TRE, CORRECTION_APPLICATION, DISTRIBUTION_FIT};
+	final static String[] COUNTS = {IMAGES, OBJECTS_FIT, FITS_AVOIDED, OBJECTS_ACCEPTED, OBJECTS_CORRECTED};
+	
+	final static double[] LATENCY_PERCENTILES = {50, 90, 99};
+	
+	long startTime;
+	
+	Map<String, Long> stageTimes;
+	Map<String, Long> counts;
+	
+	List<Long> fitTimes;
+	
+	/**
+	* Creates a new RunStatistics object with all times and counts initialized to zero; the elapsed time of the run is measured from now.
+	*/
+	public RunStatistics() {
+		
+		this.startTime = System.nanoTime();
+		
+		this.stageTimes = new java.util.LinkedHashMap<String, Long>();
+		this.counts = new java.util.LinkedHashMap<String, Long>();
+		
+		for (String stage : STAGES) {
+			this.stageTimes.put(stage, 0L);
+		}
+		
+		for (String count : COUNTS) {
+			this.counts.put(count, 0L);
+		}
+		
+		this.fitTimes = new java.util.ArrayList<Long>();
+		
+	}
+	
+	/**
+	* Adds time to the total for a stage of the analysis.
+	* @param stage			a String naming the stage.  This should be one of the declared static constants.
+	* @param nanoseconds	the time to add, in nanoseconds.
+	*/
+	public void addStageTime(String stage, long nanoseconds) {
+		Long current = this.stageTimes.get(stage);
+		this.stageTimes.put(stage, (current == null ? 0 : current) + nanoseconds);
+	}
+	
+	/**
+	* Gets the total time spent in a stage of the analysis.
+	* @param stage	a String naming the stage.  This should be one of the declared static constants.
+	* @return		the time, in nanoseconds.
+	*/
+	public long getStageTime(String stage) {
+		Long current = this.stageTimes.get(stage);
+		return (current == null ? 0 : current);
+	}
+	
+	/**
+	* Increments a counter of the objects or images processed.
+	* @param count	a String naming the counter.  This should be one of the declared static constants.
+	* @param n		the amount by which to increment the counter.
+	*/
+	public void addCount(String count, long n) {
+		Long current = this.counts.get(count);
+		this.counts.put(count, (current == null ? 0 : current) + n);
+	}
+	
+	/**
+	* Gets the value of a counter of the objects or images processed.
+	* @param count	a String naming the counter.  This should be one of the declared static constants.
+	* @return		the value of the counter.
+	*/
+	public long getCount(String count) {
+		Long current = this.counts.get(count);
+		return (current == null ? 0 : current);
+	}
+	
+	/**
+	* Records the time taken to fit a single object.
+	* @param nanoseconds	the time, in nanoseconds.
+	*/
+	public synchronized void addFitTime(long nanoseconds) {
+		this.fitTimes.add(nanoseconds);
+	}
+	
+	/**
+	* Gets a percentile of the times taken to fit a single object.
+	* @param percentile	the percentile, between 0 and 100.
+	* @return			the time at that percentile (the nearest rank), in nanoseconds, or NaN if no fit times have been recorded.
+	*/
+	public synchronized double getFitTimePercentile(double percentile) {
+		
+		if (this.fitTimes.isEmpty()) return Double.NaN;
+		
+		List<Long> sorted = new java.util.ArrayList<Long>(this.fitTimes);
+		
+		java.util.Collections.sort(sorted);
+		
+		int rank = (int) Math.ceil(percentile/100.0*sorted.size());
+		
+		return sorted.get(Math.min(Math.max(rank, 1), sorted.size()) - 1);
+		
+	}
+	
+	/**
+	* Gets the time elapsed since this object was created.
+	* @return	the time, in nanoseconds.
+	*/
+	public long getElapsedTime() {
+		return System.nanoTime() - this.startTime;
+	}
+	
+	/**
+	* Gets the peak memory used by the heap so far in this virtual machine.
+	* <p>
+	* This is the sum of the peak usage of each heap memory pool; since the pools need not have peaked at the same time, it is an
+	* upper bound on the peak total usage.
+	* 
+	* @return	the peak usage, in bytes.
+	*/
+	public static long getPeakHeapUsage() {
+		
+		long peak = 0;
+		
+		for (java.lang.management.MemoryPoolMXBean pool : java.lang.management.ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == java.lang.management.MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		
+		return peak;
+		
+	}
+	
+	/**
+	* Gets a JSON representation of the statistics, including the failure counts from the quality checks.
+	* 
+	* @param failures	the FitFailureStatistics for the same run.
+	* @return			a String containing a JSON object.
+	*/
+	public synchronized String toJSON(FitFailureStatistics failures) {
+		
+		double elapsedSeconds = this.getElapsedTime()*1e-9;
+		double fittingSeconds = this.getStageTime(FITTING)*1e-9;
+		long objectsFit = this.getCount(OBJECTS_FIT);
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("{\n");
+		sb.append("  \"elapsed_seconds\": ").append(formatNumber(elapsedSeconds)).append(",\n");
+		sb.append("  \"objects_per_second\": ").append(formatNumber(objectsFit/elapsedSeconds)).append(",\n");
+		sb.append("  \"fitting_objects_per_second\": ").append(formatNumber(objectsFit/fittingSeconds)).append(",\n");
+		sb.append("  \"peak_heap_bytes\": ").append(getPeakHeapUsage()).append(",\n");
+		
+		sb.append("  \"counts\": {");
+		
+		boolean first = true;
+		
+		for (Map.Entry<String, Long> e : this.counts.entrySet()) {
+			sb.append(first ? "\n" : ",\n").append("    \"").append(e.getKey()).append("\": ").append(e.getValue());
+			first = false;
+		}
+		
+		sb.append("\n  },\n");
+		
+		sb.append("  \"stage_seconds\": {");
+		
+		first = true;
+		
+		for (Map.Entry<String, Long> e : this.stageTimes.entrySet()) {
+			sb.append(first ? "\n" : ",\n").append("    \"").append(e.getKey()).append("\": ").append(formatNumber(e.getValue()*1e-9));
+			first = false;
+		}
+		
+		sb.append("\n  },\n");
+		
+		sb.append("  \"fit_latency_ms\": {\n");
+		sb.append("    \"count\": ").append(this.fitTimes.size());
+		
+		for (double percentile : LATENCY_PERCENTILES) {
+			sb.append(",\n    \"p").append((int) percentile).append("\": ").append(formatNumber(this.getFitTimePercentile(percentile)*1e-6));
+		}
+		
+		sb.append(",\n    \"max\": ").append(formatNumber(this.getFitTimePercentile(100)*1e-6));
+		sb.append("\n  },\n");
+		
+		sb.append("  \"fit_failures\": {\n");
+		sb.append("    \"edge\": ").append(failures.getFailureCount(FitFailureStatistics.EDGE_FAIL)).append(",\n");
+		sb.append("    \"saturation\": ").append(failures.getFailureCount(FitFailureStatistics.SAT_FAIL)).append(",\n");
+		sb.append("    \"r2\": ").append(failures.getFailureCount(FitFailureStatistics.R2_FAIL)).append(",\n");
+		sb.append("    \"fit_error\": ").append(failures.getFailureCount(FitFailureStatistics.ERR_FAIL)).append(",\n");
+		sb.append("    \"separation\": ").append(failures.getFailureCount(FitFailureStatistics.SEP_FAIL)).append(",\n");
+		sb.append("    \"size\": ").append(failures.getFailureCount(FitFailureStatistics.SIZE_FAIL)).append("\n");
+		sb.append("  },\n");
+		
+		sb.append("  \"fit_failures_by_image\": {");
+		
+		first = true;
+		
+		for (String imageID : failures.getImageIDs()) {
+			sb.append(first ? "\n" : ",\n").append("    \"").append(escapeString(imageID)).append("\": {");
+			sb.append("\"edge\": ").append(failures.getFailureCount(FitFailureStatistics.EDGE_FAIL, imageID));
+			sb.append(", \"saturation\": ").append(failures.getFailureCount(FitFailureStatistics.SAT_FAIL, imageID));
+			sb.append(", \"r2\": ").append(failures.getFailureCount(FitFailureStatistics.R2_FAIL, imageID));
+			sb.append(", \"fit_error\": ").append(failures.getFailureCount(FitFailureStatistics.ERR_FAIL, imageID));
+			sb.append(", \"separation\": ").append(failures.getFailureCount(FitFailureStatistics.SEP_FAIL, imageID));
+			sb.append(", \"size\": ").append(failures.getFailureCount(FitFailureStatistics.SIZE_FAIL, imageID)).append("}");
+			first = false;
+		}
+		
+		sb.append("\n  }\n");
+		
+		sb.append("}\n");
+		
+		return sb.toString();
+		
+	}
+	
+	/**
+	* Escapes a string for JSON output.
+	*/
+	private static String escapeString(String value) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	* Formats a number for JSON output, which has no representation for NaN or infinity.
+	*/
+	private static String formatNumber(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) return "null";
+		return Double.toString(value);
+	}
+	
+}
@@ -32,6 +32,7 @@ import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.colocalization3d.jfr.FileIOEvent;
 
 import java.io.*;
 import java.util.List;
@@ -68,12 +69,21 @@ public class Correction implements java.io.Serializable {
     protected static final String BINARY_DATA_ELEMENT = "serialized_form";
     protected static final String ENCODING_ATTR = "encoding";
     protected static final String ENCODING_NAME = "hexBinary";
+    protected static final String UPDATE_ATTR = "added_in_update";
     
     protected static final int numberOfCorrectionParameters = 6;
     
 	private static final long serialVersionUID = 3L;
     
     private double tre;
+    
+    private RealMatrix sourcePositions;
+    private RealMatrix sourceDifferences;
+    private int[] sourceUpdateIndices;
+    private String[] sourceIdentifiers;
+    private int numberOfUpdates;
+    
+    private transient volatile PointIndex pointIndex;
 
 
     /**
@@ -109,6 +119,34 @@ public class Correction implements java.io.Serializable {
         this.distanceCutoffs = distanceCutoffs;
     }
 
+    /**
+     * Construct a new Correction from a set of locations and corrections at those points, where the locations are
+     * supplied directly rather than taken from a set of ImageObjects.
+     *
+     * For each of the matrix parameters, the row index is over points used for correction.
+     *
+     * @param cX                a RealMatrix containing the parameters describing the interpolating function centered at each point used for correction in the x dimension.
+     * @param cY                a RealMatrix containing the parameters describing the interpolating function centered at each point used for correction in the y dimension.
+     * @param cZ                a RealMatrix containing the parameters describing the interpolating function centered at each point used for correction in the z dimension.
+     * @param distanceCutoffs   a RealVector containing the distance to the farthest point used to generate each interpolating function.
+     * @param positionsForCorrection	a RealMatrix containing the (reference channel) position of each point used for correction, one point per row.
+     * @param referenceChannel	the referenceChannel relative to which the other channel was corrected.
+     * @param correctionChannel the channel being corrected.
+     */
+    public Correction(RealMatrix cX, RealMatrix cY, RealMatrix cZ, RealVector distanceCutoffs, RealMatrix positionsForCorrection, int referenceChannel, int correctionChannel) {
+
+        this.correctionX = cX;
+        this.correctionY = cY;
+        this.correctionZ = cZ;
+
+        this.referenceChannel = referenceChannel;
+        this.correctionChannel = correctionChannel;
+
+        this.positionsForCorrection = positionsForCorrection;
+
+        this.distanceCutoffs = distanceCutoffs;
+    }
+
 
     /**
      * Gets the RealMatrix of parameters describing the correction in the X-dimension.
@@ -171,6 +209,75 @@ public class Correction implements java.io.Serializable {
     	return this.correctionChannel;
     }
     
+    /**
+     * Sets the data for the objects from which the correction was determined, so that the correction can later be updated
+     * with new objects without redetermining it from scratch.
+     * 
+     * @param positions			a RealMatrix containing the reference channel position of each source object, one per row.
+     * @param differences		a RealMatrix containing the vector difference between channels of each source object, one per row.
+     * @param updateIndices		an array containing, for each source object, the update in which it was added (0 for the objects used to originally determine the correction).
+     * @param identifiers		an array containing, for each source object, a string identifying the image and label of the object.
+     * @param numberOfUpdates	the number of times the correction has been updated with new objects.
+     */
+    void setSourceData(RealMatrix positions, RealMatrix differences, int[] updateIndices, String[] identifiers, int numberOfUpdates) {
+    	this.sourcePositions = positions;
+    	this.sourceDifferences = differences;
+    	this.sourceUpdateIndices = updateIndices;
+    	this.sourceIdentifiers = identifiers;
+    	this.numberOfUpdates = numberOfUpdates;
+    }
+    
+    /**
+     * Checks whether the correction contains the data for the objects from which it was determined.
+     * <p>
+     * Corrections written by earlier versions do not; these cannot be updated with new objects.
+     * 
+     * @return	true if the source data is available, false otherwise.
+     */
+    public boolean hasSourceData() {
+    	return this.sourcePositions != null && this.sourceDifferences != null;
+    }
+    
+    /**
+     * Gets the reference channel positions of the objects from which the correction was determined.
+     * @return	a RealMatrix containing one position per row, or null if the source data is not available.
+     */
+    public RealMatrix getSourcePositions() {
+    	return this.sourcePositions;
+    }
+    
+    /**
+     * Gets the vector differences between channels of the objects from which the correction was determined.
+     * @return	a RealMatrix containing one difference per row, in the same order as {@link #getSourcePositions()}, or null if the source data is not available.
+     */
+    public RealMatrix getSourceDifferences() {
+    	return this.sourceDifferences;
+    }
+    
+    /**
+     * Gets the update in which each of the objects from which the correction was determined was added.
+     * @return	an array containing one entry per source object: 0 if it was used to originally determine the correction, or n if it was added in the nth update.
+     */
+    public int[] getSourceUpdateIndices() {
+    	return this.sourceUpdateIndices;
+    }
+    
+    /**
+     * Gets strings identifying the objects from which the correction was determined.
+     * @return	an array containing one entry per source object, consisting of the image ID and label of the object.
+     */
+    public String[] getSourceIdentifiers() {
+    	return this.sourceIdentifiers;
+    }
+    
+    /**
+     * Gets the number of times the correction has been updated with new objects since it was determined.
+     * @return	the number of updates.
+     */
+    public int getNumberOfUpdates() {
+    	return this.numberOfUpdates;
+    }
+    
     /**
      * Writes the Correction to disk in binary format so it can be stored and retrieved later.
      *
@@ -178,6 +285,9 @@ public class Correction implements java.io.Serializable {
      * @throws java.io.IOException  if the Correction cannot be written to disk.
      */
     public void writeToDisk(String filename) throws java.io.IOException {
+    	
+    	FileIOEvent event = new FileIOEvent();
+    	event.begin();
 
         File f = new File(filename);
 
@@ -189,6 +299,8 @@ public class Correction implements java.io.Serializable {
         
         p.close();
         
+        event.commit(filename, FileIOEvent.WRITE);
+        
     }
     
     
@@ -217,6 +329,10 @@ public class Correction implements java.io.Serializable {
 	    		xsw.writeAttribute(X_POS_ATTR, Double.toString(this.positionsForCorrection.getEntry(i,0)));
 	    		xsw.writeAttribute(Y_POS_ATTR, Double.toString(this.positionsForCorrection.getEntry(i,1)));
 	    		xsw.writeAttribute(Z_POS_ATTR, Double.toString(this.positionsForCorrection.getEntry(i,2)));
+	    		
+	    		if (this.sourcePositions == this.positionsForCorrection && this.sourceUpdateIndices != null) {
+	    			xsw.writeAttribute(UPDATE_ATTR, Integer.toString(this.sourceUpdateIndices[i]));
+	    		}
 	
 	    		xsw.writeCharacters("\n");
 	    		
@@ -267,6 +383,8 @@ public class Correction implements java.io.Serializable {
 	    			
 	    	}
 	    	
+	    	this.writeAdditionalXML(xsw);
+	    	
 	    	xsw.writeStartElement(BINARY_DATA_ELEMENT);
 	    		    	
 	    	xsw.writeAttribute(ENCODING_ATTR, ENCODING_NAME);
@@ -311,6 +429,18 @@ public class Correction implements java.io.Serializable {
     	
     }
 
+    /**
+     * Writes any correction data beyond the per-point interpolating functions to the XML output.
+     * <p>
+     * This is called just before the serialized form is written; the default implementation writes nothing.
+     * Subclasses storing additional parameters should override this so that the human-readable portion
+     * of the correction file remains complete.
+     * 
+     * @param xsw                   the XMLStreamWriter to which the correction is being written.
+     * @throws XMLStreamException   if the data cannot be written.
+     */
+    protected void writeAdditionalXML(XMLStreamWriter xsw) throws XMLStreamException {}
+
     /**
      * Reads a stored correction from disk.
      * 
@@ -320,7 +450,9 @@ public class Correction implements java.io.Serializable {
      * @throws ClassNotFoundException   if the file does not contain a Correction.
      */
     public static Correction readFromDisk(String filename) throws java.io.IOException, ClassNotFoundException {
-
+    	
+    	FileIOEvent ioEvent = new FileIOEvent();
+    	ioEvent.begin();
 
         File f = new File(filename);
 
@@ -358,6 +490,8 @@ public class Correction implements java.io.Serializable {
         ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(binData));
 
         Object o = oi.readObject();
+        
+        ioEvent.commit(filename, FileIOEvent.READ);
 
         return (Correction) o;
 
@@ -491,6 +625,205 @@ public class Correction implements java.io.Serializable {
 
         return corrections;
     }
+    
+    /**
+     * Applies an existing correction to a set of x-y positions in the Image plane at once.
+     * <p>
+     * This gives the same result as calling {@link #correctPosition(double, double)} for each position, but
+     * looks up nearby interpolating functions using a spatial index over the points used for correction and
+     * does no per-position allocation, so it is much faster for large numbers of positions.
+     * 
+     * @param positions	a RealMatrix containing one position per row; the first two columns are taken as the x- and y-positions.
+     * @return			a RealMatrix with one row per position, containing the magnitude of the correction in the x, y, and z dimensions, in that order.
+     * 					Positions that cannot be corrected because of incomplete coverage in the correction dataset have all three entries set to NaN.
+     */
+    public RealMatrix correctPositions(RealMatrix positions) {
+    	
+    	PointIndex index = this.getPointIndex();
+    	
+    	double[][] output = new double[positions.getRowDimension()][3];
+    	
+    	for (int i = 0; i < output.length; i++) {
+    		if (! index.correct(positions.getEntry(i, 0), positions.getEntry(i, 1), output[i])) {
+    			output[i][0] = Double.NaN;
+    			output[i][1] = Double.NaN;
+    			output[i][2] = Double.NaN;
+    		}
+    	}
+    	
+    	return new Array2DRowRealMatrix(output, false);
+    	
+    }
+    
+    private PointIndex getPointIndex() {
+    	
+    	PointIndex index = this.pointIndex;
+    	
+    	if (index == null) {
+    		index = new PointIndex(this.positionsForCorrection, this.distanceCutoffs, this.correctionX, this.correctionY, this.correctionZ);
+    		this.pointIndex = index;
+    	}
+    	
+    	return index;
+    	
+    }
+    
+    /**
+     * A uniform grid over the points used for correction, with cells as large as the largest distance cutoff, so that
+     * every interpolating function covering a position is centered in the cell containing that position or one of its neighbors.
+     */
+    private static class PointIndex {
+    	
+    	double[] x;
+    	double[] y;
+    	double[] cutoffs;
+    	double[][] paramsX;
+    	double[][] paramsY;
+    	double[][] paramsZ;
+    	
+    	double minX;
+    	double minY;
+    	double cellSize;
+    	int nCellsX;
+    	int nCellsY;
+    	int[] cellStarts;
+    	int[] cellPoints;
+    	
+    	PointIndex(RealMatrix positions, RealVector distanceCutoffs, RealMatrix cX, RealMatrix cY, RealMatrix cZ) {
+    		
+    		int n = distanceCutoffs.getDimension();
+    		
+    		this.x = positions.getColumn(0);
+    		this.y = positions.getColumn(1);
+    		this.cutoffs = distanceCutoffs.toArray();
+    		this.paramsX = cX.getData();
+    		this.paramsY = cY.getData();
+    		this.paramsZ = cZ.getData();
+    		
+    		this.minX = Double.MAX_VALUE;
+    		this.minY = Double.MAX_VALUE;
+    		double maxX = -1.0*Double.MAX_VALUE;
+    		double maxY = -1.0*Double.MAX_VALUE;
+    		this.cellSize = 0;
+    		
+    		for (int i = 0; i < n; i++) {
+    			this.minX = Math.min(this.minX, this.x[i]);
+    			this.minY = Math.min(this.minY, this.y[i]);
+    			maxX = Math.max(maxX, this.x[i]);
+    			maxY = Math.max(maxY, this.y[i]);
+    			this.cellSize = Math.max(this.cellSize, this.cutoffs[i]);
+    		}
+    		
+    		if (n == 0) {
+    			this.minX = 0;
+    			this.minY = 0;
+    			maxX = 0;
+    			maxY = 0;
+    		}
+    		
+    		if (! (this.cellSize > 0)) this.cellSize = 1.0;
+    		
+    		//larger cells are still correct, so keep the grid from growing much beyond the number of points
+    		
+    		while (((maxX - this.minX)/this.cellSize + 1)*((maxY - this.minY)/this.cellSize + 1) > 4.0*n + 16) {
+    			this.cellSize *= 2;
+    		}
+    		
+    		this.nCellsX = (int) Math.floor((maxX - this.minX)/this.cellSize) + 1;
+    		this.nCellsY = (int) Math.floor((maxY - this.minY)/this.cellSize) + 1;
+    		
+    		int[] cellOfPoint = new int[n];
+    		this.cellStarts = new int[this.nCellsX*this.nCellsY + 1];
+    		
+    		for (int i = 0; i < n; i++) {
+    			cellOfPoint[i] = this.cellX(this.x[i])*this.nCellsY + this.cellY(this.y[i]);
+    			this.cellStarts[cellOfPoint[i] + 1]++;
+    		}
+    		
+    		for (int c = 0; c < this.nCellsX*this.nCellsY; c++) {
+    			this.cellStarts[c+1] += this.cellStarts[c];
+    		}
+    		
+    		int[] fill = new int[this.nCellsX*this.nCellsY];
+    		this.cellPoints = new int[n];
+    		
+    		for (int i = 0; i < n; i++) {
+    			this.cellPoints[this.cellStarts[cellOfPoint[i]] + fill[cellOfPoint[i]]++] = i;
+    		}
+    		
+    	}
+    	
+    	int cellX(double xPos) {
+    		return (int) Math.floor((xPos - this.minX)/this.cellSize);
+    	}
+    	
+    	int cellY(double yPos) {
+    		return (int) Math.floor((yPos - this.minY)/this.cellSize);
+    	}
+    	
+    	/**
+    	 * Calculates the correction at a single position.
+    	 * @return	true if the position could be corrected, false if no interpolating function covers it.
+    	 */
+    	boolean correct(double xPos, double yPos, double[] out) {
+    		
+    		int cx = this.cellX(xPos);
+    		int cy = this.cellY(yPos);
+    		
+    		double sumWeights = 0;
+    		double xCorr = 0;
+    		double yCorr = 0;
+    		double zCorr = 0;
+    		
+    		for (int i = Math.max(cx - 1, 0); i <= Math.min(cx + 1, this.nCellsX - 1); i++) {
+    			for (int j = Math.max(cy - 1, 0); j <= Math.min(cy + 1, this.nCellsY - 1); j++) {
+    				
+    				int cell = i*this.nCellsY + j;
+    				
+    				for (int k = this.cellStarts[cell]; k < this.cellStarts[cell+1]; k++) {
+    					
+    					int p = this.cellPoints[k];
+    					
+    					double dx = xPos - this.x[p];
+    					double dy = yPos - this.y[p];
+    					
+    					double distRatio = Math.sqrt(dx*dx + dy*dy)/this.cutoffs[p];
+    					
+    					if (distRatio > 1) continue;
+    					
+    					double weight = 1 - 3*distRatio*distRatio + 2*distRatio*distRatio*distRatio;
+    					
+    					if (weight <= 0) continue;
+    					
+    					sumWeights += weight;
+    					
+    					double[] px = this.paramsX[p];
+    					double[] py = this.paramsY[p];
+    					double[] pz = this.paramsZ[p];
+    					
+    					double dx2 = dx*dx;
+    					double dy2 = dy*dy;
+    					double dxdy = dx*dy;
+    					
+    					xCorr += weight*(px[0] + px[1]*dx + px[2]*dy + px[3]*dx2 + px[4]*dy2 + px[5]*dxdy);
+    					yCorr += weight*(py[0] + py[1]*dx + py[2]*dy + py[3]*dx2 + py[4]*dy2 + py[5]*dxdy);
+    					zCorr += weight*(pz[0] + pz[1]*dx + pz[2]*dy + pz[3]*dx2 + pz[4]*dy2 + pz[5]*dxdy);
+    					
+    				}
+    			}
+    		}
+    		
+    		if (sumWeights == 0) return false;
+    		
+    		out[0] = xCorr/sumWeights;
+    		out[1] = yCorr/sumWeights;
+    		out[2] = zCorr/sumWeights;
+    		
+    		return true;
+    		
+    	}
+    	
+    }
 	
 	
 }
\ No newline at end of file
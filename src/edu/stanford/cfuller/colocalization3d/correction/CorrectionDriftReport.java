@@ -0,0 +1,213 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.correction;
+
+/**
+ * Summarizes how well a stored correction describes a set of objects whose positions should be the same in each channel,
+ * as a check for drift in the microscope since the correction was determined.
+ * <p>
+ * Residuals are the difference between the measured vector difference between channels and the correction at each object,
+ * in real units (i.e. the same quantity used for the target registration error).
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class CorrectionDriftReport {
+	
+	private int numberOfObjects;
+	private int numberCorrected;
+	private double meanResidual;
+	private double medianResidual;
+	private double percentile90Residual;
+	private double maxResidual;
+	private double meanXYResidual;
+	private double meanResidualX;
+	private double meanResidualY;
+	private double meanResidualZ;
+	private double threshold;
+	
+	/**
+	 * Constructs a new report from the residuals at each object.
+	 * 
+	 * @param residuals		an array with one row per object that could be corrected, containing the x, y, and z components of the residual in real units.
+	 * @param numberOfObjects	the total number of objects checked, including those that could not be corrected.
+	 * @param threshold		the largest mean residual for which the check passes.
+	 */
+	public CorrectionDriftReport(double[][] residuals, int numberOfObjects, double threshold) {
+		
+		this.numberOfObjects = numberOfObjects;
+		this.numberCorrected = residuals.length;
+		this.threshold = threshold;
+		
+		double[] norms = new double[residuals.length];
+		
+		for (int i = 0; i < residuals.length; i++) {
+			
+			double[] r = residuals[i];
+			
+			norms[i] = Math.sqrt(r[0]*r[0] + r[1]*r[1] + r[2]*r[2]);
+			
+			this.meanResidual += norms[i];
+			this.meanXYResidual += Math.sqrt(r[0]*r[0] + r[1]*r[1]);
+			this.meanResidualX += r[0];
+			this.meanResidualY += r[1];
+			this.meanResidualZ += r[2];
+			
+		}
+		
+		if (residuals.length > 0) {
+			
+			this.meanResidual /= residuals.length;
+			this.meanXYResidual /= residuals.length;
+			this.meanResidualX /= residuals.length;
+			this.meanResidualY /= residuals.length;
+			this.meanResidualZ /= residuals.length;
+			
+			java.util.Arrays.sort(norms);
+			
+			this.medianResidual = percentile(norms, 0.5);
+			this.percentile90Residual = percentile(norms, 0.9);
+			this.maxResidual = norms[norms.length - 1];
+			
+		} else {
+			
+			this.meanResidual = Double.NaN;
+			this.meanXYResidual = Double.NaN;
+			this.medianResidual = Double.NaN;
+			this.percentile90Residual = Double.NaN;
+			this.maxResidual = Double.NaN;
+			
+		}
+		
+	}
+	
+	private static double percentile(double[] sorted, double fraction) {
+		
+		double position = fraction*(sorted.length - 1);
+		
+		int lower = (int) Math.floor(position);
+		int upper = Math.min(lower + 1, sorted.length - 1);
+		
+		return sorted[lower] + (position - lower)*(sorted[upper] - sorted[lower]);
+		
+	}
+	
+	/**
+	 * Checks whether the correction still describes the objects.
+	 * @return	true if at least one object could be corrected and the mean residual is no larger than the threshold.
+	 */
+	public boolean passed() {
+		return this.numberCorrected > 0 && this.meanResidual <= this.threshold;
+	}
+	
+	/**
+	 * Gets the number of objects checked.
+	 * @return	the number of objects, including those that could not be corrected.
+	 */
+	public int getNumberOfObjects() {
+		return this.numberOfObjects;
+	}
+	
+	/**
+	 * Gets the number of objects that could be corrected.
+	 * @return	the number of objects covered by the correction.
+	 */
+	public int getNumberCorrected() {
+		return this.numberCorrected;
+	}
+	
+	/**
+	 * Gets the mean magnitude of the residuals.
+	 * @return	the mean residual, in real units.
+	 */
+	public double getMeanResidual() {
+		return this.meanResidual;
+	}
+	
+	/**
+	 * Gets the median magnitude of the residuals.
+	 * @return	the median residual, in real units.
+	 */
+	public double getMedianResidual() {
+		return this.medianResidual;
+	}
+	
+	/**
+	 * Gets the 90th percentile of the magnitude of the residuals.
+	 * @return	the 90th percentile residual, in real units.
+	 */
+	public double get90thPercentileResidual() {
+		return this.percentile90Residual;
+	}
+	
+	/**
+	 * Gets the largest magnitude of the residuals.
+	 * @return	the maximum residual, in real units.
+	 */
+	public double getMaxResidual() {
+		return this.maxResidual;
+	}
+	
+	/**
+	 * Gets the mean magnitude of the x-y component of the residuals.
+	 * @return	the mean x-y residual, in real units.
+	 */
+	public double getMeanXYResidual() {
+		return this.meanXYResidual;
+	}
+	
+	/**
+	 * Gets the mean residual vector; a value far from zero indicates a systematic shift between the channels.
+	 * @return	an array containing the mean x, y, and z components of the residuals, in real units.
+	 */
+	public double[] getMeanResidualVector() {
+		return new double[] {this.meanResidualX, this.meanResidualY, this.meanResidualZ};
+	}
+	
+	/**
+	 * Gets the threshold used to decide whether the check passed.
+	 * @return	the largest mean residual for which the check passes, in real units.
+	 */
+	public double getThreshold() {
+		return this.threshold;
+	}
+	
+	/**
+	 * Gets a formatted string representation of the residual statistics and the result of the check.
+	 * @return a String containing one statistic per line.
+	 */
+	public String toString() {
+		String result = "Correction drift check: " + (this.passed() ? "PASSED" : "FAILED") + "\n";
+		result += "Objects corrected: " + this.numberCorrected + " of " + this.numberOfObjects + "\n";
+		result += "Mean residual: " + this.meanResidual + " (threshold " + this.threshold + ")\n";
+		result += "Median residual: " + this.medianResidual + "\n";
+		result += "90th percentile residual: " + this.percentile90Residual + "\n";
+		result += "Max residual: " + this.maxResidual + "\n";
+		result += "Mean x-y residual: " + this.meanXYResidual + "\n";
+		result += "Mean residual vector: " + this.meanResidualX + ", " + this.meanResidualY + ", " + this.meanResidualZ + "\n";
+		return result;
+	}
+
+}
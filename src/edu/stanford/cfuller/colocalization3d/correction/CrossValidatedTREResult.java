@@ -0,0 +1,157 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.correction;
+
+/**
+ * Holds the result of a k-fold cross-validated estimate of the target registration error: the TRE, x-y TRE, and fraction of
+ * held-out objects not covered by the correction, for each fold and pooled over all folds.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class CrossValidatedTREResult {
+	
+	private double[] foldTre;
+	private double[] foldTreXY;
+	private int[] foldHeldOut;
+	private int[] foldFailures;
+	
+	private double pooledTre;
+	private double pooledTreXY;
+	private int totalHeldOut;
+	private int totalFailures;
+	
+	/**
+	 * Constructs a new result from the residual sums for each fold.
+	 * 
+	 * @param foldTreSums		the sum of the TRE over the successfully corrected held-out objects in each fold.
+	 * @param foldTreXYSums		the sum of the x-y TRE over the successfully corrected held-out objects in each fold.
+	 * @param foldHeldOut		the number of held-out objects in each fold.
+	 * @param foldFailures		the number of held-out objects in each fold that could not be corrected.
+	 */
+	public CrossValidatedTREResult(double[] foldTreSums, double[] foldTreXYSums, int[] foldHeldOut, int[] foldFailures) {
+		
+		int folds = foldTreSums.length;
+		
+		this.foldTre = new double[folds];
+		this.foldTreXY = new double[folds];
+		this.foldHeldOut = foldHeldOut;
+		this.foldFailures = foldFailures;
+		
+		double treSum = 0;
+		double treXYSum = 0;
+		
+		for (int f = 0; f < folds; f++) {
+			
+			int corrected = foldHeldOut[f] - foldFailures[f];
+			
+			this.foldTre[f] = foldTreSums[f]/corrected;
+			this.foldTreXY[f] = foldTreXYSums[f]/corrected;
+			
+			treSum += foldTreSums[f];
+			treXYSum += foldTreXYSums[f];
+			this.totalHeldOut += foldHeldOut[f];
+			this.totalFailures += foldFailures[f];
+			
+		}
+		
+		this.pooledTre = treSum/(this.totalHeldOut - this.totalFailures);
+		this.pooledTreXY = treXYSum/(this.totalHeldOut - this.totalFailures);
+		
+	}
+	
+	/**
+	 * Gets the number of folds.
+	 * @return	the number of folds.
+	 */
+	public int getNumberOfFolds() {
+		return this.foldTre.length;
+	}
+	
+	/**
+	 * Gets the mean TRE over the successfully corrected held-out objects of a single fold.
+	 * @param fold	the index of the fold.
+	 * @return		the TRE for the fold, or NaN if no held-out objects could be corrected.
+	 */
+	public double getFoldTre(int fold) {
+		return this.foldTre[fold];
+	}
+	
+	/**
+	 * Gets the mean x-y TRE over the successfully corrected held-out objects of a single fold.
+	 * @param fold	the index of the fold.
+	 * @return		the x-y TRE for the fold, or NaN if no held-out objects could be corrected.
+	 */
+	public double getFoldTreXY(int fold) {
+		return this.foldTreXY[fold];
+	}
+	
+	/**
+	 * Gets the fraction of the held-out objects of a single fold that could not be corrected because of incomplete coverage.
+	 * @param fold	the index of the fold.
+	 * @return		the failure rate for the fold.
+	 */
+	public double getFoldFailureRate(int fold) {
+		return ((double) this.foldFailures[fold])/this.foldHeldOut[fold];
+	}
+	
+	/**
+	 * Gets the mean TRE over all successfully corrected held-out objects.
+	 * @return	the pooled TRE.
+	 */
+	public double getPooledTre() {
+		return this.pooledTre;
+	}
+	
+	/**
+	 * Gets the mean x-y TRE over all successfully corrected held-out objects.
+	 * @return	the pooled x-y TRE.
+	 */
+	public double getPooledTreXY() {
+		return this.pooledTreXY;
+	}
+	
+	/**
+	 * Gets the fraction of all held-out objects that could not be corrected because of incomplete coverage.
+	 * @return	the pooled failure rate.
+	 */
+	public double getPooledFailureRate() {
+		return ((double) this.totalFailures)/this.totalHeldOut;
+	}
+	
+	/**
+	 * Gets a formatted string representation of the per-fold and pooled results.
+	 * @return a String containing one line per fold followed by the pooled result.
+	 */
+	public String toString() {
+		String result = "Cross-validated TRE (" + this.getNumberOfFolds() + " folds):\n";
+		for (int f = 0; f < this.getNumberOfFolds(); f++) {
+			result += "Fold " + f + ": TRE = " + this.foldTre[f] + ", x-y TRE = " + this.foldTreXY[f] + ", failure rate = " + this.getFoldFailureRate(f) + "\n";
+		}
+		result += "Pooled: TRE = " + this.pooledTre + ", x-y TRE = " + this.pooledTreXY + ", failure rate = " + this.getPooledFailureRate() + "\n";
+		return result;
+	}
+
+}
@@ -0,0 +1,287 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.correction;
+
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * A Correction made up of a smooth global polynomial field plus locally weighted mean corrections to the residuals
+ * of that field.
+ * <p>
+ * Most of the chromatic shift between channels varies smoothly over the whole field of view, so a single low-order
+ * polynomial in x and y per dimension captures it using every object.  The local interpolating functions then
+ * only need to describe what is left over, which allows them to be centered at a coarser subset of the objects
+ * and to use larger neighborhoods.
+ * <p>
+ * The global polynomial is evaluated in normalized coordinates (position minus a center, divided by a scale)
+ * so that the fit stays well conditioned at higher orders.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class HierarchicalCorrection extends Correction {
+
+	private static final long serialVersionUID = 1L;
+	
+	protected static final String GLOBAL_PARAM_ELEMENT = "global_parameters";
+	protected static final String ORDER_ATTR = "order";
+	protected static final String X_CENTER_ATTR = "x_center";
+	protected static final String Y_CENTER_ATTR = "y_center";
+	protected static final String SCALE_ATTR = "scale";
+	
+	private int globalOrder;
+	private double xCenter;
+	private double yCenter;
+	private double scale;
+	private RealVector globalX;
+	private RealVector globalY;
+	private RealVector globalZ;
+	
+	/**
+	 * Constructs a new HierarchicalCorrection from a global polynomial field and a set of local corrections to its residuals.
+	 * 
+	 * @param cX                a RealMatrix containing the parameters of the residual interpolating function centered at each point in the x dimension.
+	 * @param cY                a RealMatrix containing the parameters of the residual interpolating function centered at each point in the y dimension.
+	 * @param cZ                a RealMatrix containing the parameters of the residual interpolating function centered at each point in the z dimension.
+	 * @param distanceCutoffs   a RealVector containing the distance to the farthest point used to generate each interpolating function.
+	 * @param positionsForCorrection	a RealMatrix containing the position of each point at which an interpolating function is centered, one point per row.
+	 * @param referenceChannel	the referenceChannel relative to which the other channel was corrected.
+	 * @param correctionChannel the channel being corrected.
+	 * @param globalOrder		the total order of the global polynomial.
+	 * @param xCenter			the x-coordinate subtracted from positions before evaluating the global polynomial.
+	 * @param yCenter			the y-coordinate subtracted from positions before evaluating the global polynomial.
+	 * @param scale				the value by which centered positions are divided before evaluating the global polynomial.
+	 * @param globalX			the coefficients of the global polynomial in the x dimension, in the order given by {@link #evaluateGlobalTerms}.
+	 * @param globalY			the coefficients of the global polynomial in the y dimension.
+	 * @param globalZ			the coefficients of the global polynomial in the z dimension.
+	 */
+	public HierarchicalCorrection(RealMatrix cX, RealMatrix cY, RealMatrix cZ, RealVector distanceCutoffs, RealMatrix positionsForCorrection, int referenceChannel, int correctionChannel,
+			int globalOrder, double xCenter, double yCenter, double scale, RealVector globalX, RealVector globalY, RealVector globalZ) {
+		
+		super(cX, cY, cZ, distanceCutoffs, positionsForCorrection, referenceChannel, correctionChannel);
+		
+		this.globalOrder = globalOrder;
+		this.xCenter = xCenter;
+		this.yCenter = yCenter;
+		this.scale = scale;
+		this.globalX = globalX;
+		this.globalY = globalY;
+		this.globalZ = globalZ;
+		
+	}
+	
+	/**
+	 * Gets the number of terms in a two-dimensional polynomial of the specified total order.
+	 * 
+	 * @param order	the total order of the polynomial.
+	 * @return		the number of monomials x^i y^j with i + j <= order.
+	 */
+	public static int numberOfGlobalTerms(int order) {
+		return (order + 1)*(order + 2)/2;
+	}
+	
+	/**
+	 * Evaluates each monomial of a two-dimensional polynomial at a point.
+	 * <p>
+	 * Terms are ordered by increasing total degree, and within a degree by increasing power of v, so that
+	 * a second order polynomial has terms 1, u, v, u^2, uv, v^2.
+	 * 
+	 * @param u			the (normalized) x-coordinate.
+	 * @param v			the (normalized) y-coordinate.
+	 * @param order		the total order of the polynomial.
+	 * @param terms		an array of length at least {@link #numberOfGlobalTerms(int)} that will be filled with the value of each term.
+	 */
+	public static void evaluateGlobalTerms(double u, double v, int order, double[] terms) {
+		
+		int index = 0;
+		
+		for (int degree = 0; degree <= order; degree++) {
+			for (int vPower = 0; vPower <= degree; vPower++) {
+				terms[index++] = Math.pow(u, degree - vPower) * Math.pow(v, vPower);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Evaluates only the global polynomial part of the correction at an x-y position.
+	 * 
+	 * @param x     The x-position at which to evaluate the global field.
+	 * @param y     The y-position at which to evaluate the global field.
+	 * @param out	an array of length at least 3 that will be filled with the global correction in the x, y, and z dimensions.
+	 */
+	public void evaluateGlobalCorrection(double x, double y, double[] out) {
+		
+		double[] terms = new double[numberOfGlobalTerms(this.globalOrder)];
+		
+		evaluateGlobalTerms((x - this.xCenter)/this.scale, (y - this.yCenter)/this.scale, this.globalOrder, terms);
+		
+		double gx = 0;
+		double gy = 0;
+		double gz = 0;
+		
+		for (int i = 0; i < terms.length; i++) {
+			gx += terms[i]*this.globalX.getEntry(i);
+			gy += terms[i]*this.globalY.getEntry(i);
+			gz += terms[i]*this.globalZ.getEntry(i);
+		}
+		
+		out[0] = gx;
+		out[1] = gy;
+		out[2] = gz;
+		
+	}
+	
+	/**
+	 * Gets the total order of the global polynomial.
+	 * @return	the order of the global polynomial.
+	 */
+	public int getGlobalOrder() {
+		return this.globalOrder;
+	}
+	
+	/**
+	 * Gets the coefficients of the global polynomial in the x dimension.
+	 * @return	a RealVector containing the coefficients, in the order given by {@link #evaluateGlobalTerms}.
+	 */
+	public RealVector getGlobalX() {
+		return this.globalX;
+	}
+	
+	/**
+	 * Gets the coefficients of the global polynomial in the y dimension.
+	 * @return	a RealVector containing the coefficients, in the order given by {@link #evaluateGlobalTerms}.
+	 */
+	public RealVector getGlobalY() {
+		return this.globalY;
+	}
+	
+	/**
+	 * Gets the coefficients of the global polynomial in the z dimension.
+	 * @return	a RealVector containing the coefficients, in the order given by {@link #evaluateGlobalTerms}.
+	 */
+	public RealVector getGlobalZ() {
+		return this.globalZ;
+	}
+	
+	/**
+	 * Applies the correction to a single x-y position in the Image plane: the global field plus the local correction
+	 * to its residuals.
+	 * <p>
+	 * As for the purely local correction, a position not covered by any of the local interpolating functions
+	 * cannot be corrected.
+	 *
+	 * @param x     The x-position at which to apply the correction.
+	 * @param y     The y-position at which to apply the correction.
+	 * @return      A RealVector containing 3 elements-- the magnitude of the correction in the x, y, and z dimensions, in that order.
+	 */
+	@Override
+	public RealVector correctPosition(double x, double y) throws UnableToCorrectException {
+		
+		RealVector corrections = super.correctPosition(x, y);
+		
+		double[] global = new double[3];
+		
+		this.evaluateGlobalCorrection(x, y, global);
+		
+		for (int i = 0; i < 3; i++) {
+			corrections.setEntry(i, corrections.getEntry(i) + global[i]);
+		}
+		
+		return corrections;
+		
+	}
+	
+	/**
+	 * Applies the correction to a set of x-y positions at once: the global field plus the local correction to its residuals.
+	 * 
+	 * @param positions	a RealMatrix containing one position per row; the first two columns are taken as the x- and y-positions.
+	 * @return			a RealMatrix with one row per position, containing the magnitude of the correction in the x, y, and z dimensions, in that order.
+	 * 					Positions that cannot be corrected have all three entries set to NaN.
+	 */
+	@Override
+	public RealMatrix correctPositions(RealMatrix positions) {
+		
+		RealMatrix corrections = super.correctPositions(positions);
+		
+		double[] global = new double[3];
+		
+		for (int i = 0; i < corrections.getRowDimension(); i++) {
+			
+			if (Double.isNaN(corrections.getEntry(i, 0))) continue;
+			
+			this.evaluateGlobalCorrection(positions.getEntry(i, 0), positions.getEntry(i, 1), global);
+			
+			for (int d = 0; d < 3; d++) {
+				corrections.setEntry(i, d, corrections.getEntry(i, d) + global[d]);
+			}
+			
+		}
+		
+		return corrections;
+		
+	}
+	
+	@Override
+	protected void writeAdditionalXML(XMLStreamWriter xsw) throws XMLStreamException {
+		
+		xsw.writeStartElement(GLOBAL_PARAM_ELEMENT);
+		xsw.writeAttribute(ORDER_ATTR, Integer.toString(this.globalOrder));
+		xsw.writeAttribute(X_CENTER_ATTR, Double.toString(this.xCenter));
+		xsw.writeAttribute(Y_CENTER_ATTR, Double.toString(this.yCenter));
+		xsw.writeAttribute(SCALE_ATTR, Double.toString(this.scale));
+		xsw.writeCharacters("\n");
+		
+		RealVector[] allGlobal = {this.globalX, this.globalY, this.globalZ};
+		String[] elementNames = {X_PARAM_ELEMENT, Y_PARAM_ELEMENT, Z_PARAM_ELEMENT};
+		
+		for (int d = 0; d < allGlobal.length; d++) {
+			
+			StringBuilder paramString = new StringBuilder();
+			
+			for (int j = 0; j < allGlobal[d].getDimension(); j++) {
+				if (j != 0) paramString.append(", ");
+				paramString.append(allGlobal[d].getEntry(j));
+			}
+			
+			paramString.append("\n");
+			
+			xsw.writeStartElement(elementNames[d]);
+			xsw.writeCharacters(paramString.toString());
+			xsw.writeEndElement();
+			xsw.writeCharacters("\n");
+			
+		}
+		
+		xsw.writeEndElement();
+		xsw.writeCharacters("\n");
+		
+	}
+	
+}
@@ -24,11 +24,14 @@
 
 package edu.stanford.cfuller.colocalization3d.correction;
 
+import edu.stanford.cfuller.colocalization3d.ConcurrencyUtils;
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
 import edu.stanford.cfuller.imageanalysistools.fitting.BisquareLinearFit;
 import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
 
 import edu.stanford.cfuller.colocalization3d.FileUtils;
+import edu.stanford.cfuller.colocalization3d.jfr.LocalCorrectionFitEvent;
+import edu.stanford.cfuller.colocalization3d.jfr.TREFoldEvent;
 
 import java.util.Comparator;
 import java.util.List;
@@ -51,6 +54,9 @@ import org.apache.commons.math3.linear.QRDecomposition;
  * of image objects.  The number of objects used for this fitting is controlled by the mandatory parameter "num_params" in the parameters file.  This
  * can be set to any value greater than or equal to the class constant numberOfCorrectionParameters, and less than the total number of objects used to
  * generate the correction.
+ * <p>
+ * Optionally, a {@link HierarchicalCorrection} can be used instead, in which a single global polynomial describes the smooth part of the
+ * aberration and the local functions describe only its residuals.
  * 
  * @author Colin J. Fuller
  *
@@ -73,9 +79,21 @@ public class PositionCorrector {
 	 */
 	
 	static final String DET_CORR_PARAM = "determine_correction";
-	static final String THREAD_COUNT_PARAM = "max_threads";
 	static final String IN_SITU_ABERR_SECOND_CH_PARAM = "in_situ_aberr_corr_channel";
 	static final String INVERT_Z_PARAM = "inverted_z_axis";
+	static final String DRIFT_THRESHOLD_PARAM = "drift_check_threshold_nm";
+	static final String RESUMABLE_TRE_PARAM = "resumable_tre";
+	static final String TRE_CV_FOLDS_PARAM = "tre_cv_folds";
+	static final String TRE_CV_SEED_PARAM = "tre_cv_seed";
+	static final String HIERARCHICAL_CORR_PARAM = "hierarchical_correction";
+	static final String GLOBAL_ORDER_PARAM = "global_correction_order";
+	static final String LOCAL_STRIDE_PARAM = "local_correction_stride";
+	
+	static final int DEFAULT_GLOBAL_ORDER = 2;
+	static final int DEFAULT_LOCAL_STRIDE = 4;
+	static final double DEFAULT_DRIFT_THRESHOLD_TRE_MULTIPLE = 2.0;
+	static final long DEFAULT_TRE_CV_SEED = 0;
+	static final int DEFAULT_TRE_CV_FOLDS = 10;
 	
 
 	ParameterDictionary parameters;
@@ -101,6 +119,8 @@ public class PositionCorrector {
 
 	/**
 	* Creates a correction from a set of objects whose positions should be the same in each channel.
+	* <p>
+	* If the parameters specify that the correction should not be determined, the correction is instead read from disk.
 	* 
 	* @param imageObjects                  A Vector containing all the ImageObjects to be used for the correction
 	*                                      or in the order it appears in a multiwavelength image file.
@@ -108,10 +128,6 @@ public class PositionCorrector {
 	*/
 	public Correction getCorrection(java.util.List<ImageObject> imageObjects) {
 		
-		int referenceChannel = this.parameters.getIntValueForKey(REF_CH_PARAM);
-
-		int channelToCorrect = this.parameters.getIntValueForKey(CORR_CH_PARAM);
-		
 		if (!this.parameters.hasKeyAndTrue(DET_CORR_PARAM)) {
 			try {
 				return Correction.readFromDisk(FileUtils.getCorrectionFilename(this.parameters));
@@ -130,141 +146,598 @@ public class PositionCorrector {
 			return null;
 		}
 
+		return this.determineCorrection(imageObjects);
 
-		int numberOfPointsToFit = this.parameters.getIntValueForKey(NUM_POINT_PARAM);
-
-		RealMatrix correctionX = new Array2DRowRealMatrix(imageObjects.size(), numberOfCorrectionParameters);
-		RealMatrix correctionY = new Array2DRowRealMatrix(imageObjects.size(), numberOfCorrectionParameters);
-		RealMatrix correctionZ = new Array2DRowRealMatrix(imageObjects.size(), numberOfCorrectionParameters);
+	}
+	
+	/**
+	* Calculates a correction from a set of objects whose positions should be the same in each channel, regardless of whether
+	* the parameters specify that the correction should be read from disk.
+	* <p>
+	* If the optional parameter "hierarchical_correction" is true, this will be a {@link HierarchicalCorrection}; otherwise each object
+	* will have its own local interpolating function.
+	* 
+	* @param imageObjects                  A Vector containing all the ImageObjects to be used for the correction.
+	* @return                              A Correction object that can be used to correct the positions of other objects based upon the standards provided.
+	*/
+	public Correction determineCorrection(java.util.List<ImageObject> imageObjects) {
+		
+		if (this.parameters.hasKeyAndTrue(HIERARCHICAL_CORR_PARAM)) {
+			return this.determineHierarchicalCorrection(imageObjects);
+		}
+		
+		int referenceChannel = this.parameters.getIntValueForKey(REF_CH_PARAM);
 
-		RealVector distanceCutoffs = new ArrayRealVector(imageObjects.size(), 0.0);
+		int channelToCorrect = this.parameters.getIntValueForKey(CORR_CH_PARAM);
 
-		RealVector ones = new ArrayRealVector(numberOfPointsToFit, 1.0);
+		RealMatrix positions = getReferencePositions(imageObjects, referenceChannel);
+		RealMatrix differences = getChannelDifferences(imageObjects, referenceChannel, channelToCorrect);
 
+		Correction c = this.determineLocalCorrection(positions, differences, referenceChannel, channelToCorrect);
+		
+		c.setSourceData(positions, differences, new int[imageObjects.size()], getObjectIdentifiers(imageObjects), 0);
 
-		RealVector distancesToObjects = new ArrayRealVector(imageObjects.size(), 0.0);
+		return c;
 
-		RealMatrix allCorrectionParametersMatrix = new Array2DRowRealMatrix(numberOfPointsToFit, numberOfCorrectionParameters);
+	}
+	
+	/**
+	* Calculates a correction with a local interpolating function for each object from the positions of a set of objects and the 
+	* differences between channels at those positions.
+	* 
+	* @param positions				a RealMatrix containing the reference channel position of each object, one per row.
+	* @param differences			a RealMatrix containing the vector difference between channels of each object, one per row.
+	* @param referenceChannel		the index of the reference channel.
+	* @param channelToCorrect		the index of the channel being corrected.
+	* @return						a Correction determined from the supplied data; its source data is not set.
+	*/
+	Correction determineLocalCorrection(RealMatrix positions, RealMatrix differences, int referenceChannel, int channelToCorrect) {
+		
+		int numberOfPointsToFit = this.parameters.getIntValueForKey(NUM_POINT_PARAM);
+		
+		int numberOfObjects = positions.getRowDimension();
 
+		RealMatrix correctionX = new Array2DRowRealMatrix(numberOfObjects, numberOfCorrectionParameters);
+		RealMatrix correctionY = new Array2DRowRealMatrix(numberOfObjects, numberOfCorrectionParameters);
+		RealMatrix correctionZ = new Array2DRowRealMatrix(numberOfObjects, numberOfCorrectionParameters);
 
-		for (int i = 0; i < imageObjects.size(); i++) {
+		RealVector distanceCutoffs = new ArrayRealVector(numberOfObjects, 0.0);
 
-			RealVector ithPos = imageObjects.get(i).getPositionForChannel(referenceChannel);
+		for (int i = 0; i < numberOfObjects; i++) {
+			this.fitLocalCorrection(i, positions, differences, numberOfPointsToFit, correctionX, correctionY, correctionZ, distanceCutoffs, i);
+		}
 
-			for (int j = 0; j < imageObjects.size(); j++) {
+		return new Correction(correctionX, correctionY, correctionZ, distanceCutoffs, positions, referenceChannel, channelToCorrect);
 
-				double d = imageObjects.get(j).getPositionForChannel(referenceChannel).subtract(ithPos).getNorm();
+	}
+	
+	/**
+	* Calculates a {@link HierarchicalCorrection} from a set of objects whose positions should be the same in each channel.
+	* <p>
+	* A two-dimensional polynomial (of order set by the optional parameter "global_correction_order") is first fit to the 
+	* difference between channels in each dimension over all the objects.  Local interpolating functions are then fit to the
+	* residuals of this global fit, centered at every nth object, where n is set by the optional parameter "local_correction_stride".
+	* Each of these local functions uses n times "num_params" neighboring objects so that the coarser set of functions
+	* still covers the same area.
+	* 
+	* @param imageObjects                  A Vector containing all the ImageObjects to be used for the correction.
+	* @return                              A HierarchicalCorrection that can be used to correct the positions of other objects based upon the standards provided.
+	*/
+	public HierarchicalCorrection determineHierarchicalCorrection(java.util.List<ImageObject> imageObjects) {
+		
+		int referenceChannel = this.parameters.getIntValueForKey(REF_CH_PARAM);
 
-				distancesToObjects.setEntry(j, d);
+		int channelToCorrect = this.parameters.getIntValueForKey(CORR_CH_PARAM);
+		
+		RealMatrix positions = getReferencePositions(imageObjects, referenceChannel);
+		RealMatrix differences = getChannelDifferences(imageObjects, referenceChannel, channelToCorrect);
+		
+		HierarchicalCorrection c = this.determineHierarchicalCorrection(positions, differences, referenceChannel, channelToCorrect);
+		
+		c.setSourceData(positions, differences, new int[imageObjects.size()], getObjectIdentifiers(imageObjects), 0);
+		
+		return c;
+		
+	}
+	
+	/**
+	* Calculates a {@link HierarchicalCorrection} from the positions of a set of objects and the differences between channels at those positions.
+	* 
+	* @param positions				a RealMatrix containing the reference channel position of each object, one per row.
+	* @param differences			a RealMatrix containing the vector difference between channels of each object, one per row.
+	* @param referenceChannel		the index of the reference channel.
+	* @param channelToCorrect		the index of the channel being corrected.
+	* @return						a HierarchicalCorrection determined from the supplied data; its source data is not set.
+	*/
+	HierarchicalCorrection determineHierarchicalCorrection(RealMatrix positions, RealMatrix differences, int referenceChannel, int channelToCorrect) {
+		
+		int globalOrder = DEFAULT_GLOBAL_ORDER;
+		
+		if (this.parameters.hasKey(GLOBAL_ORDER_PARAM)) {
+			globalOrder = this.parameters.getIntValueForKey(GLOBAL_ORDER_PARAM);
+		}
+		
+		int stride = DEFAULT_LOCAL_STRIDE;
+		
+		if (this.parameters.hasKey(LOCAL_STRIDE_PARAM)) {
+			stride = Math.max(1, this.parameters.getIntValueForKey(LOCAL_STRIDE_PARAM));
+		}
+		
+		int numberOfObjects = positions.getRowDimension();
+		
+		int numberOfPointsToFit = Math.min(this.parameters.getIntValueForKey(NUM_POINT_PARAM) * stride, numberOfObjects - 1);
+		
+		//global fit, in normalized coordinates so that higher orders remain well conditioned
+		
+		double minX = Double.MAX_VALUE;
+		double maxX = -1.0*Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxY = -1.0*Double.MAX_VALUE;
+		
+		for (int i = 0; i < numberOfObjects; i++) {
+			minX = Math.min(minX, positions.getEntry(i, 0));
+			maxX = Math.max(maxX, positions.getEntry(i, 0));
+			minY = Math.min(minY, positions.getEntry(i, 1));
+			maxY = Math.max(maxY, positions.getEntry(i, 1));
+		}
+		
+		double xCenter = (maxX + minX)/2.0;
+		double yCenter = (maxY + minY)/2.0;
+		double scale = Math.max(maxX - minX, maxY - minY)/2.0;
+		
+		if (scale <= 0) scale = 1.0;
+		
+		int numberOfGlobalTerms = HierarchicalCorrection.numberOfGlobalTerms(globalOrder);
+		
+		RealMatrix globalTermsMatrix = new Array2DRowRealMatrix(numberOfObjects, numberOfGlobalTerms);
+		
+		double[] terms = new double[numberOfGlobalTerms];
+		
+		for (int i = 0; i < numberOfObjects; i++) {
+			HierarchicalCorrection.evaluateGlobalTerms((positions.getEntry(i, 0) - xCenter)/scale, (positions.getEntry(i, 1) - yCenter)/scale, globalOrder, terms);
+			globalTermsMatrix.setRow(i, terms);
+		}
+		
+		DecompositionSolver globalSolver = (new QRDecomposition(globalTermsMatrix)).getSolver();
+		
+		RealVector globalX = globalSolver.solve(differences.getColumnVector(0));
+		RealVector globalY = globalSolver.solve(differences.getColumnVector(1));
+		RealVector globalZ = globalSolver.solve(differences.getColumnVector(2));
+		
+		RealMatrix residuals = new Array2DRowRealMatrix(numberOfObjects, 3);
+		
+		residuals.setColumnVector(0, differences.getColumnVector(0).subtract(globalTermsMatrix.operate(globalX)));
+		residuals.setColumnVector(1, differences.getColumnVector(1).subtract(globalTermsMatrix.operate(globalY)));
+		residuals.setColumnVector(2, differences.getColumnVector(2).subtract(globalTermsMatrix.operate(globalZ)));
+		
+		//local fits to the residuals, centered on a subset of the objects
+		
+		int numberOfCenters = (numberOfObjects + stride - 1)/stride;
+		
+		RealMatrix correctionX = new Array2DRowRealMatrix(numberOfCenters, numberOfCorrectionParameters);
+		RealMatrix correctionY = new Array2DRowRealMatrix(numberOfCenters, numberOfCorrectionParameters);
+		RealMatrix correctionZ = new Array2DRowRealMatrix(numberOfCenters, numberOfCorrectionParameters);
 
+		RealVector distanceCutoffs = new ArrayRealVector(numberOfCenters, 0.0);
+		
+		RealMatrix centerPositions = new Array2DRowRealMatrix(numberOfCenters, 3);
+		
+		for (int c = 0; c < numberOfCenters; c++) {
+			
+			int centerIndex = c*stride;
+			
+			centerPositions.setRowVector(c, positions.getRowVector(centerIndex));
+			
+			this.fitLocalCorrection(centerIndex, positions, residuals, numberOfPointsToFit, correctionX, correctionY, correctionZ, distanceCutoffs, c);
+			
+		}
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("hierarchical correction: global order " + globalOrder + ", " + numberOfCenters + " local fits from " + numberOfObjects + " objects");
+		
+		return new HierarchicalCorrection(correctionX, correctionY, correctionZ, distanceCutoffs, centerPositions, referenceChannel, channelToCorrect, globalOrder, xCenter, yCenter, scale, globalX, globalY, globalZ);
+		
+	}
+	
+	/**
+	* Updates an existing correction with a set of new objects whose positions should be the same in each channel.
+	* <p>
+	* The new objects are merged with those from which the correction was originally determined.  For a purely local correction, only 
+	* the interpolating functions whose neighborhoods could include one of the new objects are refit, along with a new function 
+	* centered at each new object; all others are copied from the existing correction.  (A {@link HierarchicalCorrection} is 
+	* redetermined from the merged objects, as the global fit and therefore all the residuals change.)
+	* <p>
+	* The update in which each object was added is recorded in the returned correction.  The same value of "num_params" used
+	* to determine the existing correction must be used for the update.
+	* <p>
+	* New objects already in the correction's source data are skipped, so that updating twice from the same images does not add them
+	* twice: an object is a duplicate if its image and label match those of a source object, or if its reference channel position
+	* matches one exactly (which also covers source data stored without identifiers).
+	* <p>
+	* The TRE of the existing correction does not apply to the updated one, so the TRE of the returned correction is NaN; it must be
+	* redetermined from the merged objects (see {@link #determineSourceDataTRE(Correction)}) before the correction is written to disk.
+	* 
+	* @param existing		the Correction to update; this must contain its source data (see {@link Correction#hasSourceData()}).
+	* @param newObjects		the ImageObjects to add to the correction.
+	* @return				a new Correction determined from the existing and new objects, or the existing correction if all the new objects are already in it.
+	* @throws IllegalArgumentException	if the existing correction does not contain its source data.
+	*/
+	public Correction updateCorrection(Correction existing, java.util.List<ImageObject> newObjects) {
+		
+		if (! existing.hasSourceData()) {
+			throw new IllegalArgumentException("The existing correction does not contain the data from which it was determined and cannot be updated; it must be redetermined.");
+		}
+		
+		int referenceChannel = existing.getReferenceChannelIndex();
+		
+		int channelToCorrect = existing.getCorrectionChannelIndex();
+		
+		int updateIndex = existing.getNumberOfUpdates() + 1;
+		
+		RealMatrix oldPositions = existing.getSourcePositions();
+		RealMatrix oldDifferences = existing.getSourceDifferences();
+		
+		int numberOfOld = oldPositions.getRowDimension();
+		
+		java.util.List<ImageObject> objectsToAdd = this.removeObjectsAlreadyInCorrection(existing, newObjects, referenceChannel);
+		
+		if (objectsToAdd.isEmpty()) {
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("All " + newObjects.size() + " new objects are already in the correction; it has not been updated.");
+			return existing;
+		}
+		
+		int numberOfNew = objectsToAdd.size();
+		int numberOfMerged = numberOfOld + numberOfNew;
+		
+		RealMatrix newPositions = getReferencePositions(objectsToAdd, referenceChannel);
+		RealMatrix newDifferences = getChannelDifferences(objectsToAdd, referenceChannel, channelToCorrect);
+		
+		RealMatrix positions = new Array2DRowRealMatrix(numberOfMerged, 3);
+		RealMatrix differences = new Array2DRowRealMatrix(numberOfMerged, 3);
+		int[] updateIndices = new int[numberOfMerged];
+		String[] identifiers = new String[numberOfMerged];
+		
+		String[] newIdentifiers = getObjectIdentifiers(objectsToAdd);
+		
+		for (int i = 0; i < numberOfMerged; i++) {
+			if (i < numberOfOld) {
+				positions.setRowVector(i, oldPositions.getRowVector(i));
+				differences.setRowVector(i, oldDifferences.getRowVector(i));
+				updateIndices[i] = (existing.getSourceUpdateIndices() != null ? existing.getSourceUpdateIndices()[i] : 0);
+				identifiers[i] = (existing.getSourceIdentifiers() != null ? existing.getSourceIdentifiers()[i] : null);
+			} else {
+				positions.setRowVector(i, newPositions.getRowVector(i - numberOfOld));
+				differences.setRowVector(i, newDifferences.getRowVector(i - numberOfOld));
+				updateIndices[i] = updateIndex;
+				identifiers[i] = newIdentifiers[i - numberOfOld];
+			}
+		}
+		
+		Correction updated = null;
+		
+		if (existing instanceof HierarchicalCorrection) {
+			
+			updated = this.determineHierarchicalCorrection(positions, differences, referenceChannel, channelToCorrect);
+			
+		} else {
+		
+			int numberOfPointsToFit = this.parameters.getIntValueForKey(NUM_POINT_PARAM);
+			
+			RealMatrix correctionX = new Array2DRowRealMatrix(numberOfMerged, numberOfCorrectionParameters);
+			RealMatrix correctionY = new Array2DRowRealMatrix(numberOfMerged, numberOfCorrectionParameters);
+			RealMatrix correctionZ = new Array2DRowRealMatrix(numberOfMerged, numberOfCorrectionParameters);
+	
+			RealVector distanceCutoffs = new ArrayRealVector(numberOfMerged, 0.0);
+			
+			int refitCount = 0;
+			
+			for (int i = 0; i < numberOfMerged; i++) {
+				
+				boolean refit = (i >= numberOfOld);
+				
+				if (! refit) {
+					
+					//the point just outside the neighborhood is no farther than twice the cutoff, so any new object closer than that 
+					//could change either the neighborhood or the cutoff
+					
+					double changeDistance = 2.0*existing.getDistanceCutoffs().getEntry(i);
+					
+					RealVector ithPos = positions.getRowVector(i);
+					
+					for (int j = 0; j < numberOfNew; j++) {
+						if (newPositions.getRowVector(j).subtract(ithPos).getNorm() < changeDistance) {
+							refit = true;
+							break;
+						}
+					}
+					
+				}
+				
+				if (refit) {
+					this.fitLocalCorrection(i, positions, differences, numberOfPointsToFit, correctionX, correctionY, correctionZ, distanceCutoffs, i);
+					refitCount++;
+				} else {
+					correctionX.setRowVector(i, existing.getCorrectionX().getRowVector(i));
+					correctionY.setRowVector(i, existing.getCorrectionY().getRowVector(i));
+					correctionZ.setRowVector(i, existing.getCorrectionZ().getRowVector(i));
+					distanceCutoffs.setEntry(i, existing.getDistanceCutoffs().getEntry(i));
+				}
+				
+			}
+			
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).info("Updated correction with " + numberOfNew + " new objects; refit " + refitCount + " of " + numberOfMerged + " local functions.");
+			
+			updated = new Correction(correctionX, correctionY, correctionZ, distanceCutoffs, positions, referenceChannel, channelToCorrect);
+			
+		}
+		
+		updated.setSourceData(positions, differences, updateIndices, identifiers, updateIndex);
+		
+		//the stored TRE was determined from the old objects only
+		
+		updated.setTre(Double.NaN);
+		
+		return updated;
+		
+	}
+	
+	/**
+	* Removes from a list of new objects those already in the source data of a correction, or repeated earlier in the list.
+	* <p>
+	* An object is a duplicate if its identifier (see {@link #getObjectIdentifiers(java.util.List)}) matches, where the object has an image ID;
+	* or if its reference channel position matches exactly.
+	* 
+	* @param existing			the Correction whose source data will be checked.
+	* @param newObjects			the ImageObjects to check.
+	* @param referenceChannel	the index of the reference channel.
+	* @return					a List containing the new objects that are not duplicates, in their original order.
+	*/
+	java.util.List<ImageObject> removeObjectsAlreadyInCorrection(Correction existing, java.util.List<ImageObject> newObjects, int referenceChannel) {
+		
+		java.util.Set<String> knownIdentifiers = new java.util.HashSet<String>();
+		java.util.Set<java.util.List<Double>> knownPositions = new java.util.HashSet<java.util.List<Double>>();
+		
+		String[] oldIdentifiers = existing.getSourceIdentifiers();
+		RealMatrix oldPositions = existing.getSourcePositions();
+		
+		for (int i = 0; i < oldPositions.getRowDimension(); i++) {
+			if (oldIdentifiers != null && oldIdentifiers[i] != null) {
+				knownIdentifiers.add(oldIdentifiers[i]);
 			}
+			knownPositions.add(positionKey(oldPositions.getRowVector(i)));
+		}
+		
+		String[] newIdentifiers = getObjectIdentifiers(newObjects);
+		
+		java.util.List<ImageObject> objectsToAdd = new java.util.ArrayList<ImageObject>();
+		
+		for (int i = 0; i < newObjects.size(); i++) {
+			
+			ImageObject iobj = newObjects.get(i);
+			
+			String identifier = (iobj.getImageID() != null ? newIdentifiers[i] : null);
+			
+			java.util.List<Double> position = positionKey(iobj.getPositionForChannel(referenceChannel));
+			
+			if ((identifier != null && knownIdentifiers.contains(identifier)) || knownPositions.contains(position)) {
+				java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("Skipping object " + newIdentifiers[i] + ", which is already in the correction.");
+				continue;
+			}
+			
+			if (identifier != null) knownIdentifiers.add(identifier);
+			knownPositions.add(position);
+			
+			objectsToAdd.add(iobj);
+			
+		}
+		
+		if (objectsToAdd.size() < newObjects.size()) {
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).info("Skipped " + (newObjects.size() - objectsToAdd.size()) + " of " + newObjects.size() + " new objects that are already in the correction.");
+		}
+		
+		return objectsToAdd;
+		
+	}
+	
+	/**
+	* Gets a key for exact comparison of the x, y, and z components of a position.
+	*/
+	private static java.util.List<Double> positionKey(RealVector position) {
+		return java.util.Arrays.asList(position.getEntry(0), position.getEntry(1), position.getEntry(2));
+	}
+	
+	/**
+	* Gets strings identifying a set of objects by image and label.
+	* 
+	* @param imageObjects	the ImageObjects to identify.
+	* @return				an array containing a string of the form "imageID:label" for each object.
+	*/
+	static String[] getObjectIdentifiers(java.util.List<ImageObject> imageObjects) {
+		
+		String[] identifiers = new String[imageObjects.size()];
+		
+		for (int i = 0; i < imageObjects.size(); i++) {
+			identifiers[i] = imageObjects.get(i).getImageID() + ":" + imageObjects.get(i).getLabel();
+		}
+		
+		return identifiers;
+		
+	}
+	
+	/**
+	* Gets the positions of a set of objects in the reference channel.
+	* 
+	* @param imageObjects		the ImageObjects whose positions will be retrieved.
+	* @param referenceChannel	the index of the reference channel.
+	* @return					a RealMatrix containing one row per object; each row is the object's position in the reference channel.
+	*/
+	static RealMatrix getReferencePositions(java.util.List<ImageObject> imageObjects, int referenceChannel) {
+		
+		RealMatrix positions = new Array2DRowRealMatrix(imageObjects.size(), 3);
+		
+		for (int i = 0; i < imageObjects.size(); i++) {
+			positions.setRowVector(i, imageObjects.get(i).getPositionForChannel(referenceChannel));
+		}
+		
+		return positions;
+		
+	}
+	
+	/**
+	* Gets the vector differences between the reference channel and the channel being corrected for a set of objects.
+	* 
+	* @param imageObjects		the ImageObjects whose channel differences will be retrieved.
+	* @param referenceChannel	the index of the reference channel.
+	* @param channelToCorrect	the index of the channel being corrected.
+	* @return					a RealMatrix containing one row per object; each row is the vector difference between the channels for that object.
+	*/
+	static RealMatrix getChannelDifferences(java.util.List<ImageObject> imageObjects, int referenceChannel, int channelToCorrect) {
+		
+		RealMatrix differences = new Array2DRowRealMatrix(imageObjects.size(), 3);
+		
+		for (int i = 0; i < imageObjects.size(); i++) {
+			differences.setRowVector(i, imageObjects.get(i).getVectorDifferenceBetweenChannels(referenceChannel, channelToCorrect));
+		}
+		
+		return differences;
+		
+	}
+	
+	/**
+	* Fits the quadratic interpolating function centered at a single point to the differences at its nearest neighbors, storing the result
+	* in the supplied correction matrices.
+	* 
+	* @param centerIndex			the row of positions at which the interpolating function is centered.
+	* @param positions				a RealMatrix containing the position of every point available for fitting, one per row.
+	* @param differences			a RealMatrix containing the difference to be fit at every point available for fitting, one per row.
+	* @param numberOfPointsToFit	the number of nearest points (including the center) used for the fit.
+	* @param correctionX			the matrix in which the x parameters will be stored.
+	* @param correctionY			the matrix in which the y parameters will be stored.
+	* @param correctionZ			the matrix in which the z parameters will be stored.
+	* @param distanceCutoffs		the vector in which the distance cutoff for the fit will be stored.
+	* @param outputRow				the row of the output matrices (and entry of distanceCutoffs) that will be set.
+	*/
+	void fitLocalCorrection(int centerIndex, RealMatrix positions, RealMatrix differences, int numberOfPointsToFit, RealMatrix correctionX, RealMatrix correctionY, RealMatrix correctionZ, RealVector distanceCutoffs, int outputRow) {
+		
+		LocalCorrectionFitEvent event = new LocalCorrectionFitEvent();
+		event.begin();
+		
+		int numberOfPoints = positions.getRowDimension();
+		
+		RealVector ones = new ArrayRealVector(numberOfPointsToFit, 1.0);
 
-			//the sorting becomes a bottleneck once the number of points gets large
+		RealVector distancesToObjects = new ArrayRealVector(numberOfPoints, 0.0);
 
+		RealMatrix allCorrectionParametersMatrix = new Array2DRowRealMatrix(numberOfPointsToFit, numberOfCorrectionParameters);
 
-			//reverse comparator so we can use the priority queue and get the max element at the head
+		RealVector ithPos = positions.getRowVector(centerIndex);
 
-			Comparator<Double> cdReverse = new Comparator<Double>(){
+		for (int j = 0; j < numberOfPoints; j++) {
 
-				public int compare(Double o1, Double o2) {
+			double d = positions.getRowVector(j).subtract(ithPos).getNorm();
 
-					if (o1.equals(o2)) return 0;
-					if (o1 > o2) return -1;
-					return 1;
-				}
+			distancesToObjects.setEntry(j, d);
 
+		}
 
-			};
+		//the sorting becomes a bottleneck once the number of points gets large
 
-			PriorityQueue<Double> pq = new PriorityQueue<Double>(numberOfPointsToFit+2, cdReverse);
 
-			double maxElement = Double.MAX_VALUE;
+		//reverse comparator so we can use the priority queue and get the max element at the head
 
-			for (int p = 0; p< numberOfPointsToFit+1; p++) {
+		Comparator<Double> cdReverse = new Comparator<Double>(){
 
-				pq.add(distancesToObjects.getEntry(p));
+			public int compare(Double o1, Double o2) {
 
+				if (o1.equals(o2)) return 0;
+				if (o1 > o2) return -1;
+				return 1;
 			}
 
-			maxElement = pq.peek();
 
-			for (int p = numberOfPointsToFit+1; p < distancesToObjects.getDimension(); p++) {
+		};
 
-				double value = distancesToObjects.getEntry(p);
+		PriorityQueue<Double> pq = new PriorityQueue<Double>(numberOfPointsToFit+2, cdReverse);
 
-				if (value < maxElement) {
+		double maxElement = Double.MAX_VALUE;
 
-					pq.poll();
+		for (int p = 0; p< numberOfPointsToFit+1; p++) {
 
-					pq.add(value);
+			pq.add(distancesToObjects.getEntry(p));
 
-					maxElement = pq.peek();
+		}
 
-				}
+		maxElement = pq.peek();
 
-			}
+		for (int p = numberOfPointsToFit+1; p < distancesToObjects.getDimension(); p++) {
 
+			double value = distancesToObjects.getEntry(p);
 
+			if (value < maxElement) {
 
-			double firstExclude = pq.poll();
-			double lastDist = pq.poll();
+				pq.poll();
 
+				pq.add(value);
 
-			double distanceCutoff = (lastDist + firstExclude)/2.0;
+				maxElement = pq.peek();
 
-			distanceCutoffs.setEntry(i, distanceCutoff);
+			}
 
-			RealVector xPositionsToFit = new ArrayRealVector(numberOfPointsToFit, 0.0);
-			RealVector yPositionsToFit = new ArrayRealVector(numberOfPointsToFit, 0.0);
-			RealVector zPositionsToFit = new ArrayRealVector(numberOfPointsToFit, 0.0);
+		}
 
-			RealMatrix differencesToFit = new Array2DRowRealMatrix(numberOfPointsToFit, imageObjects.get(0).getPositionForChannel(referenceChannel).getDimension());
 
 
-			int toFitCounter = 0;
+		double firstExclude = pq.poll();
+		double lastDist = pq.poll();
 
 
-			for (int j = 0; j < imageObjects.size(); j++) {
-				if (distancesToObjects.getEntry(j) < distanceCutoff) {
-					xPositionsToFit.setEntry(toFitCounter, imageObjects.get(j).getPositionForChannel(referenceChannel).getEntry(0));
-					yPositionsToFit.setEntry(toFitCounter, imageObjects.get(j).getPositionForChannel(referenceChannel).getEntry(1));
-					zPositionsToFit.setEntry(toFitCounter, imageObjects.get(j).getPositionForChannel(referenceChannel).getEntry(2));
+		double distanceCutoff = (lastDist + firstExclude)/2.0;
 
-					differencesToFit.setRowVector(toFitCounter, imageObjects.get(j).getVectorDifferenceBetweenChannels(referenceChannel, channelToCorrect));
+		distanceCutoffs.setEntry(outputRow, distanceCutoff);
 
-					toFitCounter++;
-				}
-			}
+		RealVector xPositionsToFit = new ArrayRealVector(numberOfPointsToFit, 0.0);
+		RealVector yPositionsToFit = new ArrayRealVector(numberOfPointsToFit, 0.0);
 
-			RealVector x = xPositionsToFit.mapSubtractToSelf(ithPos.getEntry(0));
-			RealVector y = yPositionsToFit.mapSubtractToSelf(ithPos.getEntry(1));
+		RealMatrix differencesToFit = new Array2DRowRealMatrix(numberOfPointsToFit, differences.getColumnDimension());
 
 
-			allCorrectionParametersMatrix.setColumnVector(0, ones);
-			allCorrectionParametersMatrix.setColumnVector(1, x);
-			allCorrectionParametersMatrix.setColumnVector(2, y);
-			allCorrectionParametersMatrix.setColumnVector(3, x.map(new Power(2)));
-			allCorrectionParametersMatrix.setColumnVector(4, y.map(new Power(2)));
-			allCorrectionParametersMatrix.setColumnVector(5, x.ebeMultiply(y));
+		int toFitCounter = 0;
 
-			DecompositionSolver solver = (new QRDecomposition(allCorrectionParametersMatrix)).getSolver();
 
+		for (int j = 0; j < numberOfPoints; j++) {
+			if (distancesToObjects.getEntry(j) < distanceCutoff) {
+				xPositionsToFit.setEntry(toFitCounter, positions.getEntry(j, 0));
+				yPositionsToFit.setEntry(toFitCounter, positions.getEntry(j, 1));
 
+				differencesToFit.setRowVector(toFitCounter, differences.getRowVector(j));
 
-			RealVector cX = solver.solve(differencesToFit.getColumnVector(0));
-			RealVector cY = solver.solve(differencesToFit.getColumnVector(1));
-			RealVector cZ = solver.solve(differencesToFit.getColumnVector(2));
+				toFitCounter++;
+			}
+		}
 
-			correctionX.setRowVector(i, cX);
-			correctionY.setRowVector(i, cY);
-			correctionZ.setRowVector(i, cZ);
+		RealVector x = xPositionsToFit.mapSubtractToSelf(ithPos.getEntry(0));
+		RealVector y = yPositionsToFit.mapSubtractToSelf(ithPos.getEntry(1));
 
 
-		}
+		allCorrectionParametersMatrix.setColumnVector(0, ones);
+		allCorrectionParametersMatrix.setColumnVector(1, x);
+		allCorrectionParametersMatrix.setColumnVector(2, y);
+		allCorrectionParametersMatrix.setColumnVector(3, x.map(new Power(2)));
+		allCorrectionParametersMatrix.setColumnVector(4, y.map(new Power(2)));
+		allCorrectionParametersMatrix.setColumnVector(5, x.ebeMultiply(y));
 
-		Correction c =  new Correction(correctionX, correctionY, correctionZ, distanceCutoffs, imageObjects, referenceChannel, channelToCorrect);
+		DecompositionSolver solver = (new QRDecomposition(allCorrectionParametersMatrix)).getSolver();
 
-		return c;
+
+
+		RealVector cX = solver.solve(differencesToFit.getColumnVector(0));
+		RealVector cY = solver.solve(differencesToFit.getColumnVector(1));
+		RealVector cZ = solver.solve(differencesToFit.getColumnVector(2));
+
+		correctionX.setRowVector(outputRow, cX);
+		correctionY.setRowVector(outputRow, cY);
+		correctionZ.setRowVector(outputRow, cZ);
+		
+		event.commit(centerIndex, numberOfPoints, numberOfPointsToFit, distanceCutoff);
 
 	}
 
@@ -451,9 +924,64 @@ public class PositionCorrector {
 	}
 
 
+	/**
+	* Checks whether a stored correction still describes a set of objects whose positions should be the same in each channel.
+	* <p>
+	* The correction is evaluated at every object at once, and the residual between the measured and corrected difference 
+	* between channels is calculated in real units.  The check passes if the mean residual is no larger than the optional 
+	* parameter "drift_check_threshold_nm", or if that is not specified, twice the target registration error stored with the correction.
+	* 
+	* @param c				the stored Correction to check.
+	* @param imageObjects	the ImageObjects (e.g. a small set of freshly imaged beads) at which the correction will be checked.
+	* @return				a CorrectionDriftReport containing the residual statistics and whether the check passed.
+	*/
+	public CorrectionDriftReport checkCorrectionDrift(Correction c, java.util.List<ImageObject> imageObjects) {
+		
+		int referenceChannel = c.getReferenceChannelIndex();
+		
+		int channelToCorrect = c.getCorrectionChannelIndex();
+		
+		double threshold = DEFAULT_DRIFT_THRESHOLD_TRE_MULTIPLE * c.getTre();
+		
+		if (this.parameters.hasKey(DRIFT_THRESHOLD_PARAM)) {
+			threshold = this.parameters.getDoubleValueForKey(DRIFT_THRESHOLD_PARAM);
+		} else if (! (c.getTre() > 0)) {
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("No drift check threshold specified and no TRE stored with the correction; the check cannot pass.");
+			threshold = Double.NaN;
+		}
+		
+		RealMatrix positions = getReferencePositions(imageObjects, referenceChannel);
+		RealMatrix differences = getChannelDifferences(imageObjects, referenceChannel, channelToCorrect);
+		
+		RealMatrix corrections = c.correctPositions(positions);
+		
+		java.util.List<double[]> residuals = new java.util.ArrayList<double[]>();
+		
+		for (int i = 0; i < imageObjects.size(); i++) {
+			
+			if (Double.isNaN(corrections.getEntry(i, 0))) continue;
+			
+			double[] residual = new double[3];
+			
+			for (int d = 0; d < 3; d++) {
+				residual[d] = (differences.getEntry(i, d) - corrections.getEntry(i, d))*this.pixelToDistanceConversions.getEntry(d);
+			}
+			
+			residuals.add(residual);
+			
+		}
+		
+		return new CorrectionDriftReport(residuals.toArray(new double[residuals.size()][]), imageObjects.size(), threshold);
+		
+	}
+
+
 	 /**
      * Determines the target registration error for a correction by successively leaving out each ImageObject in a set used to make a correction,
      * calculating a correction from the remaining objects, and assessing the error in correcting the object left out.
+     * <p>
+     * If the optional parameter "resumable_tre" is true, the result for each object is stored on disk as soon as it is calculated
+     * (see {@link TREResultStore}), and any results already stored for the same objects and settings are reused.
      * 
      * @param imageObjects                  A Vector containing all the ImageObjects to be used for the correction
      *                                      or in the order it appears in a multiwavelength image file.
@@ -467,15 +995,38 @@ public class PositionCorrector {
 		
 		RealVector treVector = new ArrayRealVector(imageObjects.size(), 0.0);
         RealVector treXYVector = new ArrayRealVector(imageObjects.size(), 0.0);
+        boolean[] successful = new boolean[imageObjects.size()];
+        
+        TREResultStore store = null;
+        
+        if (this.parameters.hasKeyAndTrue(RESUMABLE_TRE_PARAM)) {
+        	
+        	String key = TREResultStore.computeKey(getReferencePositions(imageObjects, referenceChannel), getChannelDifferences(imageObjects, referenceChannel, channelToCorrect), this.getCorrectionSettingsDescription(referenceChannel, channelToCorrect));
+        	
+        	store = new TREResultStore(FileUtils.getTREStoreFilename(this.parameters), key, imageObjects.size());
+        	
+        	try {
+        		store.open();
+        		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).info("Reusing " + store.getNumberOfResults() + " of " + imageObjects.size() + " stored TRE results.");
+        	} catch (java.io.IOException e) {
+        		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("Unable to use stored TRE results; calculating all of them: " + e.getMessage());
+        		store = null;
+        	}
+        	
+        }
 
         java.util.Deque<TREThread> startedThreads = new java.util.LinkedList<TREThread>();
-        int maxThreads = 1;
-		if (this.parameters.hasKey(THREAD_COUNT_PARAM)) {
-			maxThreads = this.parameters.getIntValueForKey(THREAD_COUNT_PARAM);
-		}
+        int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
         final int threadWaitTime_ms = 1000;
 
         for (int removeIndex = 0; removeIndex < imageObjects.size(); removeIndex++) {
+        	
+        	if (store != null && store.hasResult(removeIndex)) {
+        		treVector.setEntry(removeIndex, store.getTre(removeIndex));
+        		treXYVector.setEntry(removeIndex, store.getTreXY(removeIndex));
+        		successful[removeIndex] = store.getSuccess(removeIndex);
+        		continue;
+        	}
 
             if (removeIndex % 10 == 0) {
 
@@ -510,9 +1061,7 @@ public class PositionCorrector {
                     }
                 }
 
-                treVector.setEntry(next.getRemoveIndex(), next.getTre());
-
-                treXYVector.setEntry(next.getRemoveIndex(), next.getTreXY());
+                collectTREResult(next, treVector, treXYVector, successful, store);
 
                 startedThreads.add(nextFit);
                 nextFit.start();
@@ -522,30 +1071,34 @@ public class PositionCorrector {
 
         }
 
-        java.util.List<Integer> unsuccessful_TRE = new java.util.ArrayList<Integer>();
-
         while(startedThreads.size() > 0) {
             TREThread next = startedThreads.poll();
             try {
                 next.join();
-                if (next.getSuccess()) {
-                	treVector.setEntry(next.getRemoveIndex(), next.getTre());
-                } else {
-                	unsuccessful_TRE.add(next.getRemoveIndex());
-                }
+                collectTREResult(next, treVector, treXYVector, successful, store);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
         }
+        
+        if (store != null) {
+        	store.close();
+        }
+        
+        int numberSuccessful = 0;
+        
+        for (boolean b : successful) {
+        	if (b) numberSuccessful++;
+        }
 
-        RealVector treVector_mod = new ArrayRealVector(treVector.getDimension() - unsuccessful_TRE.size());
-        RealVector treXYVector_mod = new ArrayRealVector(treVector_mod.getDimension());
+        RealVector treVector_mod = new ArrayRealVector(numberSuccessful);
+        RealVector treXYVector_mod = new ArrayRealVector(numberSuccessful);
 
         int c = 0;
 
         //unsuccessful TRE calculation results when there is incomplete coverage in the correction dataset
         for (int i = 0; i < treVector.getDimension(); ++i) {
-        	if (! unsuccessful_TRE.contains(i)) {
+        	if (successful[i]) {
         		treVector_mod.setEntry(c, treVector.getEntry(i));
         		treXYVector_mod.setEntry(c, treXYVector.getEntry(i));
         		++c;
@@ -564,6 +1117,272 @@ public class PositionCorrector {
         return tre;
 
     }
+	
+	/**
+	* Estimates the target registration error by k-fold cross-validation, with the number of folds set by the parameter "tre_cv_folds".
+	* 
+	* @param imageObjects	A Vector containing all the ImageObjects to be used for the correction.
+	* @return				a CrossValidatedTREResult containing the per-fold and pooled results.
+	* @see #determineCrossValidatedTRE(java.util.List, int)
+	*/
+	public CrossValidatedTREResult determineCrossValidatedTRE(java.util.List<ImageObject> imageObjects) {
+		return this.determineCrossValidatedTRE(imageObjects, this.parameters.getIntValueForKey(TRE_CV_FOLDS_PARAM));
+	}
+	
+	/**
+	* Estimates the target registration error by k-fold cross-validation.
+	* <p>
+	* The objects are randomly divided into the specified number of folds (reproducibly, using the seed in the optional parameter "tre_cv_seed").
+	* For each fold, a correction is calculated from the objects in all other folds and evaluated at every held-out object at once.  The folds
+	* are processed in parallel, using up to the number of threads specified by the optional parameter "max_threads".
+	* <p>
+	* This requires calculating only one correction per fold rather than one per object as in {@link #determineTRE(java.util.List)}, and
+	* because each correction is built from fewer objects, it gives a slightly conservative estimate of the error.
+	* 
+	* @param imageObjects	A Vector containing all the ImageObjects to be used for the correction.
+	* @param folds			the number of folds; must be at least 2 and no more than the number of objects.
+	* @return				a CrossValidatedTREResult containing the per-fold and pooled results.
+	*/
+	public CrossValidatedTREResult determineCrossValidatedTRE(final java.util.List<ImageObject> imageObjects, final int folds) {
+		
+		if (folds < 2 || folds > imageObjects.size()) {
+			throw new IllegalArgumentException("Number of cross-validation folds must be between 2 and the number of objects; got " + folds + ".");
+		}
+		
+		int referenceChannel = this.parameters.getIntValueForKey(REF_CH_PARAM);
+
+		int channelToCorrect = this.parameters.getIntValueForKey(CORR_CH_PARAM);
+		
+		return this.crossValidateTRE(getReferencePositions(imageObjects, referenceChannel), getChannelDifferences(imageObjects, referenceChannel, channelToCorrect), 
+				referenceChannel, channelToCorrect, this.parameters.hasKeyAndTrue(HIERARCHICAL_CORR_PARAM), this.getFoldAssignments(imageObjects.size(), folds), folds);
+		
+	}
+	
+	/**
+	* Determines the target registration error of a correction from the data from which it was determined, for instance after the correction 
+	* has been updated with new objects (see {@link #updateCorrection(Correction, java.util.List)}), when the objects from earlier updates are
+	* available only as its source data.
+	* <p>
+	* This is a k-fold cross-validated estimate, as in {@link #determineCrossValidatedTRE(java.util.List, int)}, with the number of folds specified
+	* by the parameter "tre_cv_folds", or if that is not specified, 10 (or one per object, if there are fewer objects).
+	* Leaving each object out in turn, as in {@link #determineTRE(java.util.List)}, would require a correction per object, which is prohibitive
+	* once a correction has accumulated the objects from several updates.
+	* The correction from the objects outside each fold is determined in the same way as the supplied correction (with local interpolating functions or as a 
+	* {@link HierarchicalCorrection}).  The folds are processed in parallel, using up to the number of threads specified by the optional parameter "max_threads".
+	* 
+	* @param c		the Correction whose TRE will be determined; this must contain its source data (see {@link Correction#hasSourceData()}).
+	* @return		a CrossValidatedTREResult containing the per-fold and pooled results.
+	* @throws IllegalArgumentException	if the correction does not contain its source data.
+	*/
+	public CrossValidatedTREResult determineSourceDataTRE(Correction c) {
+		
+		if (! c.hasSourceData()) {
+			throw new IllegalArgumentException("The correction does not contain the data from which it was determined, so its TRE cannot be determined.");
+		}
+		
+		RealMatrix positions = c.getSourcePositions();
+		
+		int numberOfObjects = positions.getRowDimension();
+		
+		int folds = Math.min(DEFAULT_TRE_CV_FOLDS, numberOfObjects);
+		
+		if (this.parameters.hasKey(TRE_CV_FOLDS_PARAM)) {
+			folds = this.parameters.getIntValueForKey(TRE_CV_FOLDS_PARAM);
+		}
+		
+		if (folds < 2 || folds > numberOfObjects) {
+			throw new IllegalArgumentException("Number of cross-validation folds must be between 2 and the number of objects; got " + folds + ".");
+		}
+		
+		return this.crossValidateTRE(positions, c.getSourceDifferences(), c.getReferenceChannelIndex(), c.getCorrectionChannelIndex(), c instanceof HierarchicalCorrection, this.getFoldAssignments(numberOfObjects, folds), folds);
+		
+	}
+	
+	/**
+	* Randomly assigns objects to cross-validation folds of (nearly) equal size, reproducibly, using the seed in the optional parameter "tre_cv_seed".
+	* 
+	* @param numberOfObjects	the number of objects.
+	* @param folds				the number of folds.
+	* @return					an array containing the index of the fold to which each object belongs.
+	*/
+	int[] getFoldAssignments(int numberOfObjects, int folds) {
+		
+		long seed = DEFAULT_TRE_CV_SEED;
+		
+		if (this.parameters.hasKey(TRE_CV_SEED_PARAM)) {
+			seed = this.parameters.getIntValueForKey(TRE_CV_SEED_PARAM);
+		}
+		
+		java.util.List<Integer> order = new java.util.ArrayList<Integer>();
+		
+		for (int i = 0; i < numberOfObjects; i++) {
+			order.add(i);
+		}
+		
+		java.util.Collections.shuffle(order, new java.util.Random(seed));
+		
+		int[] foldOfObject = new int[numberOfObjects];
+		
+		for (int i = 0; i < order.size(); i++) {
+			foldOfObject[order.get(i)] = i % folds;
+		}
+		
+		return foldOfObject;
+		
+	}
+	
+	/**
+	* Estimates the target registration error by cross-validation over a given assignment of objects to folds: for each fold, a correction is 
+	* calculated from the objects in all other folds and evaluated at every held-out object at once.  The folds are processed in parallel, 
+	* using up to the number of threads specified by the optional parameter "max_threads".
+	* 
+	* @param positions			a RealMatrix containing the reference channel position of each object, one per row.
+	* @param differences		a RealMatrix containing the vector difference between channels of each object, one per row.
+	* @param referenceChannel	the index of the reference channel.
+	* @param channelToCorrect	the index of the channel being corrected.
+	* @param hierarchical		whether each correction should be a {@link HierarchicalCorrection} rather than purely local.
+	* @param foldOfObject		the index of the fold to which each object belongs.
+	* @param folds				the number of folds.
+	* @return					a CrossValidatedTREResult containing the per-fold and pooled results.
+	*/
+	CrossValidatedTREResult crossValidateTRE(final RealMatrix positions, final RealMatrix differences, final int referenceChannel, final int channelToCorrect, final boolean hierarchical, final int[] foldOfObject, int folds) {
+		
+		final int[] columns = {0, 1, 2};
+		
+		final double[] foldTreSums = new double[folds];
+		final double[] foldTreXYSums = new double[folds];
+		final int[] foldHeldOut = new int[folds];
+		final int[] foldFailures = new int[folds];
+		
+		int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
+		
+		for (int f = 0; f < folds; f++) {
+			
+			final int fold = f;
+			
+			tasks.add(new Runnable() {
+				public void run() {
+					
+					TREFoldEvent event = new TREFoldEvent();
+					event.begin();
+					
+					int heldOutCount = 0;
+					
+					for (int i = 0; i < foldOfObject.length; i++) {
+						if (foldOfObject[i] == fold) heldOutCount++;
+					}
+					
+					int[] training = new int[foldOfObject.length - heldOutCount];
+					int[] heldOut = new int[heldOutCount];
+					
+					int trainingIndex = 0;
+					int heldOutIndex = 0;
+					
+					for (int i = 0; i < foldOfObject.length; i++) {
+						if (foldOfObject[i] == fold) {
+							heldOut[heldOutIndex++] = i;
+						} else {
+							training[trainingIndex++] = i;
+						}
+					}
+					
+					RealMatrix trainingPositions = positions.getSubMatrix(training, columns);
+					RealMatrix trainingDifferences = differences.getSubMatrix(training, columns);
+					
+					Correction c = null;
+					
+					if (hierarchical) {
+						c = determineHierarchicalCorrection(trainingPositions, trainingDifferences, referenceChannel, channelToCorrect);
+					} else {
+						c = determineLocalCorrection(trainingPositions, trainingDifferences, referenceChannel, channelToCorrect);
+					}
+					
+					RealMatrix heldOutDifferences = differences.getSubMatrix(heldOut, columns);
+					RealMatrix corrections = c.correctPositions(positions.getSubMatrix(heldOut, columns));
+					
+					double treSum = 0;
+					double treXYSum = 0;
+					int failures = 0;
+					
+					for (int i = 0; i < heldOut.length; i++) {
+						
+						if (Double.isNaN(corrections.getEntry(i, 0))) {
+							failures++;
+							continue;
+						}
+						
+						double dx = (heldOutDifferences.getEntry(i, 0) - corrections.getEntry(i, 0))*pixelToDistanceConversions.getEntry(0);
+						double dy = (heldOutDifferences.getEntry(i, 1) - corrections.getEntry(i, 1))*pixelToDistanceConversions.getEntry(1);
+						double dz = (heldOutDifferences.getEntry(i, 2) - corrections.getEntry(i, 2))*pixelToDistanceConversions.getEntry(2);
+						
+						treSum += Math.sqrt(dx*dx + dy*dy + dz*dz);
+						treXYSum += Math.sqrt(dx*dx + dy*dy);
+						
+					}
+					
+					foldTreSums[fold] = treSum;
+					foldTreXYSums[fold] = treXYSum;
+					foldHeldOut[fold] = heldOut.length;
+					foldFailures[fold] = failures;
+					
+					event.commit(fold, heldOut.length, failures);
+					
+				}
+			});
+			
+		}
+		
+		ConcurrencyUtils.runConcurrently(tasks, maxThreads, "cross-validated TRE calculation");
+		
+		CrossValidatedTREResult cvResult = new CrossValidatedTREResult(foldTreSums, foldTreXYSums, foldHeldOut, foldFailures);
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine(cvResult.toString());
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).info("TRE: " + cvResult.getPooledTre());
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).info("x-y TRE: " + cvResult.getPooledTreXY());
+		
+		return cvResult;
+		
+	}
+	
+	private static void collectTREResult(TREThread finished, RealVector treVector, RealVector treXYVector, boolean[] successful, TREResultStore store) {
+		
+		int index = finished.getRemoveIndex();
+		
+		treVector.setEntry(index, finished.getTre());
+		treXYVector.setEntry(index, finished.getTreXY());
+		successful[index] = finished.getSuccess();
+		
+		if (store != null) {
+			store.record(index, finished.getTre(), finished.getTreXY(), finished.getSuccess());
+		}
+		
+	}
+	
+	/**
+	* Gets a description of the settings that affect the correction determined from a set of objects and the TRE calculated from it,
+	* for identifying stored results calculated from the same inputs.  This includes the pixel and section sizes, as the TRE is stored in nm.
+	* 
+	* @param referenceChannel	the index of the reference channel.
+	* @param channelToCorrect	the index of the channel being corrected.
+	* @return					a String describing the settings.
+	*/
+	String getCorrectionSettingsDescription(int referenceChannel, int channelToCorrect) {
+		
+		String description = NUM_POINT_PARAM + "=" + this.parameters.getIntValueForKey(NUM_POINT_PARAM) + ";" + REF_CH_PARAM + "=" + referenceChannel + ";" + CORR_CH_PARAM + "=" + channelToCorrect;
+		
+		description += ";" + PIXELSIZE_PARAM + "=" + this.pixelToDistanceConversions.getEntry(0) + ";" + SECTIONSIZE_PARAM + "=" + this.pixelToDistanceConversions.getEntry(2);
+		
+		if (this.parameters.hasKeyAndTrue(HIERARCHICAL_CORR_PARAM)) {
+			description += ";" + HIERARCHICAL_CORR_PARAM;
+			if (this.parameters.hasKey(GLOBAL_ORDER_PARAM)) description += ";" + GLOBAL_ORDER_PARAM + "=" + this.parameters.getIntValueForKey(GLOBAL_ORDER_PARAM);
+			if (this.parameters.hasKey(LOCAL_STRIDE_PARAM)) description += ";" + LOCAL_STRIDE_PARAM + "=" + this.parameters.getIntValueForKey(LOCAL_STRIDE_PARAM);
+		}
+		
+		return description;
+		
+	}
 
     private static class TREThread extends Thread {
 
@@ -588,6 +1407,9 @@ public class PositionCorrector {
         }
 
         public void run() {
+        	
+        	TREFoldEvent event = new TREFoldEvent();
+        	event.begin();
 
             java.util.List<ImageObject> tempObjects = new java.util.ArrayList<ImageObject>();
 
@@ -609,6 +1431,7 @@ public class PositionCorrector {
             	this.success = false;
             	this.tre = -1.0*Double.MAX_VALUE;
             	this.treXY = -1.0*Double.MAX_VALUE;
+            	event.commit(removeIndex, 1, 1);
             	return;
             }
 
@@ -617,6 +1440,8 @@ public class PositionCorrector {
             this.tre = treVecRealUnits.getNorm();
 
             this.treXY = Math.sqrt(Math.pow(treVecRealUnits.getEntry(0),2) + Math.pow(treVecRealUnits.getEntry(1),2));
+            
+            event.commit(removeIndex, 1, 0);
 
 
         }
@@ -0,0 +1,306 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.correction;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+
+/**
+ * Stores the per-object results of a leave-one-out target registration error calculation on disk as they are calculated.
+ * <p>
+ * The stored results are keyed by a hash of the data and settings that determine them (the object positions and channel differences,
+ * the number of points used for each local fit, and so on), so that an interrupted calculation can be resumed, and a repeated
+ * calculation with the same inputs can reuse the stored values rather than recalculating them.  If the key of an existing file
+ * does not match, the file is discarded and the results are calculated again.
+ * <p>
+ * The file is plain text: a header line containing the key, followed by one line per object containing the object's index,
+ * its TRE, its x-y TRE, and whether the calculation succeeded.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class TREResultStore {
+	
+	protected static final String KEY_PREFIX = "key ";
+	
+	/**
+	 * The version of the inputs hashed into a key; this is changed whenever they change so that results stored under older keys are not reused.
+	 */
+	protected static final int KEY_FORMAT_VERSION = 2;
+	
+	private String filename;
+	private String key;
+	
+	private double[] tre;
+	private double[] treXY;
+	private boolean[] success;
+	private boolean[] present;
+	private int numberPresent;
+	
+	private PrintWriter output;
+	
+	/**
+	 * Constructs a new TREResultStore backed by the specified file.
+	 * 
+	 * @param filename			the name of the file in which results are stored.
+	 * @param key				the key identifying the inputs to the calculation, as from {@link #computeKey}.
+	 * @param numberOfObjects	the number of objects for which results will be stored.
+	 */
+	public TREResultStore(String filename, String key, int numberOfObjects) {
+		this.filename = filename;
+		this.key = key;
+		this.tre = new double[numberOfObjects];
+		this.treXY = new double[numberOfObjects];
+		this.success = new boolean[numberOfObjects];
+		this.present = new boolean[numberOfObjects];
+		this.numberPresent = 0;
+		this.output = null;
+	}
+	
+	/**
+	 * Calculates a key identifying the inputs to a TRE calculation.
+	 * 
+	 * @param positions		a RealMatrix containing the reference channel position of each object, one per row.
+	 * @param differences	a RealMatrix containing the vector difference between channels of each object, one per row.
+	 * @param settings		a String containing any settings that change the correction determined from the objects (e.g. the number of points used for each local fit).
+	 * @return				a hexadecimal String containing a hash of the inputs.
+	 */
+	public static String computeKey(RealMatrix positions, RealMatrix differences, String settings) {
+		
+		try {
+			
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			
+			DataOutputStream dos = new DataOutputStream(new DigestOutputStream(new java.io.ByteArrayOutputStream(), md));
+			
+			dos.writeInt(KEY_FORMAT_VERSION);
+			dos.writeUTF(settings);
+			dos.writeInt(positions.getRowDimension());
+			
+			for (int i = 0; i < positions.getRowDimension(); i++) {
+				for (int j = 0; j < positions.getColumnDimension(); j++) {
+					dos.writeDouble(positions.getEntry(i, j));
+				}
+				for (int j = 0; j < differences.getColumnDimension(); j++) {
+					dos.writeDouble(differences.getEntry(i, j));
+				}
+			}
+			
+			dos.close();
+			
+			return (new HexBinaryAdapter()).marshal(md.digest());
+			
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 digest unavailable: " + e.getMessage());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to hash TRE inputs: " + e.getMessage());
+		}
+		
+	}
+	
+	/**
+	 * Reads any results previously stored for the same key and opens the file for storing new results.
+	 * <p>
+	 * If the file does not exist, or its key does not match, it is replaced by an empty store.  A partially written final line left by
+	 * an interrupted run is removed before the file is read, so that new results are not appended to it.
+	 * 
+	 * @throws IOException	if the file cannot be read or written.
+	 */
+	public synchronized void open() throws IOException {
+		
+		File f = new File(this.filename);
+		
+		boolean keyMatches = false;
+		
+		if (f.exists()) {
+			
+			truncateToLastCompleteLine(f);
+			
+			BufferedReader br = new BufferedReader(new FileReader(f));
+			
+			try {
+				
+				String line = br.readLine();
+				
+				keyMatches = line != null && line.equals(KEY_PREFIX + this.key);
+				
+				while (keyMatches && (line = br.readLine()) != null) {
+					
+					String[] fields = line.trim().split("\\s+");
+					
+					//skip malformed lines
+					if (fields.length != 4) continue;
+					
+					try {
+						int index = Integer.parseInt(fields[0]);
+						if (index < 0 || index >= this.present.length) continue;
+						this.setResult(index, Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Boolean.parseBoolean(fields[3]));
+					} catch (NumberFormatException e) {
+						continue;
+					}
+					
+				}
+				
+			} finally {
+				br.close();
+			}
+			
+		}
+		
+		if (keyMatches) {
+			this.output = new PrintWriter(new FileWriter(f, true));
+		} else {
+			this.output = new PrintWriter(new FileWriter(f, false));
+			this.output.println(KEY_PREFIX + this.key);
+			this.output.flush();
+		}
+		
+	}
+	
+	/**
+	 * Removes any characters after the last newline in a file, such as a line left partially written when a run was interrupted.
+	 * 
+	 * @param f				the File to truncate.
+	 * @throws IOException	if the file cannot be read or written.
+	 */
+	static void truncateToLastCompleteLine(File f) throws IOException {
+		
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		
+		try {
+			
+			long completeLength = raf.length();
+			
+			while (completeLength > 0) {
+				raf.seek(completeLength - 1);
+				if (raf.read() == '\n') break;
+				completeLength--;
+			}
+			
+			if (completeLength < raf.length()) {
+				raf.setLength(completeLength);
+			}
+			
+		} finally {
+			raf.close();
+		}
+		
+	}
+	
+	private void setResult(int index, double tre, double treXY, boolean success) {
+		if (! this.present[index]) this.numberPresent++;
+		this.tre[index] = tre;
+		this.treXY[index] = treXY;
+		this.success[index] = success;
+		this.present[index] = true;
+	}
+	
+	/**
+	 * Stores the result for a single object, writing it to disk immediately.
+	 * 
+	 * @param index		the index of the object.
+	 * @param tre		the TRE at the object.
+	 * @param treXY		the x-y TRE at the object.
+	 * @param success	whether the TRE could be calculated (false if the object was not covered by the correction determined without it).
+	 */
+	public synchronized void record(int index, double tre, double treXY, boolean success) {
+		
+		this.setResult(index, tre, treXY, success);
+		
+		if (this.output != null) {
+			this.output.println(index + " " + tre + " " + treXY + " " + success);
+			this.output.flush();
+		}
+		
+	}
+	
+	/**
+	 * Checks whether a result is stored for an object.
+	 * @param index	the index of the object.
+	 * @return		true if a result is stored, false otherwise.
+	 */
+	public synchronized boolean hasResult(int index) {
+		return this.present[index];
+	}
+	
+	/**
+	 * Gets the number of objects for which a result is stored.
+	 * @return	the number of stored results.
+	 */
+	public synchronized int getNumberOfResults() {
+		return this.numberPresent;
+	}
+	
+	/**
+	 * Gets the stored TRE at an object.
+	 * @param index	the index of the object.
+	 * @return		the stored TRE.
+	 */
+	public synchronized double getTre(int index) {
+		return this.tre[index];
+	}
+	
+	/**
+	 * Gets the stored x-y TRE at an object.
+	 * @param index	the index of the object.
+	 * @return		the stored x-y TRE.
+	 */
+	public synchronized double getTreXY(int index) {
+		return this.treXY[index];
+	}
+	
+	/**
+	 * Gets whether the TRE could be calculated at an object.
+	 * @param index	the index of the object.
+	 * @return		the stored success flag.
+	 */
+	public synchronized boolean getSuccess(int index) {
+		return this.success[index];
+	}
+	
+	/**
+	 * Closes the file backing the store.
+	 */
+	public synchronized void close() {
+		if (this.output != null) {
+			this.output.close();
+			this.output = null;
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Holds the result of a bootstrap of a distribution fit: the fit to the original observations, the fit to each resampled replicate,
+ * and percentile confidence intervals for each parameter calculated from the replicates.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class BootstrapResult {
+	
+	private RealVector fitParameters;
+	private double[][] replicateParameters;
+	private double confidenceLevel;
+	private int failedReplicates;
+	
+	private RealVector lowerBounds;
+	private RealVector upperBounds;
+	
+	/**
+	 * Constructs a new result and calculates the percentile intervals.
+	 * 
+	 * @param fitParameters			the parameters fit to the original observations.
+	 * @param replicateParameters	the parameters fit to each replicate, one row per replicate; rows for replicates whose fit failed 
+	 * 								should contain NaN and are excluded from the intervals.
+	 * @param confidenceLevel		the confidence level of the intervals (e.g. 0.95).
+	 */
+	public BootstrapResult(RealVector fitParameters, double[][] replicateParameters, double confidenceLevel) {
+		
+		this.fitParameters = fitParameters;
+		this.replicateParameters = replicateParameters;
+		this.confidenceLevel = confidenceLevel;
+		
+		int numberOfParameters = fitParameters.getDimension();
+		
+		this.lowerBounds = new ArrayRealVector(numberOfParameters, Double.NaN);
+		this.upperBounds = new ArrayRealVector(numberOfParameters, Double.NaN);
+		
+		boolean[] failed = new boolean[replicateParameters.length];
+		
+		for (int b = 0; b < replicateParameters.length; b++) {
+			for (int p = 0; p < numberOfParameters; p++) {
+				if (Double.isNaN(replicateParameters[b][p]) || Double.isInfinite(replicateParameters[b][p])) {
+					failed[b] = true;
+				}
+			}
+			if (failed[b]) this.failedReplicates++;
+		}
+		
+		int successfulReplicates = replicateParameters.length - this.failedReplicates;
+		
+		if (successfulReplicates == 0) return;
+		
+		double[] values = new double[successfulReplicates];
+		
+		for (int p = 0; p < numberOfParameters; p++) {
+			
+			int count = 0;
+			
+			for (int b = 0; b < replicateParameters.length; b++) {
+				if (!failed[b]) values[count++] = replicateParameters[b][p];
+			}
+			
+			java.util.Arrays.sort(values);
+			
+			double alpha = 1.0 - confidenceLevel;
+			
+			this.lowerBounds.setEntry(p, percentile(values, alpha/2));
+			this.upperBounds.setEntry(p, percentile(values, 1.0 - alpha/2));
+			
+		}
+		
+	}
+	
+	/**
+	 * Calculates a percentile of a sorted array by linear interpolation between the nearest entries.
+	 * 
+	 * @param sorted	an array of values sorted in increasing order.
+	 * @param fraction	the fraction (between 0 and 1) of values that should lie below the percentile.
+	 * @return			the percentile.
+	 */
+	static double percentile(double[] sorted, double fraction) {
+		
+		double position = fraction*(sorted.length - 1);
+		
+		int lower = (int) Math.floor(position);
+		int upper = Math.min(lower + 1, sorted.length - 1);
+		
+		double f = position - lower;
+		
+		return (1-f)*sorted[lower] + f*sorted[upper];
+		
+	}
+	
+	/**
+	 * Gets the parameters fit to the original observations.
+	 * @return	a RealVector containing the fit parameters, in the order returned by the DistributionFitter.
+	 */
+	public RealVector getFitParameters() {
+		return this.fitParameters;
+	}
+	
+	/**
+	 * Gets the lower ends of the percentile confidence intervals.
+	 * @return	a RealVector containing the lower bound for each parameter, or NaN if every replicate failed.
+	 */
+	public RealVector getLowerBounds() {
+		return this.lowerBounds;
+	}
+	
+	/**
+	 * Gets the upper ends of the percentile confidence intervals.
+	 * @return	a RealVector containing the upper bound for each parameter, or NaN if every replicate failed.
+	 */
+	public RealVector getUpperBounds() {
+		return this.upperBounds;
+	}
+	
+	/**
+	 * Gets the confidence level of the intervals.
+	 * @return	the confidence level.
+	 */
+	public double getConfidenceLevel() {
+		return this.confidenceLevel;
+	}
+	
+	/**
+	 * Gets the number of bootstrap replicates.
+	 * @return	the number of replicates, including any that failed.
+	 */
+	public int getNumberOfReplicates() {
+		return this.replicateParameters.length;
+	}
+	
+	/**
+	 * Gets the number of replicates whose fit failed to produce finite parameters.
+	 * @return	the number of failed replicates.
+	 */
+	public int getNumberOfFailedReplicates() {
+		return this.failedReplicates;
+	}
+	
+	/**
+	 * Gets the parameters fit to a single replicate.
+	 * @param replicate		the index of the replicate.
+	 * @return				a RealVector containing the parameters fit to the replicate (NaN if the fit failed).
+	 */
+	public RealVector getReplicateParameters(int replicate) {
+		return new ArrayRealVector(this.replicateParameters[replicate]);
+	}
+	
+	/**
+	 * Gets a formatted string representation of the fit and intervals.
+	 * @return a String containing the fit parameters followed by one line per parameter with its interval.
+	 */
+	public String toString() {
+		String result = "Bootstrap (" + this.getNumberOfReplicates() + " replicates, " + this.failedReplicates + " failed), " + this.confidenceLevel + " percentile intervals:\n";
+		for (int p = 0; p < this.fitParameters.getDimension(); p++) {
+			result += "Parameter " + p + ": " + this.fitParameters.getEntry(p) + " [" + this.lowerBounds.getEntry(p) + ", " + this.upperBounds.getEntry(p) + "]\n";
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,70 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+/**
+ * Holds a set of distances along with per-distance terms and moments that are needed by the likelihood of every distribution model,
+ * so that they are calculated once when several models are fit to the same distances.
+ * <p>
+ * The arrays are shared, not copied, by the objective functions that use them, and must not be modified after construction.
+ */
+class DistanceTerms {
+	
+	final double[] r;
+	final double[] logR;
+	final int n;
+	
+	final double sumLogR;
+	final double sumR2;
+	final double maxR;
+	
+	/**
+	 * Calculates the terms for a set of distances.
+	 * @param r	an array containing the distances; this is copied.
+	 */
+	DistanceTerms(double[] r) {
+		
+		this.n = r.length;
+		this.r = java.util.Arrays.copyOf(r, r.length);
+		this.logR = new double[this.n];
+		
+		double sumLog = 0;
+		double sumSquares = 0;
+		double max = 0;
+		
+		for (int i = 0; i < this.n; i++) {
+			this.logR[i] = Math.log(this.r[i]);
+			sumLog += this.logR[i];
+			sumSquares += this.r[i]*this.r[i];
+			max = Math.max(max, this.r[i]);
+		}
+		
+		this.sumLogR = sumLog;
+		this.sumR2 = sumSquares;
+		this.maxR = max;
+		
+	}
+
+}
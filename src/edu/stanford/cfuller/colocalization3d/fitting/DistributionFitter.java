@@ -25,11 +25,15 @@
 package edu.stanford.cfuller.colocalization3d.fitting;
 
 
+import edu.stanford.cfuller.colocalization3d.ConcurrencyUtils;
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
 import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
 
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
+import java.util.List;
+
 /**
 * Fits a set of scalar observations to some probability distribution.  
 * Subclasses handle particular distributions.
@@ -37,8 +41,27 @@ import org.apache.commons.math3.linear.RealVector;
 */
 public abstract class DistributionFitter {
 	
+	static final int BOOTSTRAP_REPLICATES_PER_TASK = 4;
+	
 	ParameterDictionary parameters;
 	
+	/**
+	 * Fits bootstrap replicates or subsets of a fixed set of observations, each specified by the indices of the observations it contains.
+	 * <p>
+	 * Each worker thread of a bootstrap or grouped fit uses its own ReplicateFitter, so implementations may hold state (buffers, objective functions)
+	 * that is reused from one replicate to the next without synchronization.
+	 */
+	protected interface ReplicateFitter {
+		
+		/**
+		 * Fits a single replicate.
+		 * @param sample	the indices of the original observations making up the replicate (possibly with repetition).
+		 * @return			a RealVector containing the parameters fit to the replicate.
+		 */
+		public RealVector fitReplicate(int[] sample);
+		
+	}
+	
 	/**
 	* Constructs a new DistributionFitter
 	* @param p a ParameterDictionary containing any parameters required for the fitting (specific parameters are specified by subclasses).
@@ -57,4 +80,275 @@ public abstract class DistributionFitter {
 	 */
 	public abstract RealVector fit(java.util.List<ImageObject> objects, RealVector diffs);
 	
-}
+	/**
+	 * Fits the distances between the two channels of a set of objects to a distribution, and estimates confidence intervals for the
+	 * parameters by refitting replicates resampled with replacement from the distances.
+	 * <p>
+	 * The replicates are fit in parallel on a fork-join pool using up to the number of threads specified by the optional parameter "max_threads"
+	 * (see {@link ConcurrencyUtils#getMaxThreads}).  Each replicate is drawn using its own seed, derived from the supplied seed and the 
+	 * index of the replicate, so the result does not depend on the number of threads or the order in which replicates are fit.
+	 * 
+	 * @param objects			the ImageObjects whose distances will be fit.
+	 * @param diffs				a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * @param replicates		the number of bootstrap replicates.
+	 * @param seed				the seed from which the seed of each replicate is derived.
+	 * @param confidenceLevel	the confidence level of the percentile intervals (e.g. 0.95).
+	 * @return					a BootstrapResult containing the fit to the original distances and the percentile intervals.
+	 */
+	public BootstrapResult bootstrap(final List<ImageObject> objects, RealVector diffs, int replicates, long seed, double confidenceLevel) {
+		
+		RealVector fitParameters = this.fit(objects, diffs);
+		
+		int numberOfParameters = fitParameters.getDimension();
+		
+		final double[] originalDiffs = diffs.toArray();
+		
+		double[][] replicateParameters = new double[replicates][];
+		
+		final ThreadLocal<ReplicateFitter> fitters = new ThreadLocal<ReplicateFitter>() {
+			@Override
+			protected ReplicateFitter initialValue() {
+				return createReplicateFitter(objects, originalDiffs);
+			}
+		};
+		
+		int parallelism = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(Math.max(1, parallelism));
+		
+		pool.invoke(new BootstrapTask(fitters, seed, originalDiffs.length, numberOfParameters, replicateParameters, 0, replicates));
+		
+		pool.shutdown();
+		
+		return new BootstrapResult(fitParameters, replicateParameters, confidenceLevel);
+		
+	}
+	
+	/**
+	 * Fits the distribution to a set of precalculated distance terms shared with other models, for comparison of the models by 
+	 * information criteria (see {@link DistributionModelRegistry}).
+	 * <p>
+	 * The fit uses the plain likelihood of the model, without any robust cutoff or trimming, so that likelihoods are comparable between models.
+	 * 
+	 * @param name		the name under which the model is being compared.
+	 * @param terms		the DistanceTerms containing the distances.
+	 * @return			a ModelFit containing the fit parameters and the negative log-likelihood.
+	 */
+	abstract ModelFit fitTerms(String name, DistanceTerms terms);
+	
+	/**
+	 * Fits the distances between the two channels of a set of objects separately for each group of objects sharing a key (for example, 
+	 * the objects from the same image, cell, or condition).
+	 * <p>
+	 * The groups are fit in parallel, using up to the number of threads specified by the optional parameter "max_threads" (see
+	 * {@link ConcurrencyUtils#getMaxThreads}), with one {@link ReplicateFitter} per thread, created by {@link #createGroupFitter(List, double[])}.
+	 * 
+	 * @param objects			the ImageObjects whose distances will be fit.
+	 * @param diffs				a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * @param keys				the key of the group to which each ImageObject belongs, in the same order.
+	 * @param minimumCount		the smallest number of objects in a group for it to be fit.
+	 * @return					a GroupedFitResult containing the number of objects and fit parameters for each group, in order of first appearance.
+	 */
+	public GroupedFitResult fitGroups(final List<ImageObject> objects, RealVector diffs, List<String> keys, int minimumCount) {
+		
+		java.util.Map<String, java.util.List<Integer>> groups = new java.util.LinkedHashMap<String, java.util.List<Integer>>();
+		
+		for (int i = 0; i < keys.size(); i++) {
+			
+			if (! groups.containsKey(keys.get(i))) {
+				groups.put(keys.get(i), new java.util.ArrayList<Integer>());
+			}
+			
+			groups.get(keys.get(i)).add(i);
+			
+		}
+		
+		final double[] originalDiffs = diffs.toArray();
+		
+		final ThreadLocal<ReplicateFitter> fitters = new ThreadLocal<ReplicateFitter>() {
+			@Override
+			protected ReplicateFitter initialValue() {
+				return createGroupFitter(objects, originalDiffs);
+			}
+		};
+		
+		final java.util.List<String> groupKeys = new java.util.ArrayList<String>(groups.keySet());
+		
+		int[] counts = new int[groupKeys.size()];
+		final double[][] parameters = new double[groupKeys.size()][];
+		
+		int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
+		
+		for (int g = 0; g < groupKeys.size(); g++) {
+			
+			java.util.List<Integer> members = groups.get(groupKeys.get(g));
+			
+			counts[g] = members.size();
+			
+			if (members.size() < minimumCount) continue;
+			
+			final int group = g;
+			final int[] sample = new int[members.size()];
+			
+			for (int i = 0; i < sample.length; i++) {
+				sample[i] = members.get(i);
+			}
+			
+			tasks.add(new Runnable() {
+				public void run() {
+					
+					try {
+						parameters[group] = fitters.get().fitReplicate(sample).toArray();
+					} catch (RuntimeException e) {
+						java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("Fit failed for group " + groupKeys.get(group) + ": " + e.getMessage());
+					}
+					
+				}
+			});
+			
+		}
+		
+		ConcurrencyUtils.runConcurrently(tasks, maxThreads, "grouped distribution fit");
+		
+		return new GroupedFitResult(groupKeys, counts, parameters);
+		
+	}
+	
+	/**
+	 * Creates a ReplicateFitter for fitting groups of a set of observations separately (see {@link #fitGroups(List, RealVector, List, int)}).
+	 * <p>
+	 * Each group should be fit the same way as {@link #fit(List, RealVector)} fits all the observations, so that the per-group parameters are
+	 * comparable with the pooled ones.  The default implementation returns {@link #createReplicateFitter(List, double[])}; subclasses whose 
+	 * fit has stages that replicate fits skip should override this.
+	 * 
+	 * @param objects	the ImageObjects whose distances are being grouped.
+	 * @param diffs		the distances between the channels of the ImageObjects, in the same order; this should not be modified.
+	 * @return			a new ReplicateFitter, which will be used by a single thread.
+	 */
+	protected ReplicateFitter createGroupFitter(List<ImageObject> objects, double[] diffs) {
+		return this.createReplicateFitter(objects, diffs);
+	}
+	
+	/**
+	 * Creates a ReplicateFitter for fitting bootstrap replicates or subsets of a set of observations.
+	 * <p>
+	 * The default implementation assembles the resampled objects and distances and calls {@link #fit(List, RealVector)};
+	 * subclasses may override this to reuse state between replicates.
+	 * 
+	 * @param objects	the ImageObjects whose distances are being resampled.
+	 * @param diffs		the distances between the channels of the ImageObjects, in the same order; this should not be modified.
+	 * @return			a new ReplicateFitter, which will be used by a single thread.
+	 */
+	protected ReplicateFitter createReplicateFitter(final List<ImageObject> objects, final double[] diffs) {
+		
+		return new ReplicateFitter() {
+			public RealVector fitReplicate(int[] sample) {
+				
+				List<ImageObject> resampledObjects = new java.util.ArrayList<ImageObject>(sample.length);
+				RealVector resampledDiffs = new ArrayRealVector(sample.length);
+				
+				for (int i = 0; i < sample.length; i++) {
+					resampledObjects.add(objects.get(sample[i]));
+					resampledDiffs.setEntry(i, diffs[sample[i]]);
+				}
+				
+				return fit(resampledObjects, resampledDiffs);
+				
+			}
+		};
+		
+	}
+	
+	/**
+	 * Derives the seed for a single bootstrap replicate, mixing the bits of the replicate index so that nearby replicates get unrelated seeds.
+	 * 
+	 * @param seed			the seed for the whole bootstrap.
+	 * @param replicate		the index of the replicate.
+	 * @return				the seed for the replicate.
+	 */
+	static long replicateSeed(long seed, int replicate) {
+		
+		long z = seed + (replicate + 1)*0x9E3779B97F4A7C15L;
+		
+		z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+		
+		return z ^ (z >>> 31);
+		
+	}
+	
+	/**
+	 * Fits a range of bootstrap replicates, splitting it into fork-join tasks of a few replicates each.
+	 */
+	private static class BootstrapTask extends java.util.concurrent.RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ThreadLocal<ReplicateFitter> fitters;
+		private final long seed;
+		private final int numberOfObservations;
+		private final int numberOfParameters;
+		private final double[][] replicateParameters;
+		private final int start;
+		private final int end;
+		
+		BootstrapTask(ThreadLocal<ReplicateFitter> fitters, long seed, int numberOfObservations, int numberOfParameters, double[][] replicateParameters, int start, int end) {
+			this.fitters = fitters;
+			this.seed = seed;
+			this.numberOfObservations = numberOfObservations;
+			this.numberOfParameters = numberOfParameters;
+			this.replicateParameters = replicateParameters;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (this.end - this.start > BOOTSTRAP_REPLICATES_PER_TASK) {
+				
+				int middle = (this.start + this.end) >>> 1;
+				
+				invokeAll(new BootstrapTask(this.fitters, this.seed, this.numberOfObservations, this.numberOfParameters, this.replicateParameters, this.start, middle),
+						new BootstrapTask(this.fitters, this.seed, this.numberOfObservations, this.numberOfParameters, this.replicateParameters, middle, this.end));
+				
+				return;
+				
+			}
+			
+			ReplicateFitter fitter = this.fitters.get();
+			
+			int[] sample = new int[this.numberOfObservations];
+			
+			for (int b = this.start; b < this.end; b++) {
+				
+				java.util.Random random = new java.util.Random(replicateSeed(this.seed, b));
+				
+				for (int i = 0; i < sample.length; i++) {
+					sample[i] = random.nextInt(sample.length);
+				}
+				
+				double[] result = null;
+				
+				try {
+					result = fitter.fitReplicate(sample).toArray();
+				} catch (RuntimeException e) {
+					java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("Bootstrap replicate " + b + " failed: " + e.getMessage());
+				}
+				
+				if (result == null || result.length != this.numberOfParameters) {
+					result = new double[this.numberOfParameters];
+					java.util.Arrays.fill(result, Double.NaN);
+				}
+				
+				this.replicateParameters[b] = result;
+				
+			}
+			
+		}
+		
+	}
+	
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.colocalization3d.ConcurrencyUtils;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.List;
+
+/**
+ * Holds a set of candidate distribution models and fits all of them to the same distances, for selection by information criteria.
+ * <p>
+ * The per-distance terms needed by every model (the distances, their logarithms, and their sums) are calculated once and shared by all the fits,
+ * and the models are fit concurrently, using up to the number of threads specified by the optional parameter "max_threads" (see
+ * {@link ConcurrencyUtils#getMaxThreads}).
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class DistributionModelRegistry {
+	
+	private ParameterDictionary parameters;
+	private List<String> names;
+	private List<DistributionFitter> fitters;
+	
+	/**
+	 * Constructs a new, empty registry.
+	 * @param p	a ParameterDictionary containing the parameters for the analysis.
+	 */
+	public DistributionModelRegistry(ParameterDictionary p) {
+		this.parameters = p;
+		this.names = new java.util.ArrayList<String>();
+		this.fitters = new java.util.ArrayList<DistributionFitter>();
+	}
+	
+	/**
+	 * Constructs a registry containing the standard models: the p3d distribution, a mixture of the p3d distribution and a uniform background,
+	 * and the Maxwell distribution expected if the true separation is zero.
+	 * 
+	 * @param p	a ParameterDictionary containing the parameters for the analysis.
+	 * @return	a new DistributionModelRegistry containing the standard models.
+	 */
+	public static DistributionModelRegistry createDefault(ParameterDictionary p) {
+		
+		DistributionModelRegistry registry = new DistributionModelRegistry(p);
+		
+		registry.register("p3d", new P3DFitter(p));
+		registry.register("p3d_uniform_mixture", new P3DMixtureFitter(p));
+		registry.register("maxwell_null", new MaxwellFitter(p));
+		
+		return registry;
+		
+	}
+	
+	/**
+	 * Adds a model to the registry.
+	 * 
+	 * @param name		the name under which the model will be reported.
+	 * @param fitter	the DistributionFitter for the model.
+	 */
+	public void register(String name, DistributionFitter fitter) {
+		this.names.add(name);
+		this.fitters.add(fitter);
+	}
+	
+	/**
+	 * Gets the names of the registered models.
+	 * @return	a List containing the name of each model, in the order registered.
+	 */
+	public List<String> getModelNames() {
+		return java.util.Collections.unmodifiableList(this.names);
+	}
+	
+	/**
+	 * Fits every registered model to a set of distances.
+	 * 
+	 * @param diffs		a RealVector containing the distances.
+	 * @return			a ModelComparison containing the fit of each model; models whose fit failed are omitted.
+	 */
+	public ModelComparison compareModels(RealVector diffs) {
+		
+		final DistanceTerms terms = new DistanceTerms(diffs.toArray());
+		
+		final ModelFit[] fits = new ModelFit[this.fitters.size()];
+		
+		int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
+		
+		for (int i = 0; i < fits.length; i++) {
+			
+			final int model = i;
+			final String name = this.names.get(i);
+			final DistributionFitter fitter = this.fitters.get(i);
+			
+			tasks.add(new Runnable() {
+				public void run() {
+					
+					try {
+						fits[model] = fitter.fitTerms(name, terms);
+					} catch (RuntimeException e) {
+						java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("Unable to fit model " + name + ": " + e.getMessage());
+					}
+					
+				}
+			});
+			
+		}
+		
+		ConcurrencyUtils.runConcurrently(tasks, maxThreads, "model comparison");
+		
+		return new ModelComparison(java.util.Arrays.asList(fits));
+		
+	}
+
+}
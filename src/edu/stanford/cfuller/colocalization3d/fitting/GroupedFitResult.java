@@ -0,0 +1,136 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.List;
+
+/**
+ * Holds the result of fitting a distribution separately to groups of objects (for example, the objects from each image or condition):
+ * the key, number of objects, and fit parameters for each group.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class GroupedFitResult {
+	
+	private List<String> keys;
+	private int[] counts;
+	private double[][] parameters;
+	
+	/**
+	 * Constructs a new result.
+	 * 
+	 * @param keys			the key identifying each group, in the order the groups were first encountered.
+	 * @param counts		the number of objects in each group.
+	 * @param parameters	the parameters fit to each group; null for groups that were too small to fit or whose fit failed.
+	 */
+	public GroupedFitResult(List<String> keys, int[] counts, double[][] parameters) {
+		this.keys = keys;
+		this.counts = counts;
+		this.parameters = parameters;
+	}
+	
+	/**
+	 * Gets the number of groups.
+	 * @return	the number of groups.
+	 */
+	public int getNumberOfGroups() {
+		return this.keys.size();
+	}
+	
+	/**
+	 * Gets the key identifying a group.
+	 * @param group	the index of the group.
+	 * @return		the key.
+	 */
+	public String getKey(int group) {
+		return this.keys.get(group);
+	}
+	
+	/**
+	 * Gets the number of objects in a group.
+	 * @param group	the index of the group.
+	 * @return		the number of objects.
+	 */
+	public int getCount(int group) {
+		return this.counts[group];
+	}
+	
+	/**
+	 * Gets the parameters fit to a group.
+	 * @param group	the index of the group.
+	 * @return		a RealVector containing the fit parameters, or null if the group was not fit.
+	 */
+	public RealVector getParameters(int group) {
+		if (this.parameters[group] == null) return null;
+		return new ArrayRealVector(this.parameters[group]);
+	}
+	
+	/**
+	 * Gets a tab-delimited table of the results, with a header line followed by one line per group containing its key, 
+	 * number of objects, and fit parameters (NaN for groups that were not fit).
+	 * @return	a String containing the table.
+	 */
+	public String toString() {
+		
+		int numberOfParameters = 0;
+		
+		for (double[] p : this.parameters) {
+			if (p != null) numberOfParameters = Math.max(numberOfParameters, p.length);
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("group\tcount");
+		
+		for (int p = 0; p < numberOfParameters; p++) {
+			sb.append("\tparameter_" + p);
+		}
+		
+		sb.append("\n");
+		
+		for (int g = 0; g < this.getNumberOfGroups(); g++) {
+			
+			sb.append(this.keys.get(g));
+			sb.append("\t");
+			sb.append(this.counts[g]);
+			
+			for (int p = 0; p < numberOfParameters; p++) {
+				sb.append("\t");
+				sb.append(this.parameters[g] == null ? Double.NaN : this.parameters[g][p]);
+			}
+			
+			sb.append("\n");
+			
+		}
+		
+		return sb.toString();
+		
+	}
+
+}
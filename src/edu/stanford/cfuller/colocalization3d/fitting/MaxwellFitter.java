@@ -0,0 +1,80 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.List;
+
+/**
+* A DistributionFitter that fits scalar observations to a Maxwell distribution, the three-dimensional analogue of the Rayleigh distribution:
+* <pre>
+* p(r; s) = sqrt(2/pi) r^2/s^3 exp(-r^2/(2s^2))
+* </pre>
+* This is the distribution of separations when the true separation is zero (the limit of the P3D distribution as its mean goes to zero), so it
+* serves as the null model when testing for a nonzero separation.  The maximum likelihood width has the closed form s^2 = sum(r^2)/(3n).
+* @author Colin J. Fuller
+*/
+public class MaxwellFitter extends DistributionFitter {
+	
+	public MaxwellFitter(ParameterDictionary p) {
+		super(p);
+	}
+	
+	/**
+	 * Fits the distances between the two channels of a set of objects to a Maxwell distribution.
+	 * 
+	 * @param objects the ImageObjects whose distances will be fit
+	 * @param diffs a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * 
+	 * @return a RealVector containing the single parameter for the distribution fit: the standard deviation parameter
+	 */
+	public RealVector fit(List<ImageObject> objects, RealVector diffs) {
+		return this.fitTerms("maxwell_null", new DistanceTerms(diffs.toArray())).getParameters();
+	}
+	
+	/**
+	 * Fits the Maxwell distribution to a set of precalculated distance terms, using only their precalculated sums.
+	 * 
+	 * @param name		the name under which the model is being compared.
+	 * @param terms		the DistanceTerms containing the distances.
+	 * @return			a ModelFit containing the width parameter and the negative log-likelihood.
+	 */
+	@Override
+	ModelFit fitTerms(String name, DistanceTerms terms) {
+		
+		double s2 = terms.sumR2/(3*terms.n);
+		
+		double negLogL = -1.0*(terms.n*(P3dObjectiveFunction.LOG_SQRT_2_OVER_PI - 1.5*Math.log(s2)) + 2*terms.sumLogR - terms.sumR2/(2*s2));
+		
+		return new ModelFit(name, new ArrayRealVector(1, Math.sqrt(s2)), negLogL, 1, terms.n);
+		
+	}
+	
+}
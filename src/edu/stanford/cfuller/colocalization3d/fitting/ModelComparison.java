@@ -0,0 +1,111 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import java.util.List;
+
+/**
+ * Holds the fits of several distribution models to the same set of distances and ranks them by information criteria.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class ModelComparison {
+	
+	private List<ModelFit> fits;
+	
+	/**
+	 * Constructs a new comparison.
+	 * @param fits	the fits of each model, in the order the models were registered; null entries (failed fits) are ignored.
+	 */
+	public ModelComparison(List<ModelFit> fits) {
+		
+		this.fits = new java.util.ArrayList<ModelFit>();
+		
+		for (ModelFit fit : fits) {
+			if (fit != null) this.fits.add(fit);
+		}
+		
+	}
+	
+	/**
+	 * Gets the fits of the models.
+	 * @return	a List containing the fit of each model that was fit successfully.
+	 */
+	public List<ModelFit> getFits() {
+		return this.fits;
+	}
+	
+	/**
+	 * Gets the model fit with the lowest AIC.
+	 * @return	the best fit by AIC, or null if no model was fit.
+	 */
+	public ModelFit getBestByAIC() {
+		ModelFit best = null;
+		for (ModelFit fit : this.fits) {
+			if (best == null || fit.getAIC() < best.getAIC()) best = fit;
+		}
+		return best;
+	}
+	
+	/**
+	 * Gets the model fit with the lowest BIC.
+	 * @return	the best fit by BIC, or null if no model was fit.
+	 */
+	public ModelFit getBestByBIC() {
+		ModelFit best = null;
+		for (ModelFit fit : this.fits) {
+			if (best == null || fit.getBIC() < best.getBIC()) best = fit;
+		}
+		return best;
+	}
+	
+	/**
+	 * Gets a tab-delimited table of the comparison, with a header line followed by one line per model containing its name, number of parameters,
+	 * negative log-likelihood, AIC and BIC with their differences from the best model, and fit parameters.
+	 * @return	a String containing the table.
+	 */
+	public String toString() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("model\tparameters\tneg_log_likelihood\tAIC\tdelta_AIC\tBIC\tdelta_BIC\tfit_parameters\n");
+		
+		if (this.fits.isEmpty()) return sb.toString();
+		
+		double bestAIC = this.getBestByAIC().getAIC();
+		double bestBIC = this.getBestByBIC().getBIC();
+		
+		for (ModelFit fit : this.fits) {
+			sb.append(fit.getName() + "\t" + fit.getNumberOfParameters() + "\t" + fit.getNegLogL() + "\t");
+			sb.append(fit.getAIC() + "\t" + (fit.getAIC() - bestAIC) + "\t" + fit.getBIC() + "\t" + (fit.getBIC() - bestBIC) + "\t");
+			sb.append(java.util.Arrays.toString(fit.getParameters().toArray()) + "\n");
+		}
+		
+		return sb.toString();
+		
+	}
+
+}
@@ -0,0 +1,109 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Holds the maximum likelihood fit of one distribution model to a set of distances, along with the information criteria used to compare it
+ * with fits of other models to the same distances.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class ModelFit {
+	
+	private String name;
+	private RealVector parameters;
+	private double negLogL;
+	private int numberOfParameters;
+	private int numberOfObservations;
+	
+	/**
+	 * Constructs a new model fit.
+	 * 
+	 * @param name					the name of the model.
+	 * @param parameters			the fit parameters.
+	 * @param negLogL				the negative log-likelihood at the fit parameters.
+	 * @param numberOfParameters	the number of free parameters of the model.
+	 * @param numberOfObservations	the number of distances fit.
+	 */
+	public ModelFit(String name, RealVector parameters, double negLogL, int numberOfParameters, int numberOfObservations) {
+		this.name = name;
+		this.parameters = parameters;
+		this.negLogL = negLogL;
+		this.numberOfParameters = numberOfParameters;
+		this.numberOfObservations = numberOfObservations;
+	}
+	
+	/**
+	 * Gets the name of the model.
+	 * @return	the name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Gets the fit parameters.
+	 * @return	a RealVector containing the parameters, in the order returned by the model's DistributionFitter.
+	 */
+	public RealVector getParameters() {
+		return this.parameters;
+	}
+	
+	/**
+	 * Gets the negative log-likelihood at the fit parameters.
+	 * @return	the negative log-likelihood.
+	 */
+	public double getNegLogL() {
+		return this.negLogL;
+	}
+	
+	/**
+	 * Gets the number of free parameters of the model.
+	 * @return	the number of parameters.
+	 */
+	public int getNumberOfParameters() {
+		return this.numberOfParameters;
+	}
+	
+	/**
+	 * Gets the Akaike information criterion, 2k + 2(negative log-likelihood).
+	 * @return	the AIC.
+	 */
+	public double getAIC() {
+		return 2*this.numberOfParameters + 2*this.negLogL;
+	}
+	
+	/**
+	 * Gets the Bayesian information criterion, k log(n) + 2(negative log-likelihood).
+	 * @return	the BIC.
+	 */
+	public double getBIC() {
+		return this.numberOfParameters*Math.log(this.numberOfObservations) + 2*this.negLogL;
+	}
+
+}
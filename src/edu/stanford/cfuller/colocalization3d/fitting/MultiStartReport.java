@@ -0,0 +1,187 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Reports the outcome of a multi-start distribution fit: the starting point, optimum, and negative log-likelihood reached from each start,
+ * which start gave the best optimum, and how many starts agreed with it.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class MultiStartReport {
+	
+	private double[][] startingPoints;
+	private double[][] optima;
+	private double[] negLogL;
+	private double agreementTolerance;
+	
+	private int bestIndex;
+	private int startsAtBest;
+	private int distinctOptima;
+	
+	/**
+	 * Constructs a new report, finding the best optimum and grouping optima that agree to within a relative tolerance.
+	 * 
+	 * @param startingPoints		the starting parameters of each start.
+	 * @param optima				the parameters at the optimum reached from each start.
+	 * @param negLogL				the negative log-likelihood at each optimum.
+	 * @param agreementTolerance	the relative difference in every parameter below which two optima are considered the same.
+	 */
+	public MultiStartReport(double[][] startingPoints, double[][] optima, double[] negLogL, double agreementTolerance) {
+		
+		this.startingPoints = startingPoints;
+		this.optima = optima;
+		this.negLogL = negLogL;
+		this.agreementTolerance = agreementTolerance;
+		
+		this.bestIndex = 0;
+		
+		for (int i = 1; i < negLogL.length; i++) {
+			if (negLogL[i] < negLogL[this.bestIndex]) this.bestIndex = i;
+		}
+		
+		int[] group = new int[optima.length];
+		
+		for (int i = 0; i < optima.length; i++) {
+			
+			group[i] = this.distinctOptima;
+			
+			for (int j = 0; j < i; j++) {
+				if (this.agree(i, j)) {
+					group[i] = group[j];
+					break;
+				}
+			}
+			
+			if (group[i] == this.distinctOptima) this.distinctOptima++;
+			
+		}
+		
+		for (int i = 0; i < optima.length; i++) {
+			if (group[i] == group[this.bestIndex]) this.startsAtBest++;
+		}
+		
+	}
+	
+	private boolean agree(int i, int j) {
+		
+		for (int p = 0; p < this.optima[i].length; p++) {
+			
+			double scale = Math.max(Math.abs(this.optima[i][p]), Math.abs(this.optima[j][p]));
+			
+			if (! (Math.abs(this.optima[i][p] - this.optima[j][p]) <= this.agreementTolerance*scale)) return false;
+			
+		}
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Gets the number of starts.
+	 * @return	the number of starting points.
+	 */
+	public int getNumberOfStarts() {
+		return this.optima.length;
+	}
+	
+	/**
+	 * Gets the index of the start that reached the lowest negative log-likelihood.
+	 * @return	the index of the best start.
+	 */
+	public int getBestIndex() {
+		return this.bestIndex;
+	}
+	
+	/**
+	 * Gets the parameters at the best optimum.
+	 * @return	a RealVector containing the best fit parameters.
+	 */
+	public RealVector getBestParameters() {
+		return new ArrayRealVector(this.optima[this.bestIndex]);
+	}
+	
+	/**
+	 * Gets the number of starts (including the best) whose optimum agrees with the best optimum.
+	 * A small number relative to the number of starts indicates that the likelihood has several competing optima.
+	 * @return	the number of starts that reached the best optimum.
+	 */
+	public int getNumberOfStartsAtBest() {
+		return this.startsAtBest;
+	}
+	
+	/**
+	 * Gets the number of distinct optima reached from all the starts.
+	 * @return	the number of distinct optima.
+	 */
+	public int getNumberOfDistinctOptima() {
+		return this.distinctOptima;
+	}
+	
+	/**
+	 * Gets the starting parameters of a single start.
+	 * @param start	the index of the start.
+	 * @return		a RealVector containing the starting parameters.
+	 */
+	public RealVector getStartingPoint(int start) {
+		return new ArrayRealVector(this.startingPoints[start]);
+	}
+	
+	/**
+	 * Gets the optimum reached from a single start.
+	 * @param start	the index of the start.
+	 * @return		a RealVector containing the parameters at the optimum.
+	 */
+	public RealVector getOptimum(int start) {
+		return new ArrayRealVector(this.optima[start]);
+	}
+	
+	/**
+	 * Gets the negative log-likelihood at the optimum reached from a single start.
+	 * @param start	the index of the start.
+	 * @return		the negative log-likelihood.
+	 */
+	public double getNegLogL(int start) {
+		return this.negLogL[start];
+	}
+	
+	/**
+	 * Gets a formatted string representation of the report.
+	 * @return a String containing one line per start followed by a summary.
+	 */
+	public String toString() {
+		String result = "Multi-start fit (" + this.getNumberOfStarts() + " starts):\n";
+		for (int i = 0; i < this.getNumberOfStarts(); i++) {
+			result += "Start " + i + ": " + java.util.Arrays.toString(this.startingPoints[i]) + " -> " + java.util.Arrays.toString(this.optima[i]) + ", negative log-likelihood = " + this.negLogL[i] + (i == this.bestIndex ? " (best)" : "") + "\n";
+		}
+		result += this.startsAtBest + " of " + this.getNumberOfStarts() + " starts reached the best optimum; " + this.distinctOptima + " distinct optima\n";
+		return result;
+	}
+
+}
@@ -24,13 +24,12 @@
 
 package edu.stanford.cfuller.colocalization3d.fitting;
 
+import edu.stanford.cfuller.colocalization3d.ConcurrencyUtils;
 import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
 import edu.stanford.cfuller.imageanalysistools.fitting.NelderMeadMinimizer;
 import edu.stanford.cfuller.imageanalysistools.fitting.ObjectiveFunction;
 import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
 
-import org.apache.commons.math3.exception.ConvergenceException;
-import org.apache.commons.math3.analysis.UnivariateFunction;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
@@ -56,8 +55,36 @@ public class P3DFitter extends DistributionFitter {
 	
 	static final String ROBUST_P3D_FIT_PARAM = "robust_p3d_fit_cutoff";
 	
+	static final String TRIM_FRACTION_PARAM = "p3d_trim_fraction";
+	
+	static final String BINS_PARAM = "p3d_bins";
+	
+	static final String BINNED_ONLY_PARAM = "p3d_binned_only";
+	
+	static final String MULTISTART_PARAM = "p3d_multistart_count";
+	
+	static final double TOL = 1e-12;
+	
+	static final double PROFILE_GRID_EXTENT = 2.0;
+	
+	static final double MULTISTART_AGREEMENT_TOLERANCE = 1e-3;
+	
+	RealVector binnedFitParameters;
+	double binnedApproximationError;
+	MultiStartReport multiStartReport;
+	
+	P3dObjectiveFunction accumulatedObjective;
+	RealVector accumulatedFitParameters;
+	int accumulatedFitEvaluations;
+	
 	public P3DFitter(ParameterDictionary p) {
 		super(p);
+		this.binnedFitParameters = null;
+		this.binnedApproximationError = Double.NaN;
+		this.multiStartReport = null;
+		this.accumulatedObjective = null;
+		this.accumulatedFitParameters = null;
+		this.accumulatedFitEvaluations = 0;
 	}
 	
 	/**
@@ -74,22 +101,385 @@ public class P3DFitter extends DistributionFitter {
 		
 		of.setR(diffs);
 		
-		final double tol = 1e-12;
+		this.configureObjective(of);
 		
-		NelderMeadMinimizer nmm = new NelderMeadMinimizer(tol);
+		RealVector startingPoint = this.getInitialEstimate(of);
 		
-		double initialMean = diffs.getL1Norm()/diffs.getDimension();
+		if (this.binnedFitParameters != null && this.parameters.hasKeyAndTrue(BINNED_ONLY_PARAM)) {
+			return startingPoint;
+		}
 		
-		double initialWidth = diffs.mapSubtract(initialMean).map(new org.apache.commons.math3.analysis.function.Power(2)).getL1Norm()/diffs.getDimension();
+		if (this.parameters.hasKey(MULTISTART_PARAM)) {
+			return this.fitMultiStart(of, startingPoint, this.parameters.getIntValueForKey(MULTISTART_PARAM));
+		}
 		
-		initialWidth = Math.sqrt(initialWidth);
+		return this.minimizeFrom(of, startingPoint);
 		
-		RealVector startingPoint = new ArrayRealVector(2,0.0);
+	}
+	
+	/**
+	 * Finds the minimum of the negative log-likelihood nearest a starting point.
+	 * <p>
+	 * This does not modify the state of the fitter, so it may be called concurrently on separate objective functions.
+	 * 
+	 * @param of				the configured P3dObjectiveFunction to minimize.
+	 * @param startingPoint		a RealVector containing the starting mean and width parameters.
+	 * @return					a RealVector containing the mean and width parameters at the minimum.
+	 */
+	RealVector minimizeFrom(P3dObjectiveFunction of, RealVector startingPoint) {
 		
-		startingPoint.setEntry(0, initialMean);
-		startingPoint.setEntry(1, initialWidth);
+		NelderMeadMinimizer nmm = new NelderMeadMinimizer(TOL);
+		
+		return nmm.optimize(of, startingPoint);
+		
+	}
+	
+	/**
+	 * Minimizes the negative log-likelihood from several starting points concurrently and returns the best optimum.
+	 * <p>
+	 * Starts are spread across the quantiles of the distances and a range of widths around the supplied starting point (see
+	 * {@link #getStartingPoints(double[], int, RealVector, int)}), so that bimodal or heavily contaminated sets of distances that trap a
+	 * single local search still find the best optimum.  The starts are minimized in parallel, using up to the number of threads specified by
+	 * the optional parameter "max_threads", each on its own copy of the objective function.  A {@link MultiStartReport} describing the
+	 * outcome of every start is kept and can be retrieved with {@link #getMultiStartReport()}.
+	 * 
+	 * @param of				the configured P3dObjectiveFunction for the full set of distances.
+	 * @param startingPoint		a RealVector containing the primary starting mean and width parameters; this is always the first start.
+	 * @param numberOfStarts	the total number of starts.
+	 * @return					a RealVector containing the mean and width parameters at the best optimum.
+	 */
+	RealVector fitMultiStart(P3dObjectiveFunction of, RealVector startingPoint, int numberOfStarts) {
+		
+		int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		this.multiStartReport = this.runMultiStart(of, startingPoint, numberOfStarts, maxThreads);
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine(this.multiStartReport.toString());
+		
+		return this.multiStartReport.getBestParameters();
+		
+	}
+	
+	/**
+	 * Minimizes the negative log-likelihood from several starting points, as {@link #fitMultiStart(P3dObjectiveFunction, RealVector, int)} does,
+	 * without modifying the state of the fitter.
+	 * 
+	 * @param of				the configured P3dObjectiveFunction for the full set of distances.
+	 * @param startingPoint		a RealVector containing the primary starting mean and width parameters; this is always the first start.
+	 * @param numberOfStarts	the total number of starts.
+	 * @param maxThreads		the maximum number of threads on which to minimize the starts.
+	 * @return					a MultiStartReport describing the outcome of every start.
+	 */
+	MultiStartReport runMultiStart(P3dObjectiveFunction of, RealVector startingPoint, int numberOfStarts, int maxThreads) {
+		
+		final double[] r = java.util.Arrays.copyOf(of.getRArray(), of.getN());
+		
+		final double[][] startingPoints = getStartingPoints(r, r.length, startingPoint, Math.max(1, numberOfStarts));
+		final double[][] optima = new double[startingPoints.length][];
+		final double[] negLogL = new double[startingPoints.length];
+		
+		java.util.List<Runnable> starts = new java.util.ArrayList<Runnable>();
+		
+		for (int i = 0; i < startingPoints.length; i++) {
+			
+			final int start = i;
+			
+			starts.add(new Runnable() {
+				public void run() {
+					
+					P3dObjectiveFunction startObjective = new P3dObjectiveFunction();
+					
+					startObjective.setR(r);
+					
+					configureObjective(startObjective);
+					
+					RealVector optimum = minimizeFrom(startObjective, new ArrayRealVector(startingPoints[start]));
+					
+					optima[start] = optimum.toArray();
+					negLogL[start] = startObjective.evaluate(optimum);
+					
+				}
+			});
+			
+		}
+		
+		//on a single thread (as for each replicate of a bootstrap), the starts are minimized on the calling thread
+		
+		ConcurrencyUtils.runConcurrently(starts, maxThreads, "multi-start p3d fit");
+		
+		return new MultiStartReport(startingPoints, optima, negLogL, MULTISTART_AGREEMENT_TOLERANCE);
+		
+	}
+	
+	/**
+	 * Gets the report from the most recent multi-start fit.
+	 * @return	a MultiStartReport describing each start, or null if no multi-start fit has been performed.
+	 */
+	public MultiStartReport getMultiStartReport() {
+		return this.multiStartReport;
+	}
+	
+	/**
+	 * Fits the p3d distribution to a set of precalculated distance terms, sharing their arrays rather than copying them.
+	 * 
+	 * @param name		the name under which the model is being compared.
+	 * @param terms		the DistanceTerms containing the distances.
+	 * @return			a ModelFit containing the mean and width parameters and the negative log-likelihood.
+	 */
+	@Override
+	ModelFit fitTerms(String name, DistanceTerms terms) {
+		
+		P3dObjectiveFunction of = new P3dObjectiveFunction();
+		
+		of.setTerms(terms);
+		
+		RealVector parameters = this.minimizeFrom(of, getStartingPoint(terms.r, terms.n));
+		
+		return new ModelFit(name, parameters, of.evaluate(parameters), 2, terms.n);
+		
+	}
+	
+	/**
+	 * Creates a ReplicateFitter that keeps its own P3dObjectiveFunction and distance buffer, so that fitting successive bootstrap
+	 * replicates or groups does not allocate per-distance storage.  Each replicate repeats the whole fit procedure of {@link #fit(List, RealVector)}:
+	 * the binned coarse stage (if "p3d_bins" is specified, stopping there if "p3d_binned_only" is true), then either multiple starts (if 
+	 * "p3d_multistart_count" is specified) or a single minimization with {@link #minimizeFrom(P3dObjectiveFunction, RealVector)}, so that
+	 * bootstrap intervals and per-group parameters describe the same estimator as the fit to all the distances.
+	 * <p>
+	 * The binned parameters and multi-start report of the replicates are not kept.  Because the replicates are themselves fit in parallel, 
+	 * the starts of a multi-start fit to a replicate are minimized on a single thread.
+	 * <p>
+	 * This is also used for fitting groups (see {@link #fitGroups(List, RealVector, List, int)}).
+	 * 
+	 * @param objects	the ImageObjects whose distances are being resampled or grouped.
+	 * @param diffs		the distances between the channels of the ImageObjects, in the same order.
+	 * @return			a new ReplicateFitter, which will be used by a single thread.
+	 */
+	@Override
+	protected ReplicateFitter createReplicateFitter(List<ImageObject> objects, final double[] diffs) {
+		
+		final P3dObjectiveFunction of = new P3dObjectiveFunction();
+		final P3dObjectiveFunction binned = new P3dObjectiveFunction();
+		
+		this.configureObjective(of);
+		
+		final double[] resampled = new double[diffs.length];
+		
+		return new ReplicateFitter() {
+			public RealVector fitReplicate(int[] sample) {
+				
+				for (int i = 0; i < sample.length; i++) {
+					resampled[i] = diffs[sample[i]];
+				}
+				
+				of.setR(resampled, sample.length);
+				
+				RealVector startingPoint = getStartingPoint(resampled, sample.length);
+				
+				if (parameters.hasKey(BINS_PARAM)) {
+					
+					startingPoint = minimizeBinned(of, binned, startingPoint);
+					
+					if (parameters.hasKeyAndTrue(BINNED_ONLY_PARAM)) {
+						return startingPoint;
+					}
+					
+				}
+				
+				if (parameters.hasKey(MULTISTART_PARAM)) {
+					return runMultiStart(of, startingPoint, parameters.getIntValueForKey(MULTISTART_PARAM), 1).getBestParameters();
+				}
+				
+				return minimizeFrom(of, startingPoint);
+				
+			}
+		};
+		
+	}
+	
+	/**
+	 * Adds distances to those accumulated by previous calls and refits the p3d distribution to all the accumulated distances, starting from the
+	 * previous optimum.
+	 * <p>
+	 * This is intended for updating the fit as data arrive (for instance, after each image is processed); the accumulated distances are not copied
+	 * or re-transformed when new ones are added.  Whatever the class of the fitter, each refit uses Newton's method (see {@link P3dNewtonMinimizer}),
+	 * which converges quadratically from a start near the optimum, falling back to the simplex search only if it does not converge.  The number of
+	 * likelihood evaluations used by the most recent refit is logged and can be retrieved with {@link #getNumberOfAccumulatedFitEvaluations()}.
+	 * The first call starts from the moment-based estimate, as {@link #fit(List, RealVector)} does.  The optional parameters controlling the likelihood
+	 * (robust cutoff and trimming) apply as for {@link #fit(List, RealVector)}; binning and multiple starts do not.
+	 * 
+	 * @param newDiffs	a RealVector containing the distances to add.
+	 * @return			a RealVector containing the mean and width parameters fit to all the accumulated distances, or null if no distances have been added.
+	 */
+	public RealVector addObservations(RealVector newDiffs) {
+		
+		if (this.accumulatedObjective == null) {
+			this.accumulatedObjective = new P3dObjectiveFunction();
+			this.configureObjective(this.accumulatedObjective);
+		}
+		
+		if (newDiffs.getDimension() == 0) {
+			return this.accumulatedFitParameters;
+		}
+		
+		this.accumulatedObjective.appendR(newDiffs.toArray(), newDiffs.getDimension());
+		
+		RealVector startingPoint = this.accumulatedFitParameters;
+		
+		if (startingPoint == null) {
+			startingPoint = getStartingPoint(this.accumulatedObjective.getRArray(), this.accumulatedObjective.getN());
+		}
+		
+		double[] theta = startingPoint.toArray();
+		
+		P3dNewtonMinimizer minimizer = new P3dNewtonMinimizer(TOL);
+		
+		minimizer.minimize(this.accumulatedObjective, theta);
+		
+		this.accumulatedFitEvaluations = minimizer.getEvaluations();
+		
+		if (minimizer.hasConverged()) {
+			
+			this.accumulatedFitParameters = new ArrayRealVector(theta);
+			
+		} else {
+			
+			final P3dObjectiveFunction of = this.accumulatedObjective;
+			final int[] simplexEvaluations = new int[1];
+			
+			ObjectiveFunction counted = new ObjectiveFunction() {
+				public double evaluate(RealVector point) {
+					simplexEvaluations[0]++;
+					return of.evaluate(point);
+				}
+			};
+			
+			NelderMeadMinimizer nmm = new NelderMeadMinimizer(TOL);
+			
+			this.accumulatedFitParameters = nmm.optimize(counted, startingPoint);
+			
+			this.accumulatedFitEvaluations += simplexEvaluations[0];
+			
+		}
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("online p3d refit to " + this.accumulatedObjective.getN() + " distances used " + this.accumulatedFitEvaluations + " likelihood evaluations" + (minimizer.hasConverged() ? "." : " (Newton iteration did not converge; fell back to simplex fit)."));
+		
+		return this.accumulatedFitParameters;
+		
+	}
+	
+	/**
+	 * Gets the parameters fit to the distances accumulated by {@link #addObservations(RealVector)}.
+	 * @return	a RealVector containing the mean and width parameters, or null if no distances have been added.
+	 */
+	public RealVector getAccumulatedFitParameters() {
+		return this.accumulatedFitParameters;
+	}
+	
+	/**
+	 * Gets the number of likelihood evaluations (passes over the distances) used by the most recent refit in {@link #addObservations(RealVector)}.
+	 * @return	the number of evaluations, or 0 if no distances have been added.
+	 */
+	public int getNumberOfAccumulatedFitEvaluations() {
+		return this.accumulatedFitEvaluations;
+	}
+	
+	/**
+	 * Gets the number of distances accumulated by {@link #addObservations(RealVector)}.
+	 * @return	the number of distances.
+	 */
+	public int getNumberOfAccumulatedObservations() {
+		return (this.accumulatedObjective == null ? 0 : this.accumulatedObjective.getN());
+	}
+	
+	/**
+	 * Discards the distances accumulated by {@link #addObservations(RealVector)}, so that the next call starts a new fit.
+	 */
+	public void clearAccumulatedObservations() {
+		this.accumulatedObjective = null;
+		this.accumulatedFitParameters = null;
+		this.accumulatedFitEvaluations = 0;
+	}
+	
+	/**
+	 * Gets the point from which to start the fit to the full set of distances.
+	 * <p>
+	 * If the number of bins has been specified, this is the coarse stage of a coarse-to-fine fit: the distances are grouped into that many
+	 * bins of equal occupancy, and the parameters are fit to the binned likelihood, at a cost per evaluation that depends only on the number of bins.
+	 * The approximation error (the difference between the binned and the exact negative log-likelihood at the binned optimum) is recorded.
+	 * Otherwise, this is the estimate from the sample mean and standard deviation.
+	 * 
+	 * @param of	the configured P3dObjectiveFunction for the full set of distances.
+	 * @return		a RealVector containing the starting mean parameter followed by the starting width parameter.
+	 */
+	RealVector getInitialEstimate(P3dObjectiveFunction of) {
+		
+		this.binnedFitParameters = null;
+		this.binnedApproximationError = Double.NaN;
+		
+		RealVector startingPoint = getStartingPoint(of.getRArray(), of.getN());
+		
+		if (!this.parameters.hasKey(BINS_PARAM)) {
+			return startingPoint;
+		}
+		
+		P3dObjectiveFunction binned = new P3dObjectiveFunction();
+		
+		this.binnedFitParameters = this.minimizeBinned(of, binned, startingPoint);
+		
+		this.binnedApproximationError = Math.abs(binned.evaluate(this.binnedFitParameters) - of.evaluate(this.binnedFitParameters));
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("binned p3d fit parameters: " + this.binnedFitParameters.toString() + "; approximation error in negative log-likelihood: " + this.binnedApproximationError);
+		
+		return this.binnedFitParameters;
+		
+	}
+	
+	/**
+	 * Fits the parameters to the binned likelihood of a set of distances, using the number of bins specified by the parameter "p3d_bins".
+	 * <p>
+	 * This does not modify the state of the fitter, so it may be called concurrently on separate objective functions.
+	 * 
+	 * @param of				the configured P3dObjectiveFunction for the full set of distances.
+	 * @param binned			a P3dObjectiveFunction that will be set to the binned distances and configured.
+	 * @param startingPoint		a RealVector containing the starting mean and width parameters.
+	 * @return					a RealVector containing the mean and width parameters at the minimum of the binned likelihood.
+	 */
+	RealVector minimizeBinned(P3dObjectiveFunction of, P3dObjectiveFunction binned, RealVector startingPoint) {
+		
+		binned.setBinnedR(of.getRArray(), of.getN(), this.parameters.getIntValueForKey(BINS_PARAM));
 		
-		RealVector parametersMin = null;
+		this.configureObjective(binned);
+		
+		NelderMeadMinimizer nmm = new NelderMeadMinimizer(TOL);
+		
+		return nmm.optimize(binned, startingPoint);
+		
+	}
+	
+	/**
+	 * Gets the parameters from the binned (coarse) stage of the most recent fit.
+	 * @return	a RealVector containing the mean and width parameters fit to the binned distances, or null if the distances were not binned.
+	 */
+	public RealVector getBinnedFitParameters() {
+		return this.binnedFitParameters;
+	}
+	
+	/**
+	 * Gets the approximation error of the binned likelihood in the most recent fit: the absolute difference between the binned and the exact
+	 * negative log-likelihood, evaluated at the parameters fit to the binned distances.
+	 * @return	the approximation error, or NaN if the distances were not binned.
+	 */
+	public double getBinnedApproximationError() {
+		return this.binnedApproximationError;
+	}
+	
+	/**
+	 * Applies the optional parameters controlling the likelihood (robust cutoff and trimming) to an objective function.
+	 * 
+	 * @param of	the P3dObjectiveFunction to configure.
+	 */
+	void configureObjective(P3dObjectiveFunction of) {
 		
 		if (this.parameters.hasKey(ROBUST_P3D_FIT_PARAM)) {
 			
@@ -97,91 +487,269 @@ public class P3DFitter extends DistributionFitter {
 			
 			of.setMinProb(cutoff);
 			
-		}			
+		}
 		
-		return nmm.optimize(of, startingPoint);
+		if (this.parameters.hasKey(TRIM_FRACTION_PARAM)) {
+			
+			of.setTrimPercentage(this.parameters.getDoubleValueForKey(TRIM_FRACTION_PARAM));
+			
+		}
 		
 	}
 	
 	/**
-     * Implements the P3D distribution as an ObjectiveFunction suitable for one of the optimizers in
-     * {@link edu.stanford.cfuller.imageanalysistools.fitting}.
-     */
-    private static class P3dObjectiveFunction implements ObjectiveFunction {
-
-
-        private RealVector r;
-        private double s;
-        private double minProb;
-        private boolean useMinProb;
-        private boolean shouldFitS;
-
-        public P3dObjectiveFunction() {
-            this.r = null;
-            this.shouldFitS = true;
-        }
-
-        public void setMinProb(double minProb) {
-            this.minProb = -1.0*Math.log(minProb);
-            this.useMinProb = true;
-        }
-
-        public double evaluate(RealVector point) {
-
-            double m = point.getEntry(0);
-            double s = point.getEntry(1);
-
-            if (!this.shouldFitS) {
-            	s= this.s;
-            }
-
-            if (m < 0 || s < 0) {return Double.MAX_VALUE;}
-
-            RealVector negLogPVector = new ArrayRealVector(r.getDimension(), 0.0);
-
-            for (int i = 0; i < r.getDimension(); i++) {
-                double tempNegLogP = -1.0*Math.log(p3d(r.getEntry(i), m, s));
-                if (this.useMinProb && tempNegLogP > this.minProb) { tempNegLogP = this.minProb;}
-                negLogPVector.setEntry(i,tempNegLogP);
-            }
-
-            //trimmed mean:
-
-            double trimPercentage = 0.0;
-
-            double[] sortedNegLogP = negLogPVector.toArray();
-
-            java.util.Arrays.sort(sortedNegLogP);
-
-            double negLogL = 0;
-
-            int trimmedLength = (int) Math.floor((1-trimPercentage)*sortedNegLogP.length);
-
-            for (int i =0; i < trimmedLength; i++) {
-
-                negLogL += sortedNegLogP[i];
-
-            }
-
-            return negLogL;
-
-        }
-
-        private double p3d(double r, double m, double s) {
-
-            return ( (Math.exp(-1.0*Math.pow(m-r, 2)/(2*s*s)) - Math.exp(-1.0*Math.pow(m+r, 2)/(2*s*s)))*(Math.sqrt(2.0/Math.PI)*r/(2*m*s)));
-
-        }
-
-        public void setR(RealVector r) {
-            this.r = r;
-        }
-
-        public void setS(double s) {
-            this.s = s;
-            this.shouldFitS = false;
-        }
-
-    }
-
+	 * Calculates standard errors of the parameters from the Hessian of the negative log-likelihood at its minimum.
+	 * 
+	 * @param hessian	an array containing the second derivatives with respect to m twice, m and s, and s twice.
+	 * @return			a RealVector containing the standard error of the mean parameter followed by that of the width parameter; entries are NaN if the Hessian is not positive definite.
+	 */
+	static RealVector getStandardErrors(double[] hessian) {
+		
+		double det = hessian[0]*hessian[2] - hessian[1]*hessian[1];
+		
+		RealVector errors = new ArrayRealVector(2, Double.NaN);
+		
+		if (det > 0 && hessian[0] > 0) {
+			errors.setEntry(0, Math.sqrt(hessian[2]/det));
+			errors.setEntry(1, Math.sqrt(hessian[0]/det));
+		}
+		
+		return errors;
+		
+	}
+	
+	/**
+	 * Scans the profile likelihood of one parameter of the p3d distribution and calculates a likelihood-ratio confidence interval for it.
+	 * <p>
+	 * The scanned parameter is fixed at each of a grid of values spanning about twice the expected interval (estimated from the curvature of the 
+	 * likelihood at its maximum), and the likelihood is maximized over the other parameter.  The grid is divided into contiguous blocks that are
+	 * scanned in parallel, using up to the number of threads specified by the optional parameter "max_threads"; within a block, the grid points
+	 * are visited moving away from the maximum likelihood value, each starting from the optimum at the previous point.
+	 * <p>
+	 * The profile is centred on the supplied parameters, which should be those returned by {@link #fit(List, RealVector)} (so that any
+	 * multiple starts requested by "p3d_multistart_count" are used to find them), and the interval is measured from the negative 
+	 * log-likelihood at those parameters.
+	 * 
+	 * @param objects			the ImageObjects whose distances will be fit.
+	 * @param diffs				a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * @param fitParameters		a RealVector containing the mean and width parameters at the maximum likelihood.
+	 * @param parameterIndex	the parameter to scan: 0 for the mean, 1 for the width.
+	 * @param gridPoints		the number of values of the parameter at which to evaluate the profile.
+	 * @param confidenceLevel	the confidence level of the interval (e.g. 0.95).
+	 * @return					a ProfileLikelihoodResult containing the profile and the interval.
+	 */
+	public ProfileLikelihoodResult profileLikelihood(List<ImageObject> objects, RealVector diffs, RealVector fitParameters, final int parameterIndex, int gridPoints, double confidenceLevel) {
+		
+		final double[] r = diffs.toArray();
+		
+		P3dObjectiveFunction of = new P3dObjectiveFunction();
+		
+		of.setR(r);
+		
+		this.configureObjective(of);
+		
+		final double[] theta = fitParameters.toArray();
+		
+		double minimumNegLogL = of.evaluate(theta[0], theta[1]);
+		
+		double cutoff = new org.apache.commons.math3.distribution.ChiSquaredDistribution(1).inverseCumulativeProbability(confidenceLevel)/2;
+		
+		double[] gradient = new double[2];
+		double[] hessian = new double[3];
+		
+		of.evaluateWithDerivatives(theta[0], theta[1], gradient, hessian);
+		
+		double best = theta[parameterIndex];
+		
+		double halfWidth = PROFILE_GRID_EXTENT*Math.sqrt(2*cutoff)*getStandardErrors(hessian).getEntry(parameterIndex);
+		
+		if (! (halfWidth > 0 && halfWidth < Double.POSITIVE_INFINITY)) {
+			halfWidth = 0.5*best;
+		}
+		
+		double lower = Math.max(best - halfWidth, best*TOL);
+		double upper = best + halfWidth;
+		
+		final double[] gridValues = new double[gridPoints];
+		final double[] profileNegLogL = new double[gridPoints];
+		final double[] nuisanceValues = new double[gridPoints];
+		
+		int firstAbove = 0;
+		
+		for (int i = 0; i < gridPoints; i++) {
+			gridValues[i] = lower + (upper - lower)*i/Math.max(1, gridPoints - 1);
+			if (gridValues[i] < best) firstAbove = i + 1;
+		}
+		
+		//blocks are listed with their starting index nearest the maximum likelihood value
+		
+		int maxThreads = ConcurrencyUtils.getMaxThreads(this.parameters);
+		
+		int blocksPerSide = Math.max(1, (maxThreads + 1)/2);
+		
+		java.util.List<int[]> blocks = new java.util.ArrayList<int[]>();
+		
+		for (int b = 0; b < blocksPerSide; b++) {
+			
+			int belowStart = firstAbove - 1 - b*firstAbove/blocksPerSide;
+			int belowEnd = firstAbove - 1 - (b+1)*firstAbove/blocksPerSide;
+			
+			if (belowStart > belowEnd) blocks.add(new int[] {belowStart, belowEnd, -1});
+			
+			int aboveStart = firstAbove + b*(gridPoints - firstAbove)/blocksPerSide;
+			int aboveEnd = firstAbove + (b+1)*(gridPoints - firstAbove)/blocksPerSide;
+			
+			if (aboveStart < aboveEnd) blocks.add(new int[] {aboveStart, aboveEnd, 1});
+			
+		}
+		
+		java.util.List<Runnable> tasks = new java.util.ArrayList<Runnable>();
+		
+		for (final int[] block : blocks) {
+			
+			tasks.add(new Runnable() {
+				public void run() {
+					
+					P3dObjectiveFunction blockObjective = new P3dObjectiveFunction();
+					
+					blockObjective.setR(r);
+					
+					configureObjective(blockObjective);
+					
+					P3dNewtonMinimizer blockMinimizer = new P3dNewtonMinimizer(TOL);
+					
+					double[] point = new double[2];
+					
+					double nuisance = theta[1 - parameterIndex];
+					
+					for (int i = block[0]; i != block[1]; i += block[2]) {
+						
+						if (parameterIndex == 0) {
+							blockObjective.setM(gridValues[i]);
+						} else {
+							blockObjective.setS(gridValues[i]);
+						}
+						
+						point[parameterIndex] = gridValues[i];
+						point[1 - parameterIndex] = nuisance;
+						
+						double negLogL = blockMinimizer.minimize(blockObjective, point);
+						
+						if (! blockMinimizer.hasConverged()) {
+							
+							NelderMeadMinimizer nmm = new NelderMeadMinimizer(TOL);
+							
+							RealVector optimum = nmm.optimize(blockObjective, new ArrayRealVector(point));
+							
+							point[1 - parameterIndex] = optimum.getEntry(1 - parameterIndex);
+							
+							negLogL = blockObjective.evaluate(point[0], point[1]);
+							
+						}
+						
+						profileNegLogL[i] = negLogL;
+						nuisanceValues[i] = point[1 - parameterIndex];
+						
+						nuisance = point[1 - parameterIndex];
+						
+					}
+					
+				}
+			});
+			
+		}
+		
+		ConcurrencyUtils.runConcurrently(tasks, maxThreads, "profile likelihood calculation");
+		
+		for (int i = 0; i < gridPoints; i++) {
+			if (profileNegLogL[i] < minimumNegLogL) {
+				java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("Profile likelihood found a better fit than the supplied parameters at " + gridValues[i] + "; the fit may not have reached the global optimum.");
+				break;
+			}
+		}
+		
+		return new ProfileLikelihoodResult(parameterIndex, new ArrayRealVector(theta), minimumNegLogL, gridValues, profileNegLogL, nuisanceValues, confidenceLevel, cutoff);
+		
+	}
+	
+	/**
+	 * Gets a set of starting points for a multi-start fit.
+	 * <p>
+	 * The first is the supplied primary starting point.  The rest place the mean parameter at evenly spaced quantiles of the distances, 
+	 * cycling the width parameter through one half, one, and one and a half times a robust estimate of the width (from the interquartile range),
+	 * so that starts cover both modes of a bimodal set of distances and both narrow and broad fits to a contaminated one.
+	 * 
+	 * @param r					an array containing the distances.
+	 * @param n					the number of entries of r to use.
+	 * @param startingPoint		the primary starting point.
+	 * @param numberOfStarts	the total number of starting points.
+	 * @return					an array containing the starting mean and width parameters for each start.
+	 */
+	static double[][] getStartingPoints(double[] r, int n, RealVector startingPoint, int numberOfStarts) {
+		
+		double[][] startingPoints = new double[numberOfStarts][];
+		
+		startingPoints[0] = startingPoint.toArray();
+		
+		if (numberOfStarts == 1) return startingPoints;
+		
+		double[] sorted = java.util.Arrays.copyOf(r, n);
+		
+		java.util.Arrays.sort(sorted);
+		
+		double robustWidth = (sorted[(3*(n-1))/4] - sorted[(n-1)/4])/1.349;
+		
+		if (! (robustWidth > 0)) {
+			robustWidth = startingPoint.getEntry(1);
+		}
+		
+		for (int k = 1; k < numberOfStarts; k++) {
+			
+			double quantile = (k - 0.5)/(numberOfStarts - 1);
+			
+			double m = Math.max(sorted[(int) Math.floor(quantile*(n-1))], TOL*robustWidth);
+			double s = robustWidth*(1 + (k - 1) % 3)/2;
+			
+			startingPoints[k] = new double[] {m, s};
+			
+		}
+		
+		return startingPoints;
+		
+	}
+	
+	/**
+	 * Gets a starting point for optimization from the sample mean and standard deviation of a set of distances.
+	 * 
+	 * @param r		an array containing the distances.
+	 * @param n		the number of entries of r to use.
+	 * @return		a RealVector containing the starting mean parameter followed by the starting width parameter.
+	 */
+	static RealVector getStartingPoint(double[] r, int n) {
+		
+		double initialMean = 0;
+		
+		for (int i = 0; i < n; i++) {
+			initialMean += Math.abs(r[i]);
+		}
+		
+		initialMean /= n;
+		
+		double initialWidth = 0;
+		
+		for (int i = 0; i < n; i++) {
+			initialWidth += (r[i] - initialMean)*(r[i] - initialMean);
+		}
+		
+		initialWidth = Math.sqrt(initialWidth/n);
+		
+		RealVector startingPoint = new ArrayRealVector(2,0.0);
+		
+		startingPoint.setEntry(0, initialMean);
+		startingPoint.setEntry(1, initialWidth);
+		
+		return startingPoint;
+		
+	}
+	
  }
\ No newline at end of file
@@ -0,0 +1,169 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.List;
+
+/**
+* A P3DFitter that finds the maximum likelihood parameters using the analytic gradient and Hessian of the P3D likelihood
+* (see {@link P3dNewtonMinimizer}) rather than a simplex search.
+* <p>
+* This reaches the same optimum in far fewer passes over the distances.  As a side product, the inverse of the Hessian of the
+* negative log-likelihood at the optimum (the observed Fisher information) gives standard errors for the parameters.
+* <p>
+* If the Newton iteration does not converge, the fit falls back to the simplex search of {@link P3DFitter}.  Bootstrap replicates are
+* minimized in the same way as the fit to the original distances.
+* 
+* @author Colin J. Fuller
+*/
+public class P3DGradientFitter extends P3DFitter {
+	
+	static final double TOLERANCE = 1e-12;
+	
+	RealVector standardErrors;
+	int evaluations;
+	
+	public P3DGradientFitter(ParameterDictionary p) {
+		super(p);
+		this.standardErrors = null;
+		this.evaluations = 0;
+	}
+	
+	/**
+	 * Fits the distances between the two channels of a set of objects to a p3d distribution.
+	 * 
+	 * @param objects the ImageObjects whose distances will be fit
+	 * @param diffs a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * 
+	 * @return a RealVector containing the parameters for the distribution fit: first the mean parameter, second the standard deviation parameter
+	 */
+	@Override
+	public RealVector fit(List<ImageObject> objects, RealVector diffs) {
+		
+		P3dObjectiveFunction of = new P3dObjectiveFunction();
+		
+		of.setR(diffs);
+		
+		this.configureObjective(of);
+		
+		double[] theta = this.getInitialEstimate(of).toArray();
+		
+		if (this.binnedFitParameters != null && this.parameters.hasKeyAndTrue(BINNED_ONLY_PARAM)) {
+			this.standardErrors = null;
+			return new ArrayRealVector(theta);
+		}
+		
+		if (this.parameters.hasKey(MULTISTART_PARAM)) {
+			
+			RealVector best = this.fitMultiStart(of, new ArrayRealVector(theta), this.parameters.getIntValueForKey(MULTISTART_PARAM));
+			
+			double[] gradient = new double[2];
+			double[] hessian = new double[3];
+			
+			of.evaluateWithDerivatives(best.getEntry(0), best.getEntry(1), gradient, hessian);
+			
+			this.standardErrors = getStandardErrors(hessian);
+			this.evaluations = 0;
+			
+			return best;
+			
+		}
+		
+		P3dNewtonMinimizer minimizer = new P3dNewtonMinimizer(TOLERANCE);
+		
+		minimizer.minimize(of, theta);
+		
+		this.evaluations = minimizer.getEvaluations();
+		
+		if (! minimizer.hasConverged()) {
+			
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).warning("Gradient-based p3d fit did not converge; falling back to simplex fit.");
+			
+			this.standardErrors = null;
+			
+			return super.fit(objects, diffs);
+			
+		}
+		
+		this.standardErrors = getStandardErrors(minimizer.getHessian());
+		
+		java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("p3d fit converged after " + minimizer.getIterations() + " iterations, " + this.evaluations + " likelihood evaluations.");
+		
+		return new ArrayRealVector(theta);
+		
+	}
+	
+	/**
+	 * Finds the minimum of the negative log-likelihood nearest a starting point by Newton's method, falling back to the simplex search if 
+	 * the Newton iteration does not converge.
+	 * <p>
+	 * This does not modify the state of the fitter, so it may be called concurrently on separate objective functions.
+	 * 
+	 * @param of				the configured P3dObjectiveFunction to minimize.
+	 * @param startingPoint		a RealVector containing the starting mean and width parameters.
+	 * @return					a RealVector containing the mean and width parameters at the minimum.
+	 */
+	@Override
+	RealVector minimizeFrom(P3dObjectiveFunction of, RealVector startingPoint) {
+		
+		double[] theta = startingPoint.toArray();
+		
+		P3dNewtonMinimizer minimizer = new P3dNewtonMinimizer(TOLERANCE);
+		
+		minimizer.minimize(of, theta);
+		
+		if (! minimizer.hasConverged()) {
+			return super.minimizeFrom(of, startingPoint);
+		}
+		
+		return new ArrayRealVector(theta);
+		
+	}
+	
+	/**
+	 * Gets the standard errors of the parameters from the most recent fit, from the observed Fisher information at the optimum.
+	 * 
+	 * @return	a RealVector containing the standard error of the mean parameter followed by that of the width parameter, or null if no
+	 * 			fit has been performed or the last fit fell back to the simplex search.
+	 */
+	public RealVector getStandardErrors() {
+		return this.standardErrors;
+	}
+	
+	/**
+	 * Gets the number of likelihood evaluations (passes over the distances) used by the most recent single-start fit.
+	 * @return	the number of evaluations, or 0 if the most recent fit was a multi-start fit.
+	 */
+	public int getNumberOfEvaluations() {
+		return this.evaluations;
+	}
+	
+}
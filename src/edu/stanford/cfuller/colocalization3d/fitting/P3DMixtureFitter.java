@@ -0,0 +1,91 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ImageObject;
+import edu.stanford.cfuller.imageanalysistools.fitting.NelderMeadMinimizer;
+import edu.stanford.cfuller.imageanalysistools.meta.parameters.ParameterDictionary;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.List;
+
+/**
+* A DistributionFitter that fits scalar observations to a mixture of a P3D distribution and a uniform background 
+* (see {@link P3dMixtureObjectiveFunction}).
+* @author Colin J. Fuller
+*/
+public class P3DMixtureFitter extends DistributionFitter {
+	
+	static final double TOL = 1e-12;
+	
+	static final double INITIAL_BACKGROUND_FRACTION = 0.1;
+	
+	public P3DMixtureFitter(ParameterDictionary p) {
+		super(p);
+	}
+	
+	/**
+	 * Fits the distances between the two channels of a set of objects to a mixture of a p3d distribution and a uniform background.
+	 * 
+	 * @param objects the ImageObjects whose distances will be fit
+	 * @param diffs a RealVector containing the scalar distances between the channels of the ImageObjects, in the same order.
+	 * 
+	 * @return a RealVector containing the parameters for the distribution fit: the mean parameter, the standard deviation parameter, and the background fraction
+	 */
+	public RealVector fit(List<ImageObject> objects, RealVector diffs) {
+		return this.fitTerms("p3d_uniform_mixture", new DistanceTerms(diffs.toArray())).getParameters();
+	}
+	
+	/**
+	 * Fits the mixture to a set of precalculated distance terms, starting from the moment-based p3d estimate with a small background fraction.
+	 * 
+	 * @param name		the name under which the model is being compared.
+	 * @param terms		the DistanceTerms containing the distances.
+	 * @return			a ModelFit containing the mean, width, and background fraction and the negative log-likelihood.
+	 */
+	@Override
+	ModelFit fitTerms(String name, DistanceTerms terms) {
+		
+		P3dMixtureObjectiveFunction of = new P3dMixtureObjectiveFunction(terms);
+		
+		RealVector p3dStart = P3DFitter.getStartingPoint(terms.r, terms.n);
+		
+		RealVector startingPoint = new ArrayRealVector(3, 0.0);
+		
+		startingPoint.setEntry(0, p3dStart.getEntry(0));
+		startingPoint.setEntry(1, p3dStart.getEntry(1));
+		startingPoint.setEntry(2, INITIAL_BACKGROUND_FRACTION);
+		
+		NelderMeadMinimizer nmm = new NelderMeadMinimizer(TOL);
+		
+		RealVector parameters = nmm.optimize(of, startingPoint);
+		
+		return new ModelFit(name, parameters, of.evaluate(parameters), 3, terms.n);
+		
+	}
+	
+}
@@ -0,0 +1,49 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+/**
+ * Sums the term log(1 - exp(-2mr/s^2)) of the P3D log-likelihood over a set of distances; this is the only part of the uncapped, 
+ * untrimmed likelihood that must be evaluated separately for each distance (see {@link P3dObjectiveFunction}).
+ * <p>
+ * The implementation using the JDK Vector API ({@code VectorP3dLikelihoodKernel}) is compiled separately and loaded only if
+ * the jdk.incubator.vector module is available at run time.
+ * 
+ * @author Colin J. Fuller
+ */
+interface P3dLikelihoodKernel {
+	
+	/**
+	 * Calculates the (optionally weighted) sum of log(1 - exp(-scale*r)) over a set of distances.
+	 * 
+	 * @param r			an array containing the distances.
+	 * @param weights	an array containing the weight of each distance (for binned distances), or null if each has weight 1.
+	 * @param n			the number of entries of r (and weights) to use.
+	 * @param scale		the factor by which each distance is multiplied (2m/s^2).
+	 * @return			the sum.
+	 */
+	public double sumLogOneMinusExp(double[] r, double[] weights, int n, double scale);
+	
+}
@@ -0,0 +1,96 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ObjectiveFunction;
+
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Implements the negative log-likelihood of a mixture of a P3D distribution and a uniform background on [0, max r] as an ObjectiveFunction:
+ * <pre>
+ * p(r; m, s, f) = (1-f) p3d(r; m, s) + f/max(r)
+ * </pre>
+ * The background accounts for mispaired objects, whose separations carry no information about the true distance.  The two components are
+ * combined in log space so that neither underflows.
+ * <p>
+ * The parameters are, in order, the P3D mean, the P3D width, and the background fraction.
+ */
+class P3dMixtureObjectiveFunction implements ObjectiveFunction {
+	
+	private DistanceTerms terms;
+	private double logBackgroundDensity;
+	
+	/**
+	 * Constructs a new objective function for a set of distances.
+	 * @param terms	the DistanceTerms containing the distances; their arrays are shared, not copied.
+	 */
+	public P3dMixtureObjectiveFunction(DistanceTerms terms) {
+		this.terms = terms;
+		this.logBackgroundDensity = -1.0*Math.log(terms.maxR);
+	}
+	
+	/**
+	 * Evaluates the negative log-likelihood of the distances.
+	 * 
+	 * @param point	a RealVector containing the mean, width, and background fraction.
+	 * @return		the negative log-likelihood, or Double.MAX_VALUE if the mean or width is not positive or the fraction is outside [0, 1).
+	 */
+	public double evaluate(RealVector point) {
+		
+		double m = point.getEntry(0);
+		double s = point.getEntry(1);
+		double f = point.getEntry(2);
+		
+		if (m <= 0 || s <= 0 || f < 0 || f >= 1) {return Double.MAX_VALUE;}
+		
+		double inverseTwoS2 = 1.0/(2*s*s);
+		double twoMOverS2 = 2*m/(s*s);
+		double constant = P3dObjectiveFunction.LOG_SQRT_2_OVER_PI - Math.log(2*m*s) + Math.log1p(-1.0*f);
+		double logBackground = Math.log(f) + this.logBackgroundDensity;
+		
+		final double[] r = this.terms.r;
+		final double[] logR = this.terms.logR;
+		
+		double negLogL = 0;
+		
+		for (int i = 0; i < this.terms.n; i++) {
+			
+			double diff = m - r[i];
+			
+			double logSignal = constant + logR[i] - diff*diff*inverseTwoS2 + P3dObjectiveFunction.logOneMinusExp(twoMOverS2*r[i]);
+			
+			double larger = Math.max(logSignal, logBackground);
+			double smaller = Math.min(logSignal, logBackground);
+			
+			negLogL -= larger + Math.log1p(Math.exp(smaller - larger));
+			
+		}
+		
+		return negLogL;
+		
+	}
+
+}
@@ -0,0 +1,268 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+/**
+ * Minimizes the P3D negative log-likelihood using Newton's method with the analytic gradient and Hessian from
+ * {@link P3dObjectiveFunction#evaluateWithDerivatives}.
+ * <p>
+ * Where the Hessian is not positive definite (far from the minimum), it is shifted by a multiple of the identity so that
+ * the step is still a descent direction; each step is then shortened by backtracking until it sufficiently decreases the objective
+ * and keeps both parameters positive.  If either parameter has been fixed in the objective function, only the other is optimized.
+ * <p>
+ * The minimization is considered converged only where the gradient is small: the change in the objective for a relative change in
+ * each parameter being fit must be below {@link #GRADIENT_TOLERANCE} times the magnitude of the objective.  If the line search fails, or
+ * the steps become negligibly small, at a point where the gradient is not small, the minimization stops without converging so that
+ * the caller can fall back to another method.
+ * <p>
+ * A minimizer holds its own working arrays and does not allocate while minimizing, so a single instance can be reused
+ * for many fits (but not from several threads at once).
+ */
+class P3dNewtonMinimizer {
+	
+	static final int DEFAULT_MAX_ITERATIONS = 100;
+	
+	static final double SUFFICIENT_DECREASE = 1e-4;
+	
+	static final int MAX_STEP_HALVINGS = 60;
+	
+	static final double GRADIENT_TOLERANCE = 1e-6;
+	
+	private double tolerance;
+	private int maxIterations;
+	
+	private double[] gradient;
+	private double[] hessian;
+	private double[] trialGradient;
+	private double[] trialHessian;
+	
+	private int evaluations;
+	private int iterations;
+	private boolean converged;
+	
+	/**
+	 * Constructs a new minimizer.
+	 * @param tolerance	the relative change in the parameters below which the steps are considered to have stalled; the minimization then stops, converged only if the gradient is small.
+	 */
+	public P3dNewtonMinimizer(double tolerance) {
+		this.tolerance = tolerance;
+		this.maxIterations = DEFAULT_MAX_ITERATIONS;
+		this.gradient = new double[2];
+		this.hessian = new double[3];
+		this.trialGradient = new double[2];
+		this.trialHessian = new double[3];
+	}
+	
+	/**
+	 * Sets the maximum number of Newton iterations.
+	 * @param maxIterations	the maximum number of iterations.
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+	
+	/**
+	 * Minimizes the objective function starting from the supplied parameters.
+	 * 
+	 * @param of		the P3dObjectiveFunction to minimize.
+	 * @param theta		an array containing the starting mean and width parameters; this is overwritten with the parameters at the minimum.
+	 * @return			the value of the objective function at the minimum.
+	 */
+	public double minimize(P3dObjectiveFunction of, double[] theta) {
+		
+		this.evaluations = 0;
+		this.iterations = 0;
+		this.converged = false;
+		
+		boolean fitM = of.isFittingM();
+		boolean fitS = of.isFittingS();
+		
+		double m = theta[0];
+		double s = theta[1];
+		
+		double f = of.evaluateWithDerivatives(m, s, this.gradient, this.hessian);
+		this.evaluations++;
+		
+		if (f == Double.MAX_VALUE || Double.isNaN(f) || Double.isInfinite(f)) {
+			return f;
+		}
+		
+		while (this.iterations < this.maxIterations) {
+			
+			if (this.isStationary(m, s, f, fitM, fitS)) {
+				this.converged = true;
+				break;
+			}
+			
+			this.iterations++;
+			
+			double a = this.hessian[0];
+			double b = this.hessian[1];
+			double c = this.hessian[2];
+			
+			double dm = 0;
+			double ds = 0;
+			
+			if (fitM && fitS) {
+				
+				//shift the Hessian to be positive definite if needed
+				
+				double minEigenvalue = (a + c)/2 - Math.sqrt((a - c)*(a - c)/4 + b*b);
+				double scale = Math.abs(a) + Math.abs(c) + Double.MIN_NORMAL;
+				double shift = 0;
+				
+				if (! (minEigenvalue > 1e-12*scale)) {
+					shift = -1.0*minEigenvalue + 1e-3*scale;
+				}
+				
+				double det = (a + shift)*(c + shift) - b*b;
+				
+				dm = -1.0*((c + shift)*this.gradient[0] - b*this.gradient[1])/det;
+				ds = -1.0*((a + shift)*this.gradient[1] - b*this.gradient[0])/det;
+				
+			} else if (fitM) {
+				
+				dm = -1.0*this.gradient[0]/(a > 0 ? a : Math.abs(a) + Math.abs(this.gradient[0]/m) + Double.MIN_NORMAL);
+				
+			} else if (fitS) {
+				
+				ds = -1.0*this.gradient[1]/(c > 0 ? c : Math.abs(c) + Math.abs(this.gradient[1]/s) + Double.MIN_NORMAL);
+				
+			} else {
+				
+				this.converged = true;
+				break;
+				
+			}
+			
+			double slope = this.gradient[0]*dm + this.gradient[1]*ds;
+			
+			double t = 1.0;
+			double trialF = f;
+			boolean accepted = false;
+			
+			for (int halving = 0; halving < MAX_STEP_HALVINGS; halving++) {
+				
+				double trialM = m + t*dm;
+				double trialS = s + t*ds;
+				
+				if (trialM > 0 && trialS > 0) {
+					
+					trialF = of.evaluateWithDerivatives(trialM, trialS, this.trialGradient, this.trialHessian);
+					this.evaluations++;
+					
+					if (trialF <= f + SUFFICIENT_DECREASE*t*slope) {
+						accepted = true;
+						break;
+					}
+					
+				}
+				
+				t /= 2;
+				
+			}
+			
+			if (! accepted) {
+				
+				//no sufficient decrease along the Newton direction; this is only a minimum if the gradient is small, which is checked below
+				break;
+				
+			}
+			
+			double relativeStep = Math.abs(t*dm)/m + Math.abs(t*ds)/s;
+			
+			m += t*dm;
+			s += t*ds;
+			f = trialF;
+			
+			System.arraycopy(this.trialGradient, 0, this.gradient, 0, 2);
+			System.arraycopy(this.trialHessian, 0, this.hessian, 0, 3);
+			
+			if (relativeStep < this.tolerance) {
+				//the steps have stalled; this is only a minimum if the gradient is small, which is checked below
+				break;
+			}
+			
+		}
+		
+		if (! this.converged) {
+			this.converged = this.isStationary(m, s, f, fitM, fitS);
+		}
+		
+		theta[0] = m;
+		theta[1] = s;
+		
+		return f;
+		
+	}
+	
+	/**
+	 * Checks whether the gradient at the current parameters is small enough for them to be a minimum, scaling each component
+	 * by its parameter so that the test is the change in the objective for a relative change in that parameter.
+	 */
+	private boolean isStationary(double m, double s, double f, boolean fitM, boolean fitS) {
+		
+		double scaledGradient = 0;
+		
+		if (fitM) scaledGradient += Math.abs(this.gradient[0]*m);
+		if (fitS) scaledGradient += Math.abs(this.gradient[1]*s);
+		
+		return scaledGradient <= GRADIENT_TOLERANCE*Math.max(Math.abs(f), 1.0);
+		
+	}
+	
+	/**
+	 * Gets the Hessian of the objective function at the parameters returned by the last minimization.
+	 * @return	an array containing the second derivatives with respect to m twice, m and s, and s twice; this is not copied.
+	 */
+	public double[] getHessian() {
+		return this.hessian;
+	}
+	
+	/**
+	 * Gets the number of times the objective function was evaluated during the last minimization.
+	 * @return	the number of evaluations; each is one pass over the distances.
+	 */
+	public int getEvaluations() {
+		return this.evaluations;
+	}
+	
+	/**
+	 * Gets the number of Newton iterations taken during the last minimization.
+	 * @return	the number of iterations.
+	 */
+	public int getIterations() {
+		return this.iterations;
+	}
+	
+	/**
+	 * Checks whether the last minimization converged.
+	 * @return	true if the minimization converged before reaching the maximum number of iterations.
+	 */
+	public boolean hasConverged() {
+		return this.converged;
+	}
+
+}
@@ -0,0 +1,1023 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import edu.stanford.cfuller.imageanalysistools.fitting.ObjectiveFunction;
+
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Implements the negative log-likelihood of the P3D distribution as an ObjectiveFunction suitable for one of the optimizers in
+ * {@link edu.stanford.cfuller.imageanalysistools.fitting}.
+ * <p>
+ * The distances are held in a primitive array along with their logarithms, and the density is evaluated in log space:
+ * <pre>
+ * log p(r; m, s) = log(sqrt(2/pi)) + log(r) - log(2ms) - (m-r)^2/(2s^2) + log(1 - exp(-2mr/s^2))
+ * </pre>
+ * which avoids the underflow of the difference of exponentials in the direct form when the distances are large relative to the width.
+ * Evaluation does not allocate; sorting (by selection) happens only when a trimmed likelihood has been requested.
+ * <p>
+ * For very large sets of distances, the distances can instead be grouped into bins (see {@link #setBinnedR(double[], int, int)}), 
+ * so that each evaluation costs time proportional to the number of bins rather than the number of distances.
+ * <p>
+ * When neither a minimum probability nor trimming is in use, the likelihood is evaluated by a blocked kernel: the log(r) and (m-r)^2 terms
+ * are summed in closed form from moments of the distances calculated when they are set, leaving a single loop over the distances that
+ * evaluates only log(1 - exp(-2mr/s^2)) (see {@link #logOneMinusExp(double)}).  If the jdk.incubator.vector module is available at run time
+ * (for instance, with the java option --add-modules jdk.incubator.vector) and the build included the Vector API kernel, that loop is evaluated
+ * with SIMD instructions by {@code VectorP3dLikelihoodKernel}; otherwise it is a scalar loop accumulated in several independent lanes so that
+ * successive distances do not wait on each other.
+ * Otherwise, each distance is evaluated separately.
+ */
+class P3dObjectiveFunction implements ObjectiveFunction {
+	
+	static final double LOG_SQRT_2_OVER_PI = 0.5*Math.log(2.0/Math.PI);
+	
+	static final int KERNEL_LANES = 4;
+	
+	static final double EXPM1_CUTOFF = 0.5;
+	
+	static final String VECTOR_KERNEL_CLASS = "edu.stanford.cfuller.colocalization3d.fitting.VectorP3dLikelihoodKernel";
+	
+	static final P3dLikelihoodKernel VECTOR_KERNEL = loadVectorKernel();
+	
+	private double[] r;
+	private double[] logR;
+	private double[] scratch;
+	private double[] values;
+	private double[] weightScratch;
+	private double[] weights;
+	private double[] binVariance;
+	private double totalWeight;
+	private int n;
+	
+	private double meanR;
+	private double sumSquaredDeviations;
+	private double sumLogR;
+	private boolean useBlockedKernel;
+	private boolean useVectorKernel;
+	private boolean sharingTerms;
+	
+	private double m;
+	private double s;
+	private double minProb;
+	private boolean useMinProb;
+	private boolean shouldFitM;
+	private boolean shouldFitS;
+	private double trimPercentage;
+	
+	public P3dObjectiveFunction() {
+		this.r = null;
+		this.n = 0;
+		this.shouldFitM = true;
+		this.shouldFitS = true;
+		this.useMinProb = false;
+		this.trimPercentage = 0.0;
+		this.useBlockedKernel = true;
+		this.useVectorKernel = true;
+	}
+	
+	/**
+	 * Loads the kernel using the JDK Vector API, if it was compiled and the jdk.incubator.vector module is available.
+	 * @return	the P3dLikelihoodKernel, or null if it cannot be loaded.
+	 */
+	static P3dLikelihoodKernel loadVectorKernel() {
+		
+		try {
+			
+			P3dLikelihoodKernel kernel = (P3dLikelihoodKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+			
+			java.util.logging.Logger.getLogger(edu.stanford.cfuller.colocalization3d.Colocalization3DMain.LOGGER_NAME).fine("Using the Vector API kernel for the p3d likelihood.");
+			
+			return kernel;
+			
+		} catch (ReflectiveOperationException e) {
+			//the kernel was not compiled
+			return null;
+		} catch (LinkageError e) {
+			//the jdk.incubator.vector module is not available
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Sets whether the blocked kernel may use the Vector API kernel, if it is available; if not, it uses the scalar loop.
+	 * This is intended for benchmarking and checking the kernel.
+	 * @param useVectorKernel	true to allow the Vector API kernel (the default).
+	 */
+	void setUseVectorKernel(boolean useVectorKernel) {
+		this.useVectorKernel = useVectorKernel;
+	}
+	
+	/**
+	 * Checks whether the blocked kernel will use the Vector API kernel.
+	 * @return	true if the Vector API kernel is available and allowed, false otherwise.
+	 */
+	boolean isUsingVectorKernel() {
+		return this.useVectorKernel && VECTOR_KERNEL != null;
+	}
+	
+	/**
+	 * Sets whether the blocked kernel may be used when the likelihood is neither capped nor trimmed; if not, every
+	 * evaluation processes each distance separately.  This is intended for benchmarking and checking the kernel.
+	 * @param useBlockedKernel	true to allow the blocked kernel (the default).
+	 */
+	void setUseBlockedKernel(boolean useBlockedKernel) {
+		this.useBlockedKernel = useBlockedKernel;
+	}
+	
+	/**
+	 * Sets the smallest probability density allowed for any single observation; observations less likely than this
+	 * contribute a constant to the likelihood, which makes the fit robust to outliers.
+	 * @param minProb	the minimum probability density.
+	 */
+	public void setMinProb(double minProb) {
+		this.minProb = -1.0*Math.log(minProb);
+		this.useMinProb = true;
+	}
+	
+	/**
+	 * Sets the fraction of the least likely observations that are excluded from the likelihood.
+	 * @param trimPercentage	the fraction (between 0 and 1) of observations to exclude; 0 disables trimming.
+	 */
+	public void setTrimPercentage(double trimPercentage) {
+		this.trimPercentage = trimPercentage;
+	}
+	
+	/**
+	 * Sets the distances whose likelihood will be evaluated.
+	 * @param r	a RealVector containing the distances.
+	 */
+	public void setR(RealVector r) {
+		this.setR(r.toArray());
+	}
+	
+	/**
+	 * Sets the distances whose likelihood will be evaluated.
+	 * <p>
+	 * The internal arrays are reused if they are large enough, so repeatedly setting distances of the same length does not allocate.
+	 * 
+	 * @param r	an array containing the distances; this is copied.
+	 */
+	public void setR(double[] r) {
+		this.setR(r, r.length);
+	}
+	
+	/**
+	 * Sets the distances whose likelihood will be evaluated from the first entries of an array.
+	 * 
+	 * @param r		an array containing the distances; this is copied.
+	 * @param n		the number of entries of r to use.
+	 */
+	public void setR(double[] r, int n) {
+		
+		if (this.r == null || this.r.length < n || this.sharingTerms) {
+			this.r = new double[n];
+			this.logR = new double[n];
+			this.scratch = null;
+			this.values = null;
+			this.sharingTerms = false;
+		}
+		
+		this.n = n;
+		this.weights = null;
+		this.binVariance = null;
+		this.totalWeight = n;
+		
+		for (int i = 0; i < n; i++) {
+			this.r[i] = r[i];
+			this.logR[i] = Math.log(r[i]);
+		}
+		
+		this.calculateMoments();
+		
+	}
+	
+	/**
+	 * Adds distances to those whose likelihood will be evaluated.
+	 * <p>
+	 * Storage grows geometrically and the moments used by the blocked kernel are updated from the new distances alone, so accumulating
+	 * distances a batch at a time costs time proportional to the size of each batch (plus amortized copying).
+	 * 
+	 * @param r			an array containing the distances to add; this is copied.
+	 * @param count		the number of entries of r to add.
+	 * @throws IllegalStateException	if the distances have been binned.
+	 */
+	public void appendR(double[] r, int count) {
+		
+		if (this.weights != null) {
+			throw new IllegalStateException("Distances cannot be added to a binned likelihood.");
+		}
+		
+		int newN = this.n + count;
+		
+		if (this.r == null || this.r.length < newN || this.sharingTerms) {
+			
+			int capacity = Math.max(newN, (this.r == null ? 0 : 2*this.r.length));
+			
+			double[] newR = new double[capacity];
+			double[] newLogR = new double[capacity];
+			
+			if (this.r != null) {
+				System.arraycopy(this.r, 0, newR, 0, this.n);
+				System.arraycopy(this.logR, 0, newLogR, 0, this.n);
+			}
+			
+			this.r = newR;
+			this.logR = newLogR;
+			this.scratch = null;
+			this.values = null;
+			this.sharingTerms = false;
+			
+		}
+		
+		double batchSum = 0;
+		double batchSumLog = 0;
+		
+		for (int i = 0; i < count; i++) {
+			this.r[this.n + i] = r[i];
+			this.logR[this.n + i] = Math.log(r[i]);
+			batchSum += r[i];
+			batchSumLog += this.logR[this.n + i];
+		}
+		
+		double batchMean = (count > 0 ? batchSum/count : 0);
+		double batchSumSquares = 0;
+		
+		for (int i = 0; i < count; i++) {
+			batchSumSquares += (r[i] - batchMean)*(r[i] - batchMean);
+		}
+		
+		//combine the moments of the existing and new distances
+		
+		double delta = batchMean - this.meanR;
+		
+		if (newN > 0) {
+			this.sumSquaredDeviations += batchSumSquares + delta*delta*((double) this.n)*count/newN;
+			this.meanR += delta*count/newN;
+		}
+		
+		this.sumLogR += batchSumLog;
+		this.n = newN;
+		this.totalWeight = newN;
+		
+	}
+	
+	/**
+	 * Sets the distances whose likelihood will be evaluated from a set of precalculated terms, sharing (not copying) its arrays.
+	 * @param terms	the DistanceTerms containing the distances and their logarithms.
+	 */
+	void setTerms(DistanceTerms terms) {
+		
+		this.r = terms.r;
+		this.logR = terms.logR;
+		this.scratch = null;
+		this.values = null;
+		this.sharingTerms = true;
+		
+		this.n = terms.n;
+		this.weights = null;
+		this.binVariance = null;
+		this.totalWeight = terms.n;
+		
+		this.calculateMoments();
+		
+	}
+	
+	/**
+	 * Sets the distances whose likelihood will be evaluated, grouping them into bins so that each evaluation costs time 
+	 * proportional to the number of bins rather than the number of distances.
+	 * <p>
+	 * Bins are adaptive: each holds an equal share of the sorted distances, so they are narrow where the distances are dense
+	 * and wide in the tails.  Each bin keeps the exact sums of the distances, their logarithms, and their squares, so the only
+	 * approximation is in the term log(1 - exp(-2mr/s^2)), which is evaluated at the bin mean.  This term varies slowly with r
+	 * except for distances that are small relative to s^2/m, so the approximation is good whenever the bins are narrow compared
+	 * to the width of the distribution.
+	 * <p>
+	 * The minimum probability (see {@link #setMinProb(double)}) is applied to the average likelihood of the observations in each bin,
+	 * and trimming (see {@link #setTrimPercentage(double)}) excludes observations a bin at a time, counting a bin fractionally at the threshold.
+	 * 
+	 * @param r				an array containing the distances; this is not modified.
+	 * @param n				the number of entries of r to use.
+	 * @param numberOfBins	the number of bins; if this is at least n, each distance is placed in its own bin.
+	 */
+	public void setBinnedR(double[] r, int n, int numberOfBins) {
+		
+		double[] sorted = java.util.Arrays.copyOf(r, n);
+		
+		java.util.Arrays.sort(sorted);
+		
+		numberOfBins = Math.max(1, Math.min(numberOfBins, n));
+		
+		this.r = new double[numberOfBins];
+		this.logR = new double[numberOfBins];
+		this.weights = new double[numberOfBins];
+		this.binVariance = new double[numberOfBins];
+		this.scratch = null;
+		this.values = null;
+		this.sharingTerms = false;
+		this.n = numberOfBins;
+		this.totalWeight = n;
+		
+		for (int b = 0; b < numberOfBins; b++) {
+			
+			int start = (int) (((long) b)*n/numberOfBins);
+			int end = (int) (((long) (b+1))*n/numberOfBins);
+			
+			double mean = 0;
+			double meanLog = 0;
+			
+			for (int i = start; i < end; i++) {
+				mean += sorted[i];
+				meanLog += Math.log(sorted[i]);
+			}
+			
+			int count = end - start;
+			
+			mean /= count;
+			meanLog /= count;
+			
+			double variance = 0;
+			
+			for (int i = start; i < end; i++) {
+				variance += (sorted[i] - mean)*(sorted[i] - mean);
+			}
+			
+			this.r[b] = mean;
+			this.logR[b] = meanLog;
+			this.weights[b] = count;
+			this.binVariance[b] = variance/count;
+			
+		}
+		
+		this.calculateMoments();
+		
+	}
+	
+	/**
+	 * Calculates the weighted mean of the distances, the sum of their squared deviations from it (including the variance within bins), and the
+	 * sum of their logarithms, which together give the parameter-independent parts of the likelihood for the blocked kernel.
+	 */
+	private void calculateMoments() {
+		
+		double sum = 0;
+		double sumLog = 0;
+		
+		for (int i = 0; i < this.n; i++) {
+			double w = (this.weights == null ? 1 : this.weights[i]);
+			sum += w*this.r[i];
+			sumLog += w*this.logR[i];
+		}
+		
+		this.meanR = (this.totalWeight > 0 ? sum/this.totalWeight : 0);
+		this.sumLogR = sumLog;
+		
+		double sumSquares = 0;
+		
+		for (int i = 0; i < this.n; i++) {
+			double w = (this.weights == null ? 1 : this.weights[i]);
+			double variance = (this.binVariance == null ? 0 : this.binVariance[i]);
+			sumSquares += w*((this.r[i] - this.meanR)*(this.r[i] - this.meanR) + variance);
+		}
+		
+		this.sumSquaredDeviations = sumSquares;
+		
+	}
+	
+	/**
+	 * Checks whether the distances have been grouped into bins by {@link #setBinnedR(double[], int, int)}.
+	 * @return	true if the likelihood is evaluated over bins.
+	 */
+	public boolean isBinned() {
+		return this.weights != null;
+	}
+	
+	/**
+	 * Fixes the width parameter, so that only the mean parameter is fit.
+	 * @param s	the value of the width parameter.
+	 */
+	public void setS(double s) {
+		this.s = s;
+		this.shouldFitS = false;
+	}
+	
+	/**
+	 * Fixes the mean parameter, so that only the width parameter is fit.
+	 * @param m	the value of the mean parameter.
+	 */
+	public void setM(double m) {
+		this.m = m;
+		this.shouldFitM = false;
+	}
+	
+	/**
+	 * Checks whether the mean parameter is being fit, or has been fixed by {@link #setM(double)}.
+	 * @return	true if the mean parameter is being fit.
+	 */
+	public boolean isFittingM() {
+		return this.shouldFitM;
+	}
+	
+	/**
+	 * Checks whether the width parameter is being fit, or has been fixed by {@link #setS(double)}.
+	 * @return	true if the width parameter is being fit.
+	 */
+	public boolean isFittingS() {
+		return this.shouldFitS;
+	}
+	
+	/**
+	 * Gets the number of distances whose likelihood is evaluated, or the number of bins if the distances have been binned.
+	 * @return	the number of distances or bins.
+	 */
+	public int getN() {
+		return this.n;
+	}
+	
+	/**
+	 * Gets the array of distances (or of bin means, if the distances have been binned).  Only the first {@link #getN()} entries are meaningful.
+	 * @return	the array of distances; this is not copied.
+	 */
+	double[] getRArray() {
+		return this.r;
+	}
+	
+	public double evaluate(RealVector point) {
+		return this.evaluate(point.getEntry(0), point.getEntry(1));
+	}
+	
+	/**
+	 * Evaluates the negative log-likelihood of the distances.
+	 * 
+	 * @param m	the mean parameter (ignored if it has been fixed by {@link #setM(double)}).
+	 * @param s	the width parameter (ignored if it has been fixed by {@link #setS(double)}).
+	 * @return	the negative log-likelihood, or Double.MAX_VALUE if either parameter is not positive.
+	 */
+	public double evaluate(double m, double s) {
+		
+		if (!this.shouldFitM) {
+			m = this.m;
+		}
+		
+		if (!this.shouldFitS) {
+			s = this.s;
+		}
+		
+		if (m <= 0 || s <= 0) {return Double.MAX_VALUE;}
+		
+		double inverseTwoS2 = 1.0/(2*s*s);
+		double twoMOverS2 = 2*m/(s*s);
+		double constant = LOG_SQRT_2_OVER_PI - Math.log(2*m*s);
+		
+		if (this.useBlockedKernel && !this.useMinProb && this.trimPercentage <= 0) {
+			return this.evaluateBlocked(m, inverseTwoS2, twoMOverS2, constant);
+		}
+		
+		if (this.weights != null) {
+			return this.evaluateBinned(m, inverseTwoS2, twoMOverS2, constant);
+		}
+		
+		if (this.trimPercentage <= 0) {
+			
+			double negLogL = 0;
+			
+			for (int i = 0; i < this.n; i++) {
+				negLogL += this.negLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+			}
+			
+			return negLogL;
+			
+		}
+		
+		//trimmed likelihood: sum only the most likely observations
+		
+		if (this.scratch == null || this.scratch.length < this.n) {
+			this.scratch = new double[this.n];
+		}
+		
+		for (int i = 0; i < this.n; i++) {
+			this.scratch[i] = this.negLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+		}
+		
+		int trimmedLength = (int) Math.floor((1-this.trimPercentage)*this.n);
+		
+		selectSmallest(this.scratch, this.n, trimmedLength);
+		
+		double negLogL = 0;
+		
+		for (int i = 0; i < trimmedLength; i++) {
+			negLogL += this.scratch[i];
+		}
+		
+		return negLogL;
+		
+	}
+	
+	/**
+	 * Evaluates the uncapped, untrimmed negative log-likelihood using the precalculated moments of the distances for all terms but 
+	 * log(1 - exp(-2mr/s^2)), which is summed over the distances by the Vector API kernel if it is in use, or otherwise in independent lanes.
+	 */
+	private double evaluateBlocked(double m, double inverseTwoS2, double twoMOverS2, double constant) {
+		
+		double sumLogOneMinusExp = 0;
+		
+		if (this.isUsingVectorKernel()) {
+			sumLogOneMinusExp = VECTOR_KERNEL.sumLogOneMinusExp(this.r, this.weights, this.n, twoMOverS2);
+		} else {
+			sumLogOneMinusExp = this.sumLogOneMinusExp(twoMOverS2);
+		}
+		
+		double sumSquaredDifferences = this.totalWeight*(m - this.meanR)*(m - this.meanR) + this.sumSquaredDeviations;
+		
+		return -1.0*(this.totalWeight*constant + this.sumLogR - sumSquaredDifferences*inverseTwoS2 + sumLogOneMinusExp);
+		
+	}
+	
+	/**
+	 * Sums log(1 - exp(-2mr/s^2)) (weighted, if the distances are binned) over the distances with a scalar loop accumulated in independent lanes.
+	 */
+	private double sumLogOneMinusExp(double twoMOverS2) {
+		
+		double sum0 = 0;
+		double sum1 = 0;
+		double sum2 = 0;
+		double sum3 = 0;
+		
+		int blockEnd = this.n - this.n % KERNEL_LANES;
+		
+		final double[] r = this.r;
+		
+		if (this.weights == null) {
+			
+			for (int i = 0; i < blockEnd; i += KERNEL_LANES) {
+				sum0 += logOneMinusExp(twoMOverS2*r[i]);
+				sum1 += logOneMinusExp(twoMOverS2*r[i+1]);
+				sum2 += logOneMinusExp(twoMOverS2*r[i+2]);
+				sum3 += logOneMinusExp(twoMOverS2*r[i+3]);
+			}
+			
+			for (int i = blockEnd; i < this.n; i++) {
+				sum0 += logOneMinusExp(twoMOverS2*r[i]);
+			}
+			
+		} else {
+			
+			final double[] w = this.weights;
+			
+			for (int i = 0; i < blockEnd; i += KERNEL_LANES) {
+				sum0 += w[i]*logOneMinusExp(twoMOverS2*r[i]);
+				sum1 += w[i+1]*logOneMinusExp(twoMOverS2*r[i+1]);
+				sum2 += w[i+2]*logOneMinusExp(twoMOverS2*r[i+2]);
+				sum3 += w[i+3]*logOneMinusExp(twoMOverS2*r[i+3]);
+			}
+			
+			for (int i = blockEnd; i < this.n; i++) {
+				sum0 += w[i]*logOneMinusExp(twoMOverS2*r[i]);
+			}
+			
+		}
+		
+		return (sum0 + sum1) + (sum2 + sum3);
+		
+	}
+	
+	/**
+	 * Calculates log(1 - exp(-x)) for nonnegative x.  Near zero, where 1 - exp(-x) suffers cancellation, this uses expm1; elsewhere it uses
+	 * exp, which is substantially faster and loses no accuracy there.
+	 */
+	static double logOneMinusExp(double x) {
+		if (x < EXPM1_CUTOFF) return Math.log(-1.0*Math.expm1(-1.0*x));
+		return Math.log(1.0 - Math.exp(-1.0*x));
+	}
+	
+	private double evaluateBinned(double m, double inverseTwoS2, double twoMOverS2, double constant) {
+		
+		if (this.trimPercentage <= 0) {
+			
+			double negLogL = 0;
+			
+			for (int i = 0; i < this.n; i++) {
+				negLogL += this.weights[i]*this.binNegLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+			}
+			
+			return negLogL;
+			
+		}
+		
+		if (this.scratch == null || this.scratch.length < this.n) {
+			this.scratch = new double[this.n];
+		}
+		
+		if (this.values == null || this.values.length < this.n) {
+			this.values = new double[this.n];
+		}
+		
+		for (int i = 0; i < this.n; i++) {
+			this.scratch[i] = this.binNegLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+			this.values[i] = this.weights[i];
+		}
+		
+		double trimmedWeight = Math.floor((1-this.trimPercentage)*this.totalWeight);
+		
+		return sumOfSmallestWeighted(this.scratch, this.values, this.n, trimmedWeight);
+		
+	}
+	
+	/**
+	 * Evaluates the negative log-likelihood of the distances along with its gradient and Hessian with respect to the parameters.
+	 * <p>
+	 * Observations whose contribution is capped by the minimum probability, or excluded by trimming, contribute nothing to the derivatives.
+	 * For binned distances, the bin at the trimming threshold contributes with only the part of its weight that is included in the likelihood.
+	 * If either parameter has been fixed by {@link #setM(double)} or {@link #setS(double)}, the derivatives are still reported with respect to
+	 * both parameters, evaluated at the fixed value.
+	 * 
+	 * @param m			the mean parameter (ignored if it has been fixed by {@link #setM(double)}).
+	 * @param s			the width parameter (ignored if it has been fixed by {@link #setS(double)}).
+	 * @param gradient	an array of length at least 2 that will be filled with the derivatives with respect to m and s.
+	 * @param hessian	an array of length at least 3 that will be filled with the second derivatives with respect to m twice, m and s, and s twice.
+	 * @return			the negative log-likelihood, or Double.MAX_VALUE if either parameter is not positive (in which case the derivatives are set to zero).
+	 */
+	public double evaluateWithDerivatives(double m, double s, double[] gradient, double[] hessian) {
+		
+		if (!this.shouldFitM) {
+			m = this.m;
+		}
+		
+		if (!this.shouldFitS) {
+			s = this.s;
+		}
+		
+		gradient[0] = 0;
+		gradient[1] = 0;
+		hessian[0] = 0;
+		hessian[1] = 0;
+		hessian[2] = 0;
+		
+		if (m <= 0 || s <= 0) {return Double.MAX_VALUE;}
+		
+		double s2 = s*s;
+		double s3 = s2*s;
+		double s4 = s3*s;
+		double s5 = s4*s;
+		double s6 = s5*s;
+		
+		double inverseTwoS2 = 1.0/(2*s2);
+		double twoMOverS2 = 2*m/s2;
+		double constant = LOG_SQRT_2_OVER_PI - Math.log(2*m*s);
+		
+		double trimThreshold = Double.POSITIVE_INFINITY;
+		double tieWeightToInclude = this.n;
+		
+		if (this.trimPercentage > 0) {
+			
+			if (this.scratch == null || this.scratch.length < this.n) {
+				this.scratch = new double[this.n];
+			}
+			
+			if (this.values == null || this.values.length < this.n) {
+				this.values = new double[this.n];
+			}
+			
+			for (int i = 0; i < this.n; i++) {
+				this.values[i] = (this.weights == null) ? this.negLogP(i, m, inverseTwoS2, twoMOverS2, constant) : this.binNegLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+				this.scratch[i] = this.values[i];
+			}
+			
+			if (this.weights == null) {
+				
+				int trimmedLength = (int) Math.floor((1-this.trimPercentage)*this.n);
+				
+				selectSmallest(this.scratch, this.n, trimmedLength);
+				
+				trimThreshold = Double.NEGATIVE_INFINITY;
+				
+				for (int i = 0; i < trimmedLength; i++) {
+					trimThreshold = Math.max(trimThreshold, this.scratch[i]);
+				}
+				
+				tieWeightToInclude = trimmedLength;
+				
+			} else {
+				
+				if (this.weightScratch == null || this.weightScratch.length < this.n) {
+					this.weightScratch = new double[this.n];
+				}
+				
+				System.arraycopy(this.weights, 0, this.weightScratch, 0, this.n);
+				
+				double trimmedWeight = Math.floor((1-this.trimPercentage)*this.totalWeight);
+				
+				trimThreshold = weightedThreshold(this.scratch, this.weightScratch, this.n, trimmedWeight);
+				
+				tieWeightToInclude = trimmedWeight;
+				
+			}
+			
+			//observations at the threshold share whatever weight remains after those below it
+			
+			for (int i = 0; i < this.n; i++) {
+				if (this.values[i] < trimThreshold) tieWeightToInclude -= (this.weights == null) ? 1 : this.weights[i];
+			}
+			
+		}
+		
+		double negLogL = 0;
+		
+		for (int i = 0; i < this.n; i++) {
+			
+			double rawNegLogP = this.rawNegLogP(i, m, inverseTwoS2, twoMOverS2, constant);
+			double variance = 0;
+			double weight = 1;
+			
+			if (this.weights != null) {
+				variance = this.binVariance[i];
+				weight = this.weights[i];
+				rawNegLogP += variance*inverseTwoS2;
+			}
+			
+			double negLogP = this.capNegLogP(rawNegLogP);
+			
+			if (negLogP > trimThreshold) continue;
+			
+			if (negLogP == trimThreshold && this.trimPercentage > 0) {
+				if (tieWeightToInclude <= 0) continue;
+				double included = Math.min(weight, tieWeightToInclude);
+				tieWeightToInclude -= included;
+				weight = included;
+			}
+			
+			negLogL += weight*negLogP;
+			
+			//capped observations have a constant contribution
+			
+			if (negLogP != rawNegLogP || !(this.r[i] > 0)) continue;
+			
+			double r = this.r[i];
+			double a = twoMOverS2*r;
+			double expm1A = Math.expm1(a);
+			double g = 1.0/expm1A;
+			double h = -1.0/(expm1A*(-1.0*Math.expm1(-1.0*a)));
+			double d = m - r;
+			
+			//the within-bin variance enters only through the (m-r)^2 term
+			
+			gradient[0] -= weight*(-1.0/m - d/s2 + 2*r*g/s2);
+			gradient[1] -= weight*(-1.0/s + (d*d + variance)/s3 - 4*m*r*g/s3);
+			
+			hessian[0] -= weight*(1.0/(m*m) - 1.0/s2 + 4*r*r*h/s4);
+			hessian[1] -= weight*(2*d/s3 - 8*m*r*r*h/s5 - 4*r*g/s3);
+			hessian[2] -= weight*(1.0/s2 - 3*(d*d + variance)/s4 + 16*m*m*r*r*h/s6 + 12*m*r*g/s4);
+			
+		}
+		
+		return negLogL;
+		
+	}
+	
+	private double negLogP(int i, double m, double inverseTwoS2, double twoMOverS2, double constant) {
+		return this.capNegLogP(this.rawNegLogP(i, m, inverseTwoS2, twoMOverS2, constant));
+	}
+	
+	private double rawNegLogP(int i, double m, double inverseTwoS2, double twoMOverS2, double constant) {
+		
+		double diff = m - this.r[i];
+		
+		return -1.0*(constant + this.logR[i] - diff*diff*inverseTwoS2 + logOneMinusExp(twoMOverS2*this.r[i]));
+		
+	}
+	
+	private double binNegLogP(int i, double m, double inverseTwoS2, double twoMOverS2, double constant) {
+		return this.capNegLogP(this.rawNegLogP(i, m, inverseTwoS2, twoMOverS2, constant) + this.binVariance[i]*inverseTwoS2);
+	}
+	
+	private double capNegLogP(double negLogP) {
+		
+		if (this.useMinProb && !(negLogP <= this.minProb)) { negLogP = this.minProb;}
+		
+		return negLogP;
+		
+	}
+	
+	/**
+	 * Partially orders the first n entries of an array so that its first k entries are the k smallest, in no particular order.
+	 * 
+	 * @param a		the array to partially order.
+	 * @param n		the number of entries of the array to consider.
+	 * @param k		the number of smallest entries to move to the front.
+	 */
+	static void selectSmallest(double[] a, int n, int k) {
+		
+		int left = 0;
+		int right = n - 1;
+		
+		if (k <= 0 || k >= n) return;
+		
+		while (left < right) {
+			
+			double pivot = a[(left + right) >>> 1];
+			
+			int i = left;
+			int j = right;
+			
+			while (i <= j) {
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j) {
+					double temp = a[i];
+					a[i] = a[j];
+					a[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			
+			if (k - 1 <= j) {
+				right = j;
+			} else if (k - 1 >= i) {
+				left = i;
+			} else {
+				return;
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Sums the smallest entries of an array, each multiplied by a weight, taking entries in increasing order until their total weight 
+	 * reaches a target; the entry at which the target is reached is counted with only the weight needed to reach it.
+	 * <p>
+	 * The first n entries of both arrays are reordered (together) in the process.
+	 * 
+	 * @param a			the array of values.
+	 * @param w			the array of (nonnegative) weights corresponding to the values.
+	 * @param n			the number of entries of the arrays to consider.
+	 * @param target	the total weight to include.
+	 * @return			the weighted sum of the smallest values.
+	 */
+	static double sumOfSmallestWeighted(double[] a, double[] w, int n, double target) {
+		
+		int left = 0;
+		int right = n - 1;
+		
+		double sum = 0;
+		double included = 0;
+		
+		while (left <= right && included < target) {
+			
+			if (left == right) {
+				sum += a[left]*Math.min(w[left], target - included);
+				break;
+			}
+			
+			double pivot = a[(left + right) >>> 1];
+			
+			int i = left;
+			int j = right;
+			
+			while (i <= j) {
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j) {
+					double temp = a[i];
+					a[i] = a[j];
+					a[j] = temp;
+					temp = w[i];
+					w[i] = w[j];
+					w[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			
+			double lowerWeight = 0;
+			
+			for (int k = left; k <= j; k++) {
+				lowerWeight += w[k];
+			}
+			
+			if (included + lowerWeight >= target) {
+				right = j;
+				continue;
+			}
+			
+			for (int k = left; k <= j; k++) {
+				sum += a[k]*w[k];
+			}
+			
+			included += lowerWeight;
+			
+			//entries between j and i are equal to the pivot
+			
+			for (int k = j + 1; k < i && included < target; k++) {
+				double take = Math.min(w[k], target - included);
+				sum += a[k]*take;
+				included += take;
+			}
+			
+			left = i;
+			
+		}
+		
+		return sum;
+		
+	}
+	
+	/**
+	 * Finds the value at which the total weight of the smallest entries of an array, taken in increasing order, reaches a target; this is
+	 * the largest value included by {@link #sumOfSmallestWeighted(double[], double[], int, double)}.
+	 * <p>
+	 * The first n entries of both arrays are reordered (together) in the process.
+	 * 
+	 * @param a			the array of values.
+	 * @param w			the array of (nonnegative) weights corresponding to the values.
+	 * @param n			the number of entries of the arrays to consider.
+	 * @param target	the total weight to include.
+	 * @return			the value at which the target is reached; negative infinity if the target is not positive, or positive infinity if it exceeds the total weight.
+	 */
+	static double weightedThreshold(double[] a, double[] w, int n, double target) {
+		
+		if (!(target > 0)) return Double.NEGATIVE_INFINITY;
+		
+		int left = 0;
+		int right = n - 1;
+		
+		double included = 0;
+		
+		while (left <= right) {
+			
+			if (left == right) {
+				return (included + w[left] >= target) ? a[left] : Double.POSITIVE_INFINITY;
+			}
+			
+			double pivot = a[(left + right) >>> 1];
+			
+			int i = left;
+			int j = right;
+			
+			while (i <= j) {
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j) {
+					double temp = a[i];
+					a[i] = a[j];
+					a[j] = temp;
+					temp = w[i];
+					w[i] = w[j];
+					w[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			
+			double lowerWeight = 0;
+			
+			for (int k = left; k <= j; k++) {
+				lowerWeight += w[k];
+			}
+			
+			if (included + lowerWeight >= target) {
+				right = j;
+				continue;
+			}
+			
+			included += lowerWeight;
+			
+			//entries between j and i are equal to the pivot
+			
+			for (int k = j + 1; k < i; k++) {
+				included += w[k];
+				if (included >= target) return a[k];
+			}
+			
+			left = i;
+			
+		}
+		
+		return Double.POSITIVE_INFINITY;
+		
+	}
+
+}
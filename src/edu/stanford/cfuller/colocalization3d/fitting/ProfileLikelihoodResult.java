@@ -0,0 +1,193 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.fitting;
+
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Holds the result of a profile-likelihood scan over one parameter of a distribution fit: the minimum negative log-likelihood over the
+ * other parameter at each value of the scanned parameter, and the likelihood-ratio confidence interval derived from it.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+public class ProfileLikelihoodResult {
+	
+	private int parameterIndex;
+	private RealVector fitParameters;
+	private double minimumNegLogL;
+	private double[] gridValues;
+	private double[] profileNegLogL;
+	private double[] nuisanceValues;
+	private double confidenceLevel;
+	private double cutoff;
+	
+	private double lowerBound;
+	private double upperBound;
+	
+	/**
+	 * Constructs a new result and calculates the likelihood-ratio interval.
+	 * <p>
+	 * The interval contains the values of the parameter at which the profile negative log-likelihood is within the cutoff of its minimum;
+	 * its ends are found by linear interpolation between the grid points on either side of the cutoff.
+	 * 
+	 * @param parameterIndex	the index of the scanned parameter in the fit parameters.
+	 * @param fitParameters		the maximum likelihood parameters.
+	 * @param minimumNegLogL	the negative log-likelihood at the maximum likelihood parameters.
+	 * @param gridValues		the values of the scanned parameter, in increasing order.
+	 * @param profileNegLogL	the minimum negative log-likelihood over the other parameter at each grid value.
+	 * @param nuisanceValues	the value of the other parameter at each of those minima.
+	 * @param confidenceLevel	the confidence level of the interval.
+	 * @param cutoff			the increase in the negative log-likelihood defining the interval (half the chi-squared quantile at the confidence level).
+	 */
+	public ProfileLikelihoodResult(int parameterIndex, RealVector fitParameters, double minimumNegLogL, double[] gridValues, double[] profileNegLogL, double[] nuisanceValues, double confidenceLevel, double cutoff) {
+		
+		this.parameterIndex = parameterIndex;
+		this.fitParameters = fitParameters;
+		this.minimumNegLogL = minimumNegLogL;
+		this.gridValues = gridValues;
+		this.profileNegLogL = profileNegLogL;
+		this.nuisanceValues = nuisanceValues;
+		this.confidenceLevel = confidenceLevel;
+		this.cutoff = cutoff;
+		
+		this.lowerBound = this.findCrossing(-1);
+		this.upperBound = this.findCrossing(1);
+		
+	}
+	
+	/**
+	 * Walks the grid away from the maximum likelihood value in one direction and finds where the profile first exceeds the cutoff.
+	 * 
+	 * @param direction	-1 to search below the maximum likelihood value, 1 to search above.
+	 * @return			the interpolated crossing, or NaN if the profile does not reach the cutoff within the grid.
+	 */
+	private double findCrossing(int direction) {
+		
+		double best = this.fitParameters.getEntry(this.parameterIndex);
+		
+		double previousValue = best;
+		double previousDeviation = 0;
+		
+		int first = 0;
+		
+		while (first < this.gridValues.length && this.gridValues[first] < best) first++;
+		
+		if (direction < 0) first--;
+		
+		for (int i = first; i >= 0 && i < this.gridValues.length; i += direction) {
+			
+			double deviation = this.profileNegLogL[i] - this.minimumNegLogL;
+			
+			if (deviation > this.cutoff) {
+				
+				double f = (this.cutoff - previousDeviation)/(deviation - previousDeviation);
+				
+				return previousValue + Math.max(0, Math.min(1, f))*(this.gridValues[i] - previousValue);
+				
+			}
+			
+			previousValue = this.gridValues[i];
+			previousDeviation = deviation;
+			
+		}
+		
+		return Double.NaN;
+		
+	}
+	
+	/**
+	 * Gets the index of the scanned parameter.
+	 * @return	the index of the parameter (0 for the mean, 1 for the width of a P3D fit).
+	 */
+	public int getParameterIndex() {
+		return this.parameterIndex;
+	}
+	
+	/**
+	 * Gets the maximum likelihood parameters.
+	 * @return	a RealVector containing the fit parameters.
+	 */
+	public RealVector getFitParameters() {
+		return this.fitParameters;
+	}
+	
+	/**
+	 * Gets the lower end of the likelihood-ratio confidence interval.
+	 * @return	the lower bound, or NaN if the profile does not reach the cutoff within the scanned grid.
+	 */
+	public double getLowerBound() {
+		return this.lowerBound;
+	}
+	
+	/**
+	 * Gets the upper end of the likelihood-ratio confidence interval.
+	 * @return	the upper bound, or NaN if the profile does not reach the cutoff within the scanned grid.
+	 */
+	public double getUpperBound() {
+		return this.upperBound;
+	}
+	
+	/**
+	 * Gets the confidence level of the interval.
+	 * @return	the confidence level.
+	 */
+	public double getConfidenceLevel() {
+		return this.confidenceLevel;
+	}
+	
+	/**
+	 * Gets the values of the scanned parameter.
+	 * @return	an array containing the grid values in increasing order; this is not copied.
+	 */
+	public double[] getGridValues() {
+		return this.gridValues;
+	}
+	
+	/**
+	 * Gets the profile negative log-likelihood at each grid value.
+	 * @return	an array containing the minimum negative log-likelihood over the other parameter at each grid value; this is not copied.
+	 */
+	public double[] getProfileNegLogL() {
+		return this.profileNegLogL;
+	}
+	
+	/**
+	 * Gets the value of the other parameter at the minimum for each grid value.
+	 * @return	an array containing the optimal value of the other parameter at each grid value; this is not copied.
+	 */
+	public double[] getNuisanceValues() {
+		return this.nuisanceValues;
+	}
+	
+	/**
+	 * Gets a formatted string representation of the interval.
+	 * @return a String containing the maximum likelihood value and the likelihood-ratio interval.
+	 */
+	public String toString() {
+		return "Profile likelihood for parameter " + this.parameterIndex + " (" + this.gridValues.length + " grid points): " + this.fitParameters.getEntry(this.parameterIndex) + " [" + this.lowerBound + ", " + this.upperBound + "] at confidence level " + this.confidenceLevel;
+	}
+
+}
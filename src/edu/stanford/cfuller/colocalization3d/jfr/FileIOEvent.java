@@ -0,0 +1,74 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event recording the reading or writing of position data or a correction.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@Name("edu.stanford.cfuller.colocalization3d.FileIO")
+@Label("File Read or Write")
+@Category({"Colocalization3D", "I/O"})
+@Description("Reading or writing of position data or a correction")
+public class FileIOEvent extends jdk.jfr.Event {
+	
+	public static final String READ = "read";
+	public static final String WRITE = "write";
+	
+	@Label("Path")
+	String path;
+	
+	@Label("Operation")
+	String operation;
+	
+	@Label("Size")
+	@DataAmount
+	long bytes;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled.  The size of the file is recorded as it is when this is called.
+	 * 
+	 * @param path		the path of the file.
+	 * @param operation	{@link #READ} or {@link #WRITE}.
+	 */
+	public void commit(String path, String operation) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.path = path;
+			this.operation = operation;
+			this.bytes = (new java.io.File(path)).length();
+			this.commit();
+		}
+	}
+	
+}
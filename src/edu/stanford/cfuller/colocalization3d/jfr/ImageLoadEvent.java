@@ -0,0 +1,66 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event recording the loading of an image (or mask) from disk.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@Name("edu.stanford.cfuller.colocalization3d.ImageLoad")
+@Label("Image Load")
+@Category({"Colocalization3D", "I/O"})
+@Description("Reading of an image or mask from disk")
+public class ImageLoadEvent extends jdk.jfr.Event {
+	
+	@Label("Filename")
+	String filename;
+	
+	@Label("Success")
+	@Description("Whether the image was read without error")
+	boolean success;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled.
+	 * 
+	 * @param filename	the filename of the image.
+	 * @param success	whether the image was read without error.
+	 */
+	public void commit(String filename, boolean success) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.filename = filename;
+			this.success = success;
+			this.commit();
+		}
+	}
+	
+}
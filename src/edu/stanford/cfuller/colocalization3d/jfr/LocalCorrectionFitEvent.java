@@ -0,0 +1,78 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event recording the fitting of the local interpolating function of a correction around a single object.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@Name("edu.stanford.cfuller.colocalization3d.LocalCorrectionFit")
+@Label("Local Correction Fit")
+@Category({"Colocalization3D", "Correction"})
+@Description("Fitting of the local interpolating function of a correction around a single object")
+public class LocalCorrectionFitEvent extends jdk.jfr.Event {
+	
+	@Label("Center Index")
+	@Description("The index of the object around which the function is fit")
+	int centerIndex;
+	
+	@Label("Number of Objects")
+	@Description("The total number of objects from which neighbors are chosen")
+	int numberOfObjects;
+	
+	@Label("Number of Points Fit")
+	int numberOfPointsFit;
+	
+	@Label("Distance Cutoff")
+	@Description("The distance, in pixels, within which the function applies")
+	double distanceCutoff;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled.
+	 * 
+	 * @param centerIndex			the index of the object around which the function is fit.
+	 * @param numberOfObjects		the total number of objects from which neighbors are chosen.
+	 * @param numberOfPointsFit		the number of neighboring objects fit.
+	 * @param distanceCutoff		the distance within which the function applies.
+	 */
+	public void commit(int centerIndex, int numberOfObjects, int numberOfPointsFit, double distanceCutoff) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.centerIndex = centerIndex;
+			this.numberOfObjects = numberOfObjects;
+			this.numberOfPointsFit = numberOfPointsFit;
+			this.distanceCutoff = distanceCutoff;
+			this.commit();
+		}
+	}
+	
+}
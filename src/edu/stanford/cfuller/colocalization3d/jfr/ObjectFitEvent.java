@@ -0,0 +1,75 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event recording the fitting of a single object.
+ * <p>
+ * Call {@link #begin()} before fitting and {@link #commit(int, String, boolean)} after; when the event is not enabled in the
+ * current recording (or there is no recording), the fields are not filled in and the cost is negligible.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@Name("edu.stanford.cfuller.colocalization3d.ObjectFit")
+@Label("Object Fit")
+@Category({"Colocalization3D", "Fitting"})
+@Description("Fitting of the position of a single object in each channel")
+public class ObjectFitEvent extends jdk.jfr.Event {
+	
+	@Label("Label")
+	@Description("The label of the object in its mask")
+	int label;
+	
+	@Label("Image ID")
+	String imageID;
+	
+	@Label("Success")
+	@Description("Whether the fit finished without error")
+	boolean success;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled.
+	 * 
+	 * @param label		the label of the object.
+	 * @param imageID	the ID of the image containing the object.
+	 * @param success	whether the fit finished without error.
+	 */
+	public void commit(int label, String imageID, boolean success) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.label = label;
+			this.imageID = imageID;
+			this.success = success;
+			this.commit();
+		}
+	}
+	
+}
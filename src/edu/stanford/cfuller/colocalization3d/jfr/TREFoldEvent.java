@@ -0,0 +1,73 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * 
+ * Copyright (c) 2012 Colin J. Fuller
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the Software), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED AS IS, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * ***** END LICENSE BLOCK ***** */
+
+package edu.stanford.cfuller.colocalization3d.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event recording the calculation of the target registration error for one fold: either a single held-out object
+ * in the leave-one-out calculation, or one fold of a cross-validated calculation.
+ * 
+ * @author Colin J. Fuller
+ *
+ */
+@Name("edu.stanford.cfuller.colocalization3d.TREFold")
+@Label("TRE Fold")
+@Category({"Colocalization3D", "Correction"})
+@Description("Determination of a correction without a set of held-out objects and calculation of their error")
+public class TREFoldEvent extends jdk.jfr.Event {
+	
+	@Label("Fold")
+	@Description("The index of the fold, or of the held-out object for a leave-one-out calculation")
+	int fold;
+	
+	@Label("Held-out Objects")
+	int heldOut;
+	
+	@Label("Failures")
+	@Description("The number of held-out objects that could not be corrected")
+	int failures;
+	
+	/**
+	 * Ends the event and commits it, if it is enabled.
+	 * 
+	 * @param fold		the index of the fold, or of the held-out object for a leave-one-out calculation.
+	 * @param heldOut	the number of held-out objects.
+	 * @param failures	the number of held-out objects that could not be corrected.
+	 */
+	public void commit(int fold, int heldOut, int failures) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.fold = fold;
+			this.heldOut = heldOut;
+			this.failures = failures;
+			this.commit();
+		}
+	}
+	
+}